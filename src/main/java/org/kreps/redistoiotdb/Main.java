@@ -3,42 +3,72 @@ package org.kreps.redistoiotdb;
 import org.kreps.redistoiotdb.config.AppConfig;
 import org.kreps.redistoiotdb.config.ConfigLoader;
 import org.kreps.redistoiotdb.config.ConfigValidationException;
+import org.kreps.redistoiotdb.config.QueueConfig;
 import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.management.RuntimeStats;
+import org.kreps.redistoiotdb.management.Tuning;
 import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.queue.MemoryBudget;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
+import org.kreps.redistoiotdb.replay.FailedPayloadReplayer;
+import org.kreps.redistoiotdb.utils.FailedPayloadLogger;
+import org.kreps.redistoiotdb.utils.FailedRequestLogger;
+import org.kreps.redistoiotdb.utils.FailedWriteLogger;
 import org.kreps.redistoiotdb.validator.SchemaValidator;
 import org.kreps.redistoiotdb.threading.ThreadPoolManager;
 import org.kreps.redistoiotdb.worker.WorkerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.*;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
+    private static final String REPLAY_MODE = "replay";
+    private static final String TUNING_MBEAN = "org.kreps.redistoiotdb:type=Tuning";
+    private static final String STATS_MBEAN = "org.kreps.redistoiotdb:type=RuntimeStats";
+    // Upper bound for the shutdown hook to wait for cleanup, covering the writer, pool and log flush timeouts
+    private static final int CLEANUP_TIMEOUT_SECONDS = 120;
     private final BlockingQueue<DataPoint> dataQueue;
     private final IoTDBSessionPool iotdbSessionPool;
     private final ThreadPoolManager threadPoolManager;
     private final WorkerManager workerManager;
     private final AppConfig config;
+    private final CountDownLatch cleanupDone = new CountDownLatch(1);
 
     public Main(AppConfig config) {
-        this.dataQueue = new LinkedBlockingQueue<>(config.getProcessingConfig().getQueue().getCapacity());
+        QueueConfig queueConfig = config.getProcessingConfig().getQueue();
+        MemoryBudget memoryBudget = config.getProcessingConfig().getMemory().isEnabled()
+                ? new MemoryBudget(config.getProcessingConfig().getMemory())
+                : null;
+        this.dataQueue = queueConfig.getLanes().isEmpty()
+                && QueueConfig.OVERFLOW_DROP_NEWEST.equals(queueConfig.getOverflowPolicy()) && memoryBudget == null
+                ? new LinkedBlockingQueue<>(queueConfig.getCapacity())
+                : new PriorityLaneQueue(queueConfig, config.getTagDefinitions(), config.getTagDictionary(),
+                        memoryBudget);
         this.iotdbSessionPool = new IoTDBSessionPool(config);
 
-        int writerPoolSize = config.getProcessingConfig().getWriter().getPoolSize();
-
-        this.threadPoolManager = new ThreadPoolManager(writerPoolSize);
+        this.threadPoolManager = new ThreadPoolManager();
         this.workerManager = new WorkerManager(
                 config,
                 dataQueue,
                 threadPoolManager,
-                iotdbSessionPool);
+                iotdbSessionPool,
+                memoryBudget);
         this.config = config;
     }
 
     public static void main(String[] args) {
         try {
             AppConfig config = ConfigLoader.loadConfig();
+            if (args.length > 0 && REPLAY_MODE.equals(args[0])) {
+                String directory = args.length > 1 ? args[1] : config.getReplayConfig().getDirectory();
+                runReplay(config, directory);
+                return;
+            }
             Main app = new Main(config);
             app.run();
         } catch (ConfigValidationException e) {
@@ -50,10 +80,22 @@ public class Main {
         }
     }
 
+    private static void runReplay(AppConfig config, String directory) throws Exception {
+        logger.info("Starting replay of failed payloads from {}", directory);
+        try (IoTDBSessionPool sessionPool = new IoTDBSessionPool(config);
+                FailedPayloadReplayer replayer = new FailedPayloadReplayer(config, sessionPool)) {
+            new SchemaValidator(sessionPool, config.getRetryConfig()).initializeSchema();
+            replayer.replayAll(directory);
+        } finally {
+            closeFailureLogs();
+        }
+    }
+
     private void run() throws Exception {
         try {
             validateSchema();
             workerManager.startWorkers();
+            registerMBeans();
             waitForShutdownSignal();
         } catch (Exception e) {
             logger.error("Application error: ", e);
@@ -68,6 +110,14 @@ public class Main {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Received shutdown signal");
             shutdownLatch.countDown();
+            // The JVM halts once the hooks return, so hold it until queued data and failure logs are written
+            try {
+                if (!cleanupDone.await(CLEANUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warn("Cleanup did not finish within {} s, exiting anyway", CLEANUP_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }));
 
         try {
@@ -81,15 +131,47 @@ public class Main {
     private void validateSchema() throws Exception {
         logger.info("Validating IoTDB schema...");
         SchemaValidator validator = new SchemaValidator(
-                iotdbSessionPool.getSessionPool(),
+                iotdbSessionPool,
                 config.getRetryConfig());
         validator.initializeSchema();
         logger.info("Schema validation completed");
     }
 
+    /**
+     * Publishes the runtime tuning settings and statistics over JMX. The application
+     * runs on without them if they cannot be registered.
+     */
+    private void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new Tuning(config, workerManager, dataQueue), new ObjectName(TUNING_MBEAN));
+            server.registerMBean(new RuntimeStats(dataQueue, workerManager, threadPoolManager, iotdbSessionPool),
+                    new ObjectName(STATS_MBEAN));
+            logger.info("Published {} and {} over JMX", TUNING_MBEAN, STATS_MBEAN);
+        } catch (Exception e) {
+            logger.error("Failed to register the JMX MBeans: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String name : new String[] { TUNING_MBEAN, STATS_MBEAN }) {
+            try {
+                ObjectName objectName = new ObjectName(name);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to unregister {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
     private void cleanup() {
         logger.info("Starting application cleanup...");
         try {
+            unregisterMBeans();
+
             // First stop the workers
             workerManager.initiateShutdown();
 
@@ -107,9 +189,26 @@ public class Main {
             // Finally close IoTDB connection
             iotdbSessionPool.close();
 
+            // Flush failure logs written by the stopped workers
+            closeFailureLogs();
+            if (dataQueue instanceof PriorityLaneQueue) {
+                ((PriorityLaneQueue) dataQueue).close();
+            }
+
             logger.info("Application cleanup completed");
         } catch (Exception e) {
             logger.error("Error during cleanup", e);
+        } finally {
+            cleanupDone.countDown();
         }
     }
+
+    /**
+     * Writes the failure records still queued and closes the files; each waits a bounded time.
+     */
+    private static void closeFailureLogs() {
+        FailedWriteLogger.close();
+        FailedRequestLogger.close();
+        FailedPayloadLogger.close();
+    }
 }
@@ -0,0 +1,263 @@
+package org.kreps.redistoiotdb.columnar;
+
+import org.kreps.redistoiotdb.config.ColumnarConfig;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.kreps.redistoiotdb.utils.FailedPayloadLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-device columnar buffers that parsed rows are appended to directly, in
+ * place of one {@link DataPoint} per row on the data queue.
+ * <p>
+ * Each device (tag and plant) has one active buffer. A tag's buffer for the
+ * first plant it is seen with is found by tag ID; those of other plants, and of
+ * tags without an ID, are found by device path. A buffer that reaches
+ * {@code rows_per_buffer} rows, or whose oldest row is older than
+ * {@code max_age_ms}, is swapped out for a new one and put on the ready queue,
+ * from which writers take whole buffers and insert each one as a single tablet.
+ * If {@code ready_buffers} buffers are already waiting the buffer is written to
+ * the failed payload log instead, so it can be replayed later.
+ */
+public class ColumnarStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarStore.class);
+    private static final long STATS_INTERVAL_MS = 60000;
+
+    private final TagDictionary dictionary;
+    private final List<String> measurements;
+    private final int rowsPerBuffer;
+    private final long maxAgeNanos;
+    private final BlockingQueue<DeviceBuffer> ready;
+    private final ScheduledExecutorService sweeper;
+
+    // Guarded by this
+    private final DeviceBuffer[] activeByTagId;
+    private final Map<String, DeviceBuffer> activeByPath = new HashMap<>();
+    private volatile boolean closed;
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong fullBuffers = new AtomicLong();
+    private final AtomicLong agedBuffers = new AtomicLong();
+    private final AtomicLong overflowBuffers = new AtomicLong();
+    private final AtomicLong overflowRows = new AtomicLong();
+    private final AtomicLong takenBuffers = new AtomicLong();
+    private final AtomicLong nextStatsAt = new AtomicLong(System.currentTimeMillis() + STATS_INTERVAL_MS);
+
+    /**
+     * @param dictionary dictionary the rows' tag IDs refer to, or null
+     * @param measurements measurement names in the order of the parsed row blocks
+     */
+    public ColumnarStore(ColumnarConfig config, TagDictionary dictionary, List<String> measurements) {
+        this.dictionary = dictionary;
+        this.measurements = measurements;
+        this.rowsPerBuffer = config.getRowsPerBuffer();
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxAgeMs());
+        this.ready = new ArrayBlockingQueue<>(config.getReadyBuffers());
+        this.activeByTagId = new DeviceBuffer[dictionary != null ? dictionary.size() : 0];
+
+        long sweepMs = Math.max(10, config.getMaxAgeMs() / 4);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Columnar-Sweeper"));
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    public List<String> getMeasurements() {
+        return measurements;
+    }
+
+    /**
+     * Appends every row of the block to its device's buffer.
+     */
+    public void append(RowBlock block) {
+        List<DeviceBuffer> completed = new ArrayList<>();
+        synchronized (this) {
+            for (int row = 0; row < block.size(); row++) {
+                int tagId = block.getTagId(row);
+                String plantCode = block.getPlantCode(row);
+                if (tagId >= 0 && tagId < activeByTagId.length) {
+                    String path = dictionary.devicePath(tagId, plantCode);
+                    DeviceBuffer buffer = activeByTagId[tagId];
+                    // Device paths are canonical per tag and plant, a different reference means another
+                    // plant, whose buffer is kept by path so that neither plant's buffer is cut short
+                    if (buffer == null && !activeByPath.containsKey(path)) {
+                        buffer = newBuffer(tagId, path);
+                        activeByTagId[tagId] = buffer;
+                    }
+                    if (buffer != null && buffer.getDevicePath() == path) {
+                        if (buffer.add(block, row)) {
+                            completed.add(buffer);
+                            activeByTagId[tagId] = null;
+                        }
+                    } else {
+                        appendByPath(block, row, tagId, path, completed);
+                    }
+                } else {
+                    String path = DataPoint.formatTimeseriesPath(plantCode, block.getTag(row).trim());
+                    appendByPath(block, row, TagDictionary.UNKNOWN, path, completed);
+                }
+            }
+        }
+        rows.addAndGet(block.size());
+        fullBuffers.addAndGet(completed.size());
+        for (DeviceBuffer buffer : completed) {
+            handOver(buffer, 0);
+        }
+        logStatsIfDue();
+    }
+
+    // Guarded by this
+    private void appendByPath(RowBlock block, int row, int tagId, String path, List<DeviceBuffer> completed) {
+        DeviceBuffer buffer = activeByPath.get(path);
+        if (buffer == null) {
+            buffer = newBuffer(tagId, path);
+            activeByPath.put(path, buffer);
+        }
+        if (buffer.add(block, row)) {
+            completed.add(buffer);
+            activeByPath.remove(path);
+        }
+    }
+
+    private DeviceBuffer newBuffer(int tagId, String path) {
+        return new DeviceBuffer(tagId, path, rowsPerBuffer, measurements.size());
+    }
+
+    private void handOver(DeviceBuffer buffer, long waitMs) {
+        try {
+            if (ready.offer(buffer, waitMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        overflowBuffers.incrementAndGet();
+        overflowRows.addAndGet(buffer.getRowCount());
+        logger.warn("Columnar ready queue is full, writing {} rows for {} to the failed payload log",
+                buffer.getRowCount(), buffer.getDevicePath());
+        FailedPayloadLogger.logFailedPayload(buffer.toFailedPayload(measurements, "Columnar ready queue full"));
+    }
+
+    /**
+     * Takes the next buffer that is ready to be written.
+     *
+     * @return the buffer, or null if none became ready within the timeout.
+     */
+    public DeviceBuffer take(long timeout, TimeUnit unit) throws InterruptedException {
+        DeviceBuffer buffer = ready.poll(timeout, unit);
+        if (buffer != null) {
+            takenBuffers.incrementAndGet();
+        }
+        return buffer;
+    }
+
+    /**
+     * @return how full the ready queue is, between 0 and 1.
+     */
+    public double getReadyRatio() {
+        int size = ready.size();
+        return (double) size / (size + ready.remainingCapacity());
+    }
+
+    /**
+     * @return true once the store is closed and every buffer has been taken.
+     */
+    public boolean isDrained() {
+        return closed && ready.isEmpty();
+    }
+
+    private void sweep() {
+        try {
+            flush(false);
+            logStatsIfDue();
+        } catch (Exception e) {
+            logger.error("Error flushing aged columnar buffers: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Hands over the active buffers, all of them or only those older than {@code max_age_ms}.
+     */
+    private void flush(boolean all) {
+        List<DeviceBuffer> aged = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (int tagId = 0; tagId < activeByTagId.length; tagId++) {
+                DeviceBuffer buffer = activeByTagId[tagId];
+                if (buffer != null && (all || buffer.getAgeNanos(now) >= maxAgeNanos)) {
+                    aged.add(buffer);
+                    activeByTagId[tagId] = null;
+                }
+            }
+            Iterator<DeviceBuffer> iterator = activeByPath.values().iterator();
+            while (iterator.hasNext()) {
+                DeviceBuffer buffer = iterator.next();
+                if (all || buffer.getAgeNanos(now) >= maxAgeNanos) {
+                    aged.add(buffer);
+                    iterator.remove();
+                }
+            }
+        }
+        agedBuffers.addAndGet(aged.size());
+        for (DeviceBuffer buffer : aged) {
+            // On close the writers are still taking buffers, so wait for room rather than overflow
+            handOver(buffer, all ? 5000 : 0);
+        }
+    }
+
+    private void logStatsIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextStatsAt.get();
+        if (now >= due && nextStatsAt.compareAndSet(due, now + STATS_INTERVAL_MS)) {
+            logger.info("Columnar buffers: {}", this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long buffers = fullBuffers.get() + agedBuffers.get();
+        return String.format("%d rows, %d full and %d aged buffers (avg %.1f rows), %d ready, %d taken, "
+                + "%d buffers with %d rows overflowed", rows.get(), fullBuffers.get(), agedBuffers.get(),
+                buffers > 0 ? (double) (rows.get() - activeRows()) / buffers : 0, ready.size(),
+                takenBuffers.get(), overflowBuffers.get(), overflowRows.get());
+    }
+
+    private synchronized long activeRows() {
+        long active = 0;
+        for (DeviceBuffer buffer : activeByTagId) {
+            active += buffer != null ? buffer.getRowCount() : 0;
+        }
+        for (DeviceBuffer buffer : activeByPath.values()) {
+            active += buffer.getRowCount();
+        }
+        return active;
+    }
+
+    /**
+     * Stops the sweeper and hands over every partly filled buffer. Call once nothing
+     * appends any more; writers keep taking buffers until {@link #isDrained()}.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdown();
+        try {
+            sweeper.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+        closed = true;
+        logger.info("Columnar store closed: {}", this);
+    }
+}
@@ -0,0 +1,99 @@
+package org.kreps.redistoiotdb.columnar;
+
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.redistoiotdb.model.FailedPayload;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.kreps.redistoiotdb.utils.TimestampOrder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rows of one device accumulated in columns, ready to become a single tablet.
+ * A buffer is filled under its {@link ColumnarStore} lock and is only read by a
+ * writer once the store has swapped it out.
+ */
+public final class DeviceBuffer {
+    private final int tagId;
+    private final String devicePath;
+    private final long[] timestamps;
+    // columns[measurement][row]
+    private final String[][] columns;
+    private final long createdNanos = System.nanoTime();
+    private int rows;
+
+    DeviceBuffer(int tagId, String devicePath, int capacity, int measurementCount) {
+        this.tagId = tagId;
+        this.devicePath = devicePath;
+        this.timestamps = new long[capacity];
+        this.columns = new String[measurementCount][capacity];
+    }
+
+    /**
+     * @return true if the buffer is full after the row was added.
+     */
+    boolean add(RowBlock block, int row) {
+        timestamps[rows] = block.getTimestamp(row);
+        for (int col = 0; col < columns.length; col++) {
+            columns[col][rows] = block.getValue(col, row);
+        }
+        rows++;
+        return rows == timestamps.length;
+    }
+
+    long getAgeNanos(long now) {
+        return now - createdNanos;
+    }
+
+    /**
+     * @return the tag's ID in the {@link TagDictionary}, or {@link TagDictionary#UNKNOWN}.
+     */
+    public int getTagId() {
+        return tagId;
+    }
+
+    public String getDevicePath() {
+        return devicePath;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return the rows to write in ascending timestamp order without duplicates, or null if
+     *         the rows are already strictly ascending; see {@link TimestampOrder}.
+     */
+    public int[] rowOrder() {
+        return TimestampOrder.of(timestamps, rows);
+    }
+
+    /**
+     * @param order the rows to write as returned by {@link #rowOrder()}, or null for all rows as they are
+     */
+    public Tablet toTablet(List<MeasurementSchema> schemas, int[] order) {
+        int size = order != null ? order.length : rows;
+        Tablet tablet = new Tablet(devicePath, schemas, size);
+        for (int i = 0; i < size; i++) {
+            int row = order != null ? order[i] : i;
+            tablet.addTimestamp(i, timestamps[row]);
+            for (int col = 0; col < columns.length; col++) {
+                if (columns[col][row] != null) {
+                    tablet.addValue(schemas.get(col).getMeasurementId(), i, columns[col][row]);
+                }
+            }
+        }
+        tablet.rowSize = size;
+        return tablet;
+    }
+
+    public FailedPayload toFailedPayload(List<String> measurements, String reason) {
+        String[][] copy = new String[columns.length][];
+        for (int col = 0; col < columns.length; col++) {
+            copy[col] = Arrays.copyOf(columns[col], rows);
+        }
+        return new FailedPayload(devicePath, System.currentTimeMillis(), reason, Arrays.copyOf(timestamps, rows),
+                measurements, copy);
+    }
+}
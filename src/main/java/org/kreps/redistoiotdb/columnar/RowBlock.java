@@ -0,0 +1,115 @@
+package org.kreps.redistoiotdb.columnar;
+
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of one parsed response in columns: tag, plant, timestamp and one
+ * array per measurement. Filled by a single parser thread and then handed to a
+ * {@link ColumnarStore}, so no per-row objects outlive the parse.
+ */
+public final class RowBlock {
+    private final List<String> measurements;
+    private int size;
+    private int[] tagIds;
+    private String[] tags;
+    private String[] plantCodes;
+    private long[] timestamps;
+    // columns[measurement][row]
+    private final String[][] columns;
+
+    public RowBlock(List<String> measurements, int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.measurements = measurements;
+        this.tagIds = new int[capacity];
+        this.tags = new String[capacity];
+        this.plantCodes = new String[capacity];
+        this.timestamps = new long[capacity];
+        this.columns = new String[measurements.size()][capacity];
+    }
+
+    /**
+     * Appends a parsed row. The map may be reused by the caller afterwards.
+     *
+     * @param tagId the row's tag ID, or {@link TagDictionary#UNKNOWN}
+     * @throws RuntimeException if the row has no valid {@code OriTime}; nothing is appended then
+     */
+    public void add(Map<String, String> row, int tagId) {
+        long timestamp = DataPoint.parseTimestamp(row.get("OriTime"));
+        String tag = row.get("org_tag");
+        if (tag == null) {
+            throw new IllegalArgumentException("Row has no org_tag");
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+        tagIds[size] = tagId;
+        tags[size] = tag;
+        plantCodes[size] = row.get("PlantCode");
+        timestamps[size] = timestamp;
+        for (int col = 0; col < columns.length; col++) {
+            columns[col][size] = row.get(measurements.get(col));
+        }
+        size++;
+    }
+
+    /**
+     * Appends all rows of another block, used to merge the chunks of a split response.
+     */
+    public void addAll(RowBlock other) {
+        while (size + other.size > timestamps.length) {
+            grow();
+        }
+        System.arraycopy(other.tagIds, 0, tagIds, size, other.size);
+        System.arraycopy(other.tags, 0, tags, size, other.size);
+        System.arraycopy(other.plantCodes, 0, plantCodes, size, other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+        for (int col = 0; col < columns.length; col++) {
+            System.arraycopy(other.columns[col], 0, columns[col], size, other.size);
+        }
+        size += other.size;
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        tagIds = Arrays.copyOf(tagIds, capacity);
+        tags = Arrays.copyOf(tags, capacity);
+        plantCodes = Arrays.copyOf(plantCodes, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        for (int col = 0; col < columns.length; col++) {
+            columns[col] = Arrays.copyOf(columns[col], capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getTagId(int row) {
+        return tagIds[row];
+    }
+
+    public String getTag(int row) {
+        return tags[row];
+    }
+
+    public String getPlantCode(int row) {
+        return plantCodes[row];
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    public String getValue(int column, int row) {
+        return columns[column][row];
+    }
+
+    public List<String> getMeasurements() {
+        return measurements;
+    }
+}
@@ -0,0 +1,55 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AccumulationConfig {
+    @JsonProperty("enabled")
+    private boolean enabled = false;
+
+    @JsonProperty("max_rows")
+    private int maxRows = 32;
+
+    @JsonProperty("max_age_ms")
+    private int maxAgeMs = 2000;
+
+    @JsonProperty("min_tablet_rows")
+    private int minTabletRows = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return rows a device accumulates before its tablet is written.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * @return the longest a row is held back waiting for more rows of its device.
+     */
+    public int getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    /**
+     * @return devices that reach {@code max_age_ms} with fewer rows are written together as records.
+     */
+    public int getMinTabletRows() {
+        return minTabletRows;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (maxRows <= 0) {
+            throw new ConfigValidationException("'processing.writer.accumulation.max_rows' must be greater than 0");
+        }
+        if (maxAgeMs <= 0) {
+            throw new ConfigValidationException("'processing.writer.accumulation.max_age_ms' must be greater than 0");
+        }
+        if (minTabletRows < 1) {
+            throw new ConfigValidationException(
+                    "'processing.writer.accumulation.min_tablet_rows' must be at least 1");
+        }
+    }
+}
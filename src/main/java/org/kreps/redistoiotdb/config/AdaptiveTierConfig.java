@@ -0,0 +1,54 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AdaptiveTierConfig {
+    @JsonProperty("enabled")
+    private boolean enabled = false;
+
+    @JsonProperty("evaluation_interval_ms")
+    private int evaluationIntervalMs = 300000;
+
+    @JsonProperty("min_observations")
+    private int minObservations = 5;
+
+    @JsonProperty("promote_change_ratio")
+    private double promoteChangeRatio = 0.8;
+
+    @JsonProperty("demote_change_ratio")
+    private double demoteChangeRatio = 0.1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getEvaluationIntervalMs() {
+        return evaluationIntervalMs;
+    }
+
+    public int getMinObservations() {
+        return minObservations;
+    }
+
+    public double getPromoteChangeRatio() {
+        return promoteChangeRatio;
+    }
+
+    public double getDemoteChangeRatio() {
+        return demoteChangeRatio;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (evaluationIntervalMs <= 0) {
+            throw new ConfigValidationException(
+                    "'processing.fetcher.adaptive.evaluation_interval_ms' must be greater than 0");
+        }
+        if (minObservations <= 0) {
+            throw new ConfigValidationException("'processing.fetcher.adaptive.min_observations' must be greater than 0");
+        }
+        if (demoteChangeRatio < 0 || promoteChangeRatio > 1 || demoteChangeRatio >= promoteChangeRatio) {
+            throw new ConfigValidationException("'processing.fetcher.adaptive' change ratios must satisfy "
+                    + "0 <= demote_change_ratio < promote_change_ratio <= 1");
+        }
+    }
+}
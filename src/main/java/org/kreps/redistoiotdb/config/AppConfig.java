@@ -1,7 +1,9 @@
 package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.kreps.redistoiotdb.model.TagDictionary;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class AppConfig {
 
@@ -17,7 +19,12 @@ public class AppConfig {
     @JsonProperty("retry")
     private RetryConfig retryConfig;
 
-    private List<String> tags; // Loaded tags from CSV
+    @JsonProperty("replay")
+    private ReplayConfig replayConfig = new ReplayConfig();
+
+    // Loaded tags from CSV with their tier and priority, replaced as a whole when the file is reloaded
+    private volatile TagSet tagSet = new TagSet(null, null);
+    private TagDictionary tagDictionary; // Integer IDs of the tags loaded at startup
 
     // Getters
     public SourceConfig getSourceConfig() {
@@ -33,17 +40,75 @@ public class AppConfig {
     }
 
     public List<String> getTags() {
-        return tags;
+        return tagSet.tags;
     }
 
     public void setTags(List<String> tags) {
-        this.tags = tags;
+        this.tagSet = new TagSet(tags, tagSet.definitions);
+    }
+
+    /**
+     * @return the tags with their tier and priority, or the plain tags with neither if none were set.
+     */
+    public List<TagDefinition> getTagDefinitions() {
+        TagSet current = tagSet;
+        if (current.definitions == null && current.tags != null) {
+            return current.tags.stream().map(tag -> new TagDefinition(tag, null, 0)).collect(Collectors.toList());
+        }
+        return current.definitions;
+    }
+
+    public void setTagDefinitions(List<TagDefinition> tagDefinitions) {
+        this.tagSet = new TagSet(tagSet.tags, tagDefinitions);
+    }
+
+    /**
+     * Replaces the tags and their definitions together, so that a reader never sees
+     * the tags of one version of the file with the definitions of another.
+     */
+    public void replaceTags(List<String> tags, List<TagDefinition> tagDefinitions) {
+        this.tagSet = new TagSet(tags, tagDefinitions);
+    }
+
+    /**
+     * @return the dictionary of the tags loaded at startup, or null if it was not built.
+     *         Tags added by a reload are not in it and are handled by path.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    public void setTagDictionary(TagDictionary tagDictionary) {
+        this.tagDictionary = tagDictionary;
+    }
+
+    /**
+     * Checks that every tier named in the tags CSV is configured under {@code processing.fetcher.tiers}.
+     */
+    public void validateTagTiers() throws ConfigValidationException {
+        validateTagTiers(getTagDefinitions());
+    }
+
+    public void validateTagTiers(List<TagDefinition> definitions) throws ConfigValidationException {
+        for (TagDefinition definition : definitions) {
+            String tier = definition.getTier();
+            // The default tier always exists, configured or not
+            if (tier != null && !FetcherConfig.DEFAULT_TIER.equals(tier)
+                    && !processingConfig.getFetcher().getTiers().containsKey(tier)) {
+                throw new ConfigValidationException("Tag '" + definition.getName() + "' uses tier '" + tier
+                        + "' which is not configured in 'processing.fetcher.tiers'");
+            }
+        }
     }
 
     public RetryConfig getRetryConfig() {
         return retryConfig;
     }
 
+    public ReplayConfig getReplayConfig() {
+        return replayConfig;
+    }
+
     public void validate() throws ConfigValidationException {
         if (sourceConfig == null) {
             throw new ConfigValidationException("'source' section is missing");
@@ -58,6 +123,32 @@ public class AppConfig {
         sourceConfig.validate();
         destinationConfig.validate();
         processingConfig.validate();
+        if (processingConfig.getColumnar().isEnabled() && !SourceConfig.TYPE_HTTP.equals(sourceConfig.getType())) {
+            throw new ConfigValidationException("'processing.columnar' is only supported with the 'http' source");
+        }
+        if (processingConfig.getColumnar().isEnabled()
+                && processingConfig.getFetcher().getAdaptive().isEnabled()) {
+            throw new ConfigValidationException(
+                    "'processing.columnar' cannot be combined with 'processing.fetcher.adaptive'");
+        }
         retryConfig.validate();
+        replayConfig.validate();
+
+        RedisSettings redisSettings = sourceConfig.getRedisSettings();
+        String historyUrl = redisSettings != null ? redisSettings.getHistoryUrl() : null;
+        if (processingConfig.getBackfill().isEnabled() && (historyUrl == null || historyUrl.isEmpty())) {
+            throw new ConfigValidationException(
+                    "'source.redis.history_url' is required when 'processing.backfill.enabled' is true");
+        }
+    }
+
+    private static final class TagSet {
+        private final List<String> tags;
+        private final List<TagDefinition> definitions;
+
+        private TagSet(List<String> tags, List<TagDefinition> definitions) {
+            this.tags = tags;
+            this.definitions = definitions;
+        }
     }
 }
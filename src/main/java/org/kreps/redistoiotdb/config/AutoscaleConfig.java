@@ -0,0 +1,103 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class AutoscaleConfig {
+    @JsonProperty("enabled")
+    private boolean enabled = false;
+
+    @JsonProperty("min_writers")
+    private int minWriters = 1;
+
+    @JsonProperty("max_writers")
+    private int maxWriters = 0;
+
+    @JsonProperty("interval_ms")
+    private int intervalMs = 5000;
+
+    @JsonProperty("scale_up_queue_ratio")
+    private double scaleUpQueueRatio = 0.5;
+
+    @JsonProperty("scale_down_queue_ratio")
+    private double scaleDownQueueRatio = 0.05;
+
+    @JsonProperty("max_insert_latency_ms")
+    private int maxInsertLatencyMs = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMinWriters() {
+        return minWriters;
+    }
+
+    /**
+     * @return the most writers to run, or 0 to use {@code pool_size}.
+     */
+    public int getMaxWriters() {
+        return maxWriters;
+    }
+
+    /**
+     * @return interval between scaling decisions; the writer count changes by at most one each time.
+     */
+    public int getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return share of the queue that must be filled before a writer is added.
+     */
+    public double getScaleUpQueueRatio() {
+        return scaleUpQueueRatio;
+    }
+
+    /**
+     * @return share of the queue that may at most be filled for a writer to be removed.
+     */
+    public double getScaleDownQueueRatio() {
+        return scaleDownQueueRatio;
+    }
+
+    /**
+     * @return average insert latency above which IoTDB is taken to be saturated, so writers are removed.
+     */
+    public int getMaxInsertLatencyMs() {
+        return maxInsertLatencyMs;
+    }
+
+    public void validate(int poolSize) throws ConfigValidationException {
+        if (!enabled) {
+            return;
+        }
+        if (minWriters <= 0) {
+            throw new ConfigValidationException("'processing.writer.autoscale.min_writers' must be greater than 0");
+        }
+        int max = maxWriters > 0 ? maxWriters : poolSize;
+        if (max < minWriters) {
+            throw new ConfigValidationException(
+                    "'processing.writer.autoscale.max_writers' must be at least 'min_writers'");
+        }
+        if (poolSize < minWriters || poolSize > max) {
+            throw new ConfigValidationException(
+                    "'processing.writer.pool_size' must be between 'autoscale.min_writers' and 'autoscale.max_writers'");
+        }
+        if (intervalMs <= 0) {
+            throw new ConfigValidationException("'processing.writer.autoscale.interval_ms' must be greater than 0");
+        }
+        if (scaleUpQueueRatio <= 0 || scaleUpQueueRatio > 1) {
+            throw new ConfigValidationException(
+                    "'processing.writer.autoscale.scale_up_queue_ratio' must be greater than 0 and at most 1");
+        }
+        if (scaleDownQueueRatio < 0 || scaleDownQueueRatio >= scaleUpQueueRatio) {
+            throw new ConfigValidationException(
+                    "'processing.writer.autoscale.scale_down_queue_ratio' must be at least 0 and below "
+                            + "'scale_up_queue_ratio'");
+        }
+        if (maxInsertLatencyMs <= 0) {
+            throw new ConfigValidationException(
+                    "'processing.writer.autoscale.max_insert_latency_ms' must be greater than 0");
+        }
+    }
+}
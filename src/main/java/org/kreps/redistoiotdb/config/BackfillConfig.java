@@ -0,0 +1,65 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class BackfillConfig {
+    @JsonProperty("enabled")
+    private boolean enabled = false;
+
+    @JsonProperty("interval_ms")
+    private int intervalMs = 5000;
+
+    @JsonProperty("max_concurrent")
+    private int maxConcurrent = 2;
+
+    @JsonProperty("max_window_ms")
+    private long maxWindowMs = 3600000;
+
+    @JsonProperty("max_tags_per_request")
+    private int maxTagsPerRequest = 100;
+
+    @JsonProperty("min_free_queue_ratio")
+    private double minFreeQueueRatio = 0.5;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public long getMaxWindowMs() {
+        return maxWindowMs;
+    }
+
+    public int getMaxTagsPerRequest() {
+        return maxTagsPerRequest;
+    }
+
+    public double getMinFreeQueueRatio() {
+        return minFreeQueueRatio;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (intervalMs <= 0) {
+            throw new ConfigValidationException("'processing.backfill.interval_ms' must be greater than 0");
+        }
+        if (maxConcurrent <= 0) {
+            throw new ConfigValidationException("'processing.backfill.max_concurrent' must be greater than 0");
+        }
+        if (maxWindowMs <= 0) {
+            throw new ConfigValidationException("'processing.backfill.max_window_ms' must be greater than 0");
+        }
+        if (maxTagsPerRequest <= 0) {
+            throw new ConfigValidationException("'processing.backfill.max_tags_per_request' must be greater than 0");
+        }
+        if (minFreeQueueRatio < 0 || minFreeQueueRatio > 1) {
+            throw new ConfigValidationException("'processing.backfill.min_free_queue_ratio' must be between 0 and 1");
+        }
+    }
+}
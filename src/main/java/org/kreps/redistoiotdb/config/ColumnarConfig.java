@@ -0,0 +1,54 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ColumnarConfig {
+    @JsonProperty("enabled")
+    private boolean enabled = false;
+
+    @JsonProperty("rows_per_buffer")
+    private int rowsPerBuffer = 64;
+
+    @JsonProperty("max_age_ms")
+    private int maxAgeMs = 5000;
+
+    @JsonProperty("ready_buffers")
+    private int readyBuffers = 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return rows a device buffer holds before it is handed to a writer.
+     */
+    public int getRowsPerBuffer() {
+        return rowsPerBuffer;
+    }
+
+    /**
+     * @return age of the oldest row after which a partly filled buffer is handed to a writer.
+     */
+    public int getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    /**
+     * @return full buffers waiting for a writer before further rows are dropped.
+     */
+    public int getReadyBuffers() {
+        return readyBuffers;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (rowsPerBuffer <= 0) {
+            throw new ConfigValidationException("'processing.columnar.rows_per_buffer' must be greater than 0");
+        }
+        if (maxAgeMs <= 0) {
+            throw new ConfigValidationException("'processing.columnar.max_age_ms' must be greater than 0");
+        }
+        if (readyBuffers <= 0) {
+            throw new ConfigValidationException("'processing.columnar.ready_buffers' must be greater than 0");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kreps.redistoiotdb.model.TagDictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
@@ -27,11 +28,13 @@ public class ConfigLoader {
         logger.info("Loading tags from CSV file: {}", config.getSourceConfig().getTagsFile());
         try {
             TagCsvParser tagParser = new TagCsvParser(config.getSourceConfig().getTagsFile());
-            config.setTags(tagParser.getTags());
+            config.replaceTags(tagParser.getTags(), tagParser.getTagDefinitions());
+            config.setTagDictionary(new TagDictionary(tagParser.getTags()));
             tagParser.printTagsSummary();
         } catch (IOException e) {
             throw new ConfigValidationException("Failed to load tags from CSV file: " + e.getMessage());
         }
+        config.validateTagTiers();
 
         return config;
     }
@@ -2,21 +2,74 @@ package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class FetcherConfig {
+    // Tier of the tags without one, polled at interval_ms unless configured under tiers
+    public static final String DEFAULT_TIER = "default";
+
+    // Volatile, as they can be changed at runtime through JMX
     @JsonProperty("interval_ms")
-    private int intervalMs;
+    private volatile int intervalMs;
 
     @JsonProperty("timeout_ms")
-    private int timeoutMs;
+    private volatile int timeoutMs;
+
+    @JsonProperty("tiers")
+    private Map<String, Integer> tiers = new LinkedHashMap<>();
+
+    @JsonProperty("adaptive")
+    private AdaptiveTierConfig adaptive = new AdaptiveTierConfig();
+
+    @JsonProperty("compression")
+    private boolean compression = true;
+
+    @JsonProperty("hedge_percentile")
+    private double hedgePercentile = 95;
+
+    @JsonProperty("hedge_min_delay_ms")
+    private int hedgeMinDelayMs = 50;
 
     public int getIntervalMs() {
         return intervalMs;
     }
 
+    public void setIntervalMs(int intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
     public int getTimeoutMs() {
         return timeoutMs;
     }
 
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return poll interval in ms per tier name; tags without a tier use {@code interval_ms}.
+     */
+    public Map<String, Integer> getTiers() {
+        return tiers;
+    }
+
+    public AdaptiveTierConfig getAdaptive() {
+        return adaptive;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public int getHedgeMinDelayMs() {
+        return hedgeMinDelayMs;
+    }
+
     public void validate() throws ConfigValidationException {
         if (intervalMs <= 0) {
             throw new ConfigValidationException("'processing.fetcher.interval_ms' must be greater than 0");
@@ -24,5 +77,18 @@ public class FetcherConfig {
         if (timeoutMs <= 0) {
             throw new ConfigValidationException("'processing.fetcher.timeout_ms' must be greater than 0");
         }
+        for (Map.Entry<String, Integer> tier : tiers.entrySet()) {
+            if (tier.getValue() == null || tier.getValue() <= 0) {
+                throw new ConfigValidationException(
+                        "'processing.fetcher.tiers." + tier.getKey() + "' must be greater than 0");
+            }
+        }
+        adaptive.validate();
+        if (hedgePercentile <= 0 || hedgePercentile > 100) {
+            throw new ConfigValidationException("'processing.fetcher.hedge_percentile' must be between 0 and 100");
+        }
+        if (hedgeMinDelayMs < 0) {
+            throw new ConfigValidationException("'processing.fetcher.hedge_min_delay_ms' must not be negative");
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class HealthConfig {
+    @JsonProperty("window_ms")
+    private int windowMs = 10000;
+
+    @JsonProperty("min_requests")
+    private int minRequests = 5;
+
+    @JsonProperty("error_rate_threshold")
+    private double errorRateThreshold = 0.5;
+
+    @JsonProperty("idle_probe_ms")
+    private int idleProbeMs = 5000;
+
+    @JsonProperty("down_probe_ms")
+    private int downProbeMs = 1000;
+
+    /**
+     * @return the span of recent inserts a node's error rate is computed over.
+     */
+    public int getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * @return inserts a node needs within the window before its error rate can mark it down.
+     */
+    public int getMinRequests() {
+        return minRequests;
+    }
+
+    public double getErrorRateThreshold() {
+        return errorRateThreshold;
+    }
+
+    /**
+     * @return how long a node may go without inserts before it is probed.
+     */
+    public int getIdleProbeMs() {
+        return idleProbeMs;
+    }
+
+    /**
+     * @return interval between probes of a node that is marked down.
+     */
+    public int getDownProbeMs() {
+        return downProbeMs;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (windowMs <= 0) {
+            throw new ConfigValidationException("'iotdb_settings.health.window_ms' must be greater than 0");
+        }
+        if (minRequests <= 0) {
+            throw new ConfigValidationException("'iotdb_settings.health.min_requests' must be greater than 0");
+        }
+        if (errorRateThreshold <= 0 || errorRateThreshold > 1) {
+            throw new ConfigValidationException(
+                    "'iotdb_settings.health.error_rate_threshold' must be greater than 0 and at most 1");
+        }
+        if (idleProbeMs <= 0) {
+            throw new ConfigValidationException("'iotdb_settings.health.idle_probe_ms' must be greater than 0");
+        }
+        if (downProbeMs <= 0) {
+            throw new ConfigValidationException("'iotdb_settings.health.down_probe_ms' must be greater than 0");
+        }
+    }
+}
@@ -2,6 +2,10 @@ package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class IoTDBSettings {
     @JsonProperty("host")
     private String host;
@@ -18,6 +22,18 @@ public class IoTDBSettings {
     @JsonProperty("session_pool_size")
     private int sessionPoolSize;
 
+    @JsonProperty("node_urls")
+    private List<String> nodeUrls = new ArrayList<>();
+
+    @JsonProperty("enable_redirection")
+    private boolean enableRedirection = false;
+
+    @JsonProperty("dedicated_writer_sessions")
+    private boolean dedicatedWriterSessions = false;
+
+    @JsonProperty("health")
+    private HealthConfig health = new HealthConfig();
+
     // Getters and setters
     public String getHost() {
         return host;
@@ -59,12 +75,60 @@ public class IoTDBSettings {
         this.sessionPoolSize = sessionPoolSize;
     }
 
+    /**
+     * @return the cluster nodes as {@code host:port}, or just {@code host} and {@code port} if no nodes are listed.
+     */
+    public List<String> getNodeUrls() {
+        if (nodeUrls.isEmpty()) {
+            return Collections.singletonList(host + ":" + port);
+        }
+        return Collections.unmodifiableList(nodeUrls);
+    }
+
+    public void setNodeUrls(List<String> nodeUrls) {
+        this.nodeUrls = nodeUrls;
+    }
+
+    /**
+     * @return whether writes for a device are sent straight to the node that leads its data region.
+     */
+    public boolean isEnableRedirection() {
+        return enableRedirection;
+    }
+
+    /**
+     * @return whether every writer inserts through its own session instead of the shared pool.
+     */
+    public boolean isDedicatedWriterSessions() {
+        return dedicatedWriterSessions;
+    }
+
+    public HealthConfig getHealth() {
+        return health;
+    }
+
     public void validate() throws ConfigValidationException {
-        if (host == null || host.isEmpty()) {
-            throw new ConfigValidationException("'iotdb_settings.host' is missing or empty");
+        if (nodeUrls.isEmpty()) {
+            if (host == null || host.isEmpty()) {
+                throw new ConfigValidationException("'iotdb_settings.host' is missing or empty");
+            }
+            if (port <= 0 || port > 65535) {
+                throw new ConfigValidationException(
+                        "'iotdb_settings.port' is invalid. It must be between 1 and 65535");
+            }
         }
-        if (port <= 0 || port > 65535) {
-            throw new ConfigValidationException("'iotdb_settings.port' is invalid. It must be between 1 and 65535");
+        for (String nodeUrl : nodeUrls) {
+            int separator = nodeUrl != null ? nodeUrl.lastIndexOf(':') : -1;
+            int nodePort;
+            try {
+                nodePort = separator > 0 ? Integer.parseInt(nodeUrl.substring(separator + 1)) : -1;
+            } catch (NumberFormatException e) {
+                nodePort = -1;
+            }
+            if (nodePort <= 0 || nodePort > 65535) {
+                throw new ConfigValidationException(
+                        "'iotdb_settings.node_urls' entry '" + nodeUrl + "' is invalid. It must be host:port");
+            }
         }
         if (username == null || username.isEmpty()) {
             throw new ConfigValidationException("'iotdb_settings.username' is missing or empty");
@@ -76,5 +140,6 @@ public class IoTDBSettings {
             throw new ConfigValidationException(
                     "'iotdb_settings.session_pool_size' is invalid. It must be greater than 0");
         }
+        health.validate();
     }
 }
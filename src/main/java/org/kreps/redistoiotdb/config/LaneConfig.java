@@ -0,0 +1,60 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class LaneConfig {
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("min_priority")
+    private int minPriority = 0;
+
+    @JsonProperty("weight")
+    private int weight = 1;
+
+    @JsonProperty("sheddable")
+    private boolean sheddable = true;
+
+    public LaneConfig() {
+    }
+
+    /**
+     * A lane for every priority that is never shed, used when no lanes are configured.
+     */
+    public LaneConfig(String name) {
+        this.name = name;
+        this.minPriority = Integer.MIN_VALUE;
+        this.sheddable = false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the lowest tag priority routed to this lane.
+     */
+    public int getMinPriority() {
+        return minPriority;
+    }
+
+    /**
+     * @return the share of writer polls this lane gets while other lanes are also backed up.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public boolean isSheddable() {
+        return sheddable;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (name == null || name.trim().isEmpty()) {
+            throw new ConfigValidationException("'processing.queue.lanes[].name' is required");
+        }
+        if (weight <= 0) {
+            throw new ConfigValidationException("'processing.queue.lanes." + name + ".weight' must be greater than 0");
+        }
+    }
+}
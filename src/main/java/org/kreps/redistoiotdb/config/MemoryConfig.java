@@ -0,0 +1,35 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class MemoryConfig {
+    @JsonProperty("budget_bytes")
+    private long budgetBytes = 0;
+
+    @JsonProperty("backpressure_timeout_ms")
+    private int backpressureTimeoutMs = 1000;
+
+    /**
+     * @return the heap budget for queued and in-flight data points; 0 disables the budget.
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public boolean isEnabled() {
+        return budgetBytes > 0;
+    }
+
+    public int getBackpressureTimeoutMs() {
+        return backpressureTimeoutMs;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (budgetBytes < 0) {
+            throw new ConfigValidationException("'processing.memory.budget_bytes' must not be negative");
+        }
+        if (backpressureTimeoutMs <= 0) {
+            throw new ConfigValidationException("'processing.memory.backpressure_timeout_ms' must be greater than 0");
+        }
+    }
+}
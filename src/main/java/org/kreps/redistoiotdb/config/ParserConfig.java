@@ -0,0 +1,38 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ParserConfig {
+    @JsonProperty("threads")
+    private int threads = 2;
+
+    @JsonProperty("queue_capacity")
+    private int queueCapacity = 64;
+
+    @JsonProperty("chunk_size_bytes")
+    private int chunkSizeBytes = 1024 * 1024;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (threads <= 0) {
+            throw new ConfigValidationException("'processing.parser.threads' must be greater than 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new ConfigValidationException("'processing.parser.queue_capacity' must be greater than 0");
+        }
+        if (chunkSizeBytes <= 0) {
+            throw new ConfigValidationException("'processing.parser.chunk_size_bytes' must be greater than 0");
+        }
+    }
+}
@@ -4,6 +4,10 @@ public class ProcessingConfig {
     private WriterConfig writer;
     private QueueConfig queue;
     private FetcherConfig fetcher;
+    private BackfillConfig backfill = new BackfillConfig();
+    private ParserConfig parser = new ParserConfig();
+    private MemoryConfig memory = new MemoryConfig();
+    private ColumnarConfig columnar = new ColumnarConfig();
 
     // Getters
     public WriterConfig getWriter() {
@@ -18,6 +22,22 @@ public class ProcessingConfig {
         return fetcher;
     }
 
+    public BackfillConfig getBackfill() {
+        return backfill;
+    }
+
+    public ParserConfig getParser() {
+        return parser;
+    }
+
+    public MemoryConfig getMemory() {
+        return memory;
+    }
+
+    public ColumnarConfig getColumnar() {
+        return columnar;
+    }
+
     public void validate() throws ConfigValidationException {
         // Validate existence of config objects
         if (writer == null) {
@@ -34,5 +54,9 @@ public class ProcessingConfig {
         writer.validate();
         queue.validate();
         fetcher.validate();
+        backfill.validate();
+        parser.validate();
+        memory.validate();
+        columnar.validate();
     }
 }
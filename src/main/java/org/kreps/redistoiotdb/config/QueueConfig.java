@@ -2,17 +2,94 @@ package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public class QueueConfig {
+    public static final String SHEDDING_NONE = "none";
+    public static final String SHEDDING_LOWEST_FIRST = "lowest_first";
+    public static final String OVERFLOW_BLOCK_TIMEOUT = "block_timeout";
+    public static final String OVERFLOW_DROP_OLDEST = "drop_oldest";
+    public static final String OVERFLOW_DROP_NEWEST = "drop_newest";
+    public static final String OVERFLOW_CONFLATE = "conflate";
+    public static final String OVERFLOW_SPILL = "spill";
+    private static final List<String> OVERFLOW_POLICIES = Arrays.asList(OVERFLOW_BLOCK_TIMEOUT,
+            OVERFLOW_DROP_OLDEST, OVERFLOW_DROP_NEWEST, OVERFLOW_CONFLATE, OVERFLOW_SPILL);
+
     @JsonProperty("capacity")
     private int capacity;
 
+    @JsonProperty("lanes")
+    private List<LaneConfig> lanes = new ArrayList<>();
+
+    @JsonProperty("shedding")
+    private String shedding = SHEDDING_NONE;
+
+    @JsonProperty("overflow_policy")
+    private String overflowPolicy = OVERFLOW_DROP_NEWEST;
+
+    @JsonProperty("block_timeout_ms")
+    private int blockTimeoutMs = 1000;
+
+    @JsonProperty("spill_directory")
+    private String spillDirectory = "spill";
+
     public int getCapacity() {
         return capacity;
     }
 
+    /**
+     * @return the priority lanes; empty for a single FIFO queue.
+     */
+    public List<LaneConfig> getLanes() {
+        return lanes;
+    }
+
+    public String getShedding() {
+        return shedding;
+    }
+
+    /**
+     * @return what a full queue does with a new data point from a source.
+     */
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getBlockTimeoutMs() {
+        return blockTimeoutMs;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
     public void validate() throws ConfigValidationException {
         if (capacity <= 0) {
             throw new ConfigValidationException("'processing.queue.capacity' must be greater than 0");
         }
+        Set<String> names = new HashSet<>();
+        for (LaneConfig lane : lanes) {
+            lane.validate();
+            if (!names.add(lane.getName())) {
+                throw new ConfigValidationException("Duplicate queue lane '" + lane.getName() + "'");
+            }
+        }
+        if (!SHEDDING_NONE.equals(shedding) && !SHEDDING_LOWEST_FIRST.equals(shedding)) {
+            throw new ConfigValidationException("'processing.queue.shedding' must be '" + SHEDDING_NONE
+                    + "' or '" + SHEDDING_LOWEST_FIRST + "'");
+        }
+        if (!OVERFLOW_POLICIES.contains(overflowPolicy)) {
+            throw new ConfigValidationException("'processing.queue.overflow_policy' must be one of " + OVERFLOW_POLICIES);
+        }
+        if (blockTimeoutMs <= 0) {
+            throw new ConfigValidationException("'processing.queue.block_timeout_ms' must be greater than 0");
+        }
+        if (OVERFLOW_SPILL.equals(overflowPolicy) && (spillDirectory == null || spillDirectory.trim().isEmpty())) {
+            throw new ConfigValidationException("'processing.queue.spill_directory' is required for the spill policy");
+        }
     }
-}   
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class RateLimitConfig {
+    @JsonProperty("max_points_per_second")
+    private double maxPointsPerSecond = 0;
+
+    @JsonProperty("max_bytes_per_second")
+    private double maxBytesPerSecond = 0;
+
+    @JsonProperty("backlog_age_ms")
+    private long backlogAgeMs = 300000;
+
+    /**
+     * @return points all writers together may insert per second, 0 for no limit.
+     */
+    public double getMaxPointsPerSecond() {
+        return maxPointsPerSecond;
+    }
+
+    /**
+     * @return payload bytes all writers together may insert per second, 0 for no limit.
+     */
+    public double getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * @return inserts whose newest point is older than this count as backlog and yield to live data.
+     */
+    public long getBacklogAgeMs() {
+        return backlogAgeMs;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (maxPointsPerSecond < 0) {
+            throw new ConfigValidationException(
+                    "'processing.writer.rate_limit.max_points_per_second' must not be negative");
+        }
+        if (maxBytesPerSecond < 0) {
+            throw new ConfigValidationException(
+                    "'processing.writer.rate_limit.max_bytes_per_second' must not be negative");
+        }
+        if (backlogAgeMs <= 0) {
+            throw new ConfigValidationException(
+                    "'processing.writer.rate_limit.backlog_age_ms' must be greater than 0");
+        }
+    }
+}
@@ -2,14 +2,23 @@ package org.kreps.redistoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class RedisSettings {
 
     @JsonProperty("api_url")
     private String apiUrl;
 
+    @JsonProperty("api_urls")
+    private List<String> apiUrls;
+
     @JsonProperty("user_key")
     private String userKey;
 
+    @JsonProperty("history_url")
+    private String historyUrl;
+
     // Getters and setters
     public String getApiUrl() {
         return apiUrl;
@@ -19,6 +28,28 @@ public class RedisSettings {
         this.apiUrl = apiUrl;
     }
 
+    /**
+     * Returns all configured API endpoints: {@code api_url} first, followed by {@code api_urls}.
+     */
+    public List<String> getApiUrls() {
+        List<String> urls = new ArrayList<>();
+        if (apiUrl != null && !apiUrl.isEmpty()) {
+            urls.add(apiUrl);
+        }
+        if (apiUrls != null) {
+            for (String url : apiUrls) {
+                if (url != null && !url.isEmpty() && !urls.contains(url)) {
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    public void setApiUrls(List<String> apiUrls) {
+        this.apiUrls = apiUrls;
+    }
+
     public String getUserKey() {
         return userKey;
     }
@@ -27,9 +58,17 @@ public class RedisSettings {
         this.userKey = userKey;
     }
 
+    public String getHistoryUrl() {
+        return historyUrl;
+    }
+
+    public void setHistoryUrl(String historyUrl) {
+        this.historyUrl = historyUrl;
+    }
+
     public void validate() throws ConfigValidationException {
-        if (apiUrl == null || apiUrl.isEmpty()) {
-            throw new ConfigValidationException("'source.redis.api_url' is missing or empty");
+        if (getApiUrls().isEmpty()) {
+            throw new ConfigValidationException("'source.redis.api_url' or 'source.redis.api_urls' is missing or empty");
         }
         if (userKey == null || userKey.isEmpty()) {
             throw new ConfigValidationException("'source.redis.user_key' is missing or empty");
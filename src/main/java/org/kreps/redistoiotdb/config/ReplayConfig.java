@@ -0,0 +1,48 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ReplayConfig {
+    @JsonProperty("directory")
+    private String directory = "failed_payloads";
+
+    @JsonProperty("threads")
+    private int threads = 4;
+
+    @JsonProperty("max_in_flight")
+    private int maxInFlight = 16;
+
+    @JsonProperty("max_points_per_second")
+    private int maxPointsPerSecond = 0;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxPointsPerSecond() {
+        return maxPointsPerSecond;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (directory == null || directory.isEmpty()) {
+            throw new ConfigValidationException("'replay.directory' is missing or empty");
+        }
+        if (threads <= 0) {
+            throw new ConfigValidationException("'replay.threads' must be greater than 0");
+        }
+        if (maxInFlight <= 0) {
+            throw new ConfigValidationException("'replay.max_in_flight' must be greater than 0");
+        }
+        if (maxPointsPerSecond < 0) {
+            throw new ConfigValidationException("'replay.max_points_per_second' must not be negative");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class RespSettings {
+    public static final String COMMAND_HMGET = "hmget";
+    public static final String COMMAND_HGETALL = "hgetall";
+
+    @JsonProperty("host")
+    private String host;
+
+    @JsonProperty("port")
+    private int port = 6379;
+
+    @JsonProperty("password")
+    private String password;
+
+    @JsonProperty("database")
+    private int database = 0;
+
+    @JsonProperty("key_prefix")
+    private String keyPrefix = "tag:";
+
+    @JsonProperty("connections")
+    private int connections = 4;
+
+    @JsonProperty("pipeline_size")
+    private int pipelineSize = 500;
+
+    @JsonProperty("command")
+    private String command = COMMAND_HMGET;
+
+    @JsonProperty("connect_timeout_ms")
+    private int connectTimeoutMs = 5000;
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getDatabase() {
+        return database;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getPipelineSize() {
+        return pipelineSize;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (host == null || host.isEmpty()) {
+            throw new ConfigValidationException("'source.resp.host' is missing or empty");
+        }
+        if (port <= 0 || port > 65535) {
+            throw new ConfigValidationException("'source.resp.port' is invalid. It must be between 1 and 65535");
+        }
+        if (database < 0) {
+            throw new ConfigValidationException("'source.resp.database' must not be negative");
+        }
+        if (keyPrefix == null) {
+            throw new ConfigValidationException("'source.resp.key_prefix' must not be null");
+        }
+        if (connections <= 0) {
+            throw new ConfigValidationException("'source.resp.connections' must be greater than 0");
+        }
+        if (pipelineSize <= 0) {
+            throw new ConfigValidationException("'source.resp.pipeline_size' must be greater than 0");
+        }
+        if (!COMMAND_HMGET.equals(command) && !COMMAND_HGETALL.equals(command)) {
+            throw new ConfigValidationException("'source.resp.command' must be 'hmget' or 'hgetall'");
+        }
+        if (connectTimeoutMs <= 0) {
+            throw new ConfigValidationException("'source.resp.connect_timeout_ms' must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class RetryBudgetConfig {
+    @JsonProperty("max_tokens")
+    private int maxTokens = 100;
+
+    @JsonProperty("tokens_per_second")
+    private double tokensPerSecond = 10;
+
+    /**
+     * @return retries that may be made in a burst once the budget is full.
+     */
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * @return rate at which retries are earned back, shared by every caller.
+     */
+    public double getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (maxTokens <= 0) {
+            throw new ConfigValidationException("'retry.budget.max_tokens' must be greater than 0");
+        }
+        if (tokensPerSecond <= 0) {
+            throw new ConfigValidationException("'retry.budget.tokens_per_second' must be greater than 0");
+        }
+    }
+}
@@ -3,34 +3,58 @@ package org.kreps.redistoiotdb.config;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class RetryConfig {
+    // Volatile, as they can be changed at runtime through JMX
     @JsonProperty("initial_delay_ms")
-    private long initialDelayMs;
+    private volatile long initialDelayMs;
 
     @JsonProperty("max_delay_ms")
-    private long maxDelayMs;
+    private volatile long maxDelayMs;
 
     @JsonProperty("max_attempts")
-    private int maxAttempts;
+    private volatile int maxAttempts;
 
     @JsonProperty("backoff_multiplier")
-    private double backoffMultiplier;
+    private volatile double backoffMultiplier;
+
+    @JsonProperty("budget")
+    private RetryBudgetConfig budget = new RetryBudgetConfig();
 
     public long getInitialDelayMs() {
         return initialDelayMs;
     }
 
+    public void setInitialDelayMs(long initialDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+    }
+
     public long getMaxDelayMs() {
         return maxDelayMs;
     }
 
+    public void setMaxDelayMs(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
     public int getMaxAttempts() {
         return maxAttempts;
     }
 
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
     public double getBackoffMultiplier() {
         return backoffMultiplier;
     }
 
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    public RetryBudgetConfig getBudget() {
+        return budget;
+    }
+
     public void validate() throws ConfigValidationException {
         if (initialDelayMs <= 0) {
             throw new ConfigValidationException("initial_delay_ms must be positive");
@@ -44,5 +68,6 @@ public class RetryConfig {
         if (backoffMultiplier <= 1.0) {
             throw new ConfigValidationException("backoff_multiplier must be greater than 1.0");
         }
+        budget.validate();
     }
 }
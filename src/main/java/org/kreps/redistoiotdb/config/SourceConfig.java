@@ -3,29 +3,79 @@ package org.kreps.redistoiotdb.config;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class SourceConfig {
+    public static final String TYPE_HTTP = "http";
+    public static final String TYPE_RESP = "resp";
+    public static final String TYPE_STREAM = "stream";
+
+    @JsonProperty("type")
+    private String type = TYPE_HTTP;
+
     @JsonProperty("redis")
     private RedisSettings redisSettings;
 
+    @JsonProperty("resp")
+    private RespSettings respSettings;
+
+    @JsonProperty("stream")
+    private StreamSettings streamSettings = new StreamSettings();
+
     @JsonProperty("tags_file")
     private String tagsFile;
 
+    @JsonProperty("tags_reload_ms")
+    private long tagsReloadMs = 5000;
+
     // Getters
+    public String getType() {
+        return type;
+    }
+
     public RedisSettings getRedisSettings() {
         return redisSettings;
     }
 
+    public RespSettings getRespSettings() {
+        return respSettings;
+    }
+
+    public StreamSettings getStreamSettings() {
+        return streamSettings;
+    }
+
     public String getTagsFile() {
         return tagsFile;
     }
 
+    /**
+     * @return how often the tags file is checked for changes, 0 if it is only read at startup.
+     */
+    public long getTagsReloadMs() {
+        return tagsReloadMs;
+    }
+
     public void validate() throws ConfigValidationException {
-        if (redisSettings == null) {
-            throw new ConfigValidationException("'source.redis' section is missing");
-        }
         if (tagsFile == null || tagsFile.isEmpty()) {
             throw new ConfigValidationException("'source.tags_file' is missing or empty");
         }
+        if (tagsReloadMs < 0) {
+            throw new ConfigValidationException("'source.tags_reload_ms' must not be negative");
+        }
 
-        redisSettings.validate();
+        if (TYPE_HTTP.equals(type)) {
+            if (redisSettings == null) {
+                throw new ConfigValidationException("'source.redis' section is missing");
+            }
+            redisSettings.validate();
+        } else if (TYPE_RESP.equals(type) || TYPE_STREAM.equals(type)) {
+            if (respSettings == null) {
+                throw new ConfigValidationException("'source.resp' section is missing");
+            }
+            respSettings.validate();
+            if (TYPE_STREAM.equals(type)) {
+                streamSettings.validate();
+            }
+        } else {
+            throw new ConfigValidationException("'source.type' must be 'http', 'resp' or 'stream'");
+        }
     }
 }
@@ -0,0 +1,68 @@
+package org.kreps.redistoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+public class StreamSettings {
+    @JsonProperty("keys")
+    private List<String> keys = Collections.singletonList("tag_stream");
+
+    @JsonProperty("group")
+    private String group = "iotdb-connector";
+
+    @JsonProperty("consumer")
+    private String consumer;
+
+    @JsonProperty("consumers")
+    private int consumers = 1;
+
+    @JsonProperty("count")
+    private int count = 500;
+
+    @JsonProperty("block_ms")
+    private int blockMs = 1000;
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getConsumer() {
+        return consumer;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getBlockMs() {
+        return blockMs;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (keys == null || keys.isEmpty()) {
+            throw new ConfigValidationException("'source.stream.keys' is missing or empty");
+        }
+        if (group == null || group.isEmpty()) {
+            throw new ConfigValidationException("'source.stream.group' is missing or empty");
+        }
+        if (consumers <= 0) {
+            throw new ConfigValidationException("'source.stream.consumers' must be greater than 0");
+        }
+        if (count <= 0) {
+            throw new ConfigValidationException("'source.stream.count' must be greater than 0");
+        }
+        if (blockMs <= 0) {
+            throw new ConfigValidationException("'source.stream.block_ms' must be greater than 0");
+        }
+    }
+}
@@ -11,9 +11,19 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * Reads the tags CSV in one of two formats:
+ * <ul>
+ * <li>a plain list of tags, any number of comma-separated tags per line;</li>
+ * <li>a tag catalog, recognised by a header line starting with {@code tag}
+ * (e.g. {@code tag,tier,priority}), with one tag per line and optional tier
+ * and priority columns.</li>
+ * </ul>
+ */
 public class TagCsvParser {
 
     private static final Logger logger = LoggerFactory.getLogger(TagCsvParser.class);
+    private final List<TagDefinition> tagDefinitions;
     private final List<String> tags;
 
     /**
@@ -27,26 +37,40 @@ public class TagCsvParser {
         if (!csvFile.exists()) {
             throw new IOException("Tags CSV file not found: " + filePath);
         }
-        this.tags = parseTagsFromCsv(filePath);
+        this.tagDefinitions = parseTagsFromCsv(filePath);
+        this.tags = tagDefinitions.stream().map(TagDefinition::getName).collect(Collectors.toList());
     }
 
     /**
-     * Parses the tags from a single line CSV file.
+     * Parses the tags from the CSV file.
      *
      * @param filePath The path to the CSV file.
      * @return A list of tags parsed from the file.
-     * @throws IOException If an error occurs during file reading.
+     * @throws IOException If an error occurs during file reading or a catalog line is invalid.
      */
-    private List<String> parseTagsFromCsv(String filePath) throws IOException {
-        List<String> parsedTags = new ArrayList<>();
+    private List<TagDefinition> parseTagsFromCsv(String filePath) throws IOException {
+        List<TagDefinition> parsedTags = new ArrayList<>();
         int lineNumber = 0;
+        boolean catalog = false;
 
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
-                List<String> lineTags = parseLine(line, lineNumber);
-                parsedTags.addAll(lineTags);
+                if (lineNumber == 1 && isCatalogHeader(line)) {
+                    catalog = true;
+                    continue;
+                }
+                if (catalog) {
+                    TagDefinition definition = parseCatalogLine(line, lineNumber);
+                    if (definition != null) {
+                        parsedTags.add(definition);
+                    }
+                } else {
+                    for (String tag : parseLine(line, lineNumber)) {
+                        parsedTags.add(new TagDefinition(tag, null, 0));
+                    }
+                }
             }
         }
 
@@ -59,6 +83,32 @@ public class TagCsvParser {
         return parsedTags;
     }
 
+    private static boolean isCatalogHeader(String line) {
+        String first = line.split(",", -1)[0].trim();
+        return first.equalsIgnoreCase("tag") && line.contains(",");
+    }
+
+    private TagDefinition parseCatalogLine(String line, int lineNumber) throws IOException {
+        String[] columns = line.split(",", -1);
+        String tag = columns[0].trim();
+        if (tag.isEmpty()) {
+            if (!line.trim().isEmpty()) {
+                logger.warn("Empty tag found on line {}. Skipping.", lineNumber);
+            }
+            return null;
+        }
+        String tier = columns.length > 1 && !columns[1].trim().isEmpty() ? columns[1].trim() : null;
+        int priority = 0;
+        if (columns.length > 2 && !columns[2].trim().isEmpty()) {
+            try {
+                priority = Integer.parseInt(columns[2].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid priority '" + columns[2].trim() + "' on line " + lineNumber);
+            }
+        }
+        return new TagDefinition(tag, tier, priority);
+    }
+
     private List<String> parseLine(String line, int lineNumber) {
         List<String> lineTags = new ArrayList<>();
         String[] rawTags = line.split(",");
@@ -84,6 +134,15 @@ public class TagCsvParser {
         return tags;
     }
 
+    /**
+     * Returns the parsed tags with their tier and priority; both are unset in the plain format.
+     *
+     * @return The list of tag definitions, in file order.
+     */
+    public List<TagDefinition> getTagDefinitions() {
+        return tagDefinitions;
+    }
+
     public void printTagsSummary() {
         logger.info("Total number of parsed tags: {}", tags.size());
         logger.info("First 5 tags: {}", tags.stream().limit(5).collect(Collectors.joining(", ")));
@@ -0,0 +1,39 @@
+package org.kreps.redistoiotdb.config;
+
+/**
+ * A tag from the tags CSV with its optional polling tier and priority.
+ */
+public class TagDefinition {
+    private final String name;
+    private final String tier;
+    private final int priority;
+
+    public TagDefinition(String name, String tier, int priority) {
+        this.name = name;
+        this.tier = tier;
+        this.priority = priority;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the configured tier, or null for the default tier.
+     */
+    public String getTier() {
+        return tier;
+    }
+
+    /**
+     * @return the priority, higher is more important; 0 if not set.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return name + (tier != null ? " [" + tier + "]" : "") + (priority != 0 ? " priority " + priority : "");
+    }
+}
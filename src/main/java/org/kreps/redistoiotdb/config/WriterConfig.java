@@ -6,11 +6,44 @@ public class WriterConfig {
     @JsonProperty("pool_size")
     private int poolSize;
 
+    // Volatile, as they can be changed at runtime through JMX
     @JsonProperty("batch_size")
-    private int batchSize;
+    private volatile int batchSize;
+
+    @JsonProperty("linger_ms")
+    private volatile int lingerMs = 100;
+
+    @JsonProperty("accumulation")
+    private AccumulationConfig accumulation = new AccumulationConfig();
+
+    @JsonProperty("rate_limit")
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+
+    @JsonProperty("autoscale")
+    private AutoscaleConfig autoscale = new AutoscaleConfig();
 
     public int getPoolSize() { return poolSize; }
     public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    /**
+     * @return how long a writer waits for the next point before it writes a batch that is not yet full.
+     */
+    public int getLingerMs() { return lingerMs; }
+    public void setLingerMs(int lingerMs) { this.lingerMs = lingerMs; }
+    public AccumulationConfig getAccumulation() { return accumulation; }
+    public RateLimitConfig getRateLimit() { return rateLimit; }
+    public AutoscaleConfig getAutoscale() { return autoscale; }
+
+    /**
+     * @return the most writers that can run at once: {@code pool_size}, or the autoscaling maximum.
+     */
+    public int getMaxWriters() {
+        if (autoscale.isEnabled() && autoscale.getMaxWriters() > 0) {
+            return autoscale.getMaxWriters();
+        }
+        return poolSize;
+    }
 
     public void validate() throws ConfigValidationException {
         if (poolSize <= 0) {
@@ -19,5 +52,11 @@ public class WriterConfig {
         if (batchSize <= 0) {
             throw new ConfigValidationException("'processing.writer.batch_size' must be greater than 0");
         }
+        if (lingerMs <= 0) {
+            throw new ConfigValidationException("'processing.writer.linger_ms' must be greater than 0");
+        }
+        accumulation.validate();
+        rateLimit.validate();
+        autoscale.validate(poolSize);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,208 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Dsl;
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.BackfillConfig;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.FailedRequest;
+import org.kreps.redistoiotdb.model.GapRange;
+import org.kreps.redistoiotdb.utils.FailedRequestLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Re-fetches ranges recorded in the {@link GapIndex} from the source's historical
+ * endpoint and feeds the results into the same queue as live polling.
+ * <p>
+ * Backfill yields to live traffic: a cycle is skipped while a live poll is in
+ * flight or while the queue has less free capacity than configured, and at most
+ * {@code max_concurrent} backfill requests run at once.
+ */
+public class BackfillWorker implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BackfillWorker.class);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final AppConfig config;
+    private final BackfillConfig backfillConfig;
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final GapIndex gapIndex;
+    private final BooleanSupplier livePollInFlight;
+    private final ParserPool parserPool;
+    private final ObjectMapper objectMapper;
+    private final AsyncHttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore requestPermits;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+    private final AtomicLong completedRanges = new AtomicLong();
+    private final AtomicLong failedRanges = new AtomicLong();
+    private final AtomicLong skippedCycles = new AtomicLong();
+
+    public BackfillWorker(AppConfig config, BlockingQueue<DataPoint> dataQueue, GapIndex gapIndex,
+            BooleanSupplier livePollInFlight, ParserPool parserPool) {
+        this.config = config;
+        this.backfillConfig = config.getProcessingConfig().getBackfill();
+        this.dataQueue = dataQueue;
+        this.gapIndex = gapIndex;
+        this.livePollInFlight = livePollInFlight;
+        this.parserPool = parserPool;
+        this.objectMapper = new ObjectMapper();
+        this.httpClient = Dsl.asyncHttpClient();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Backfill-Scheduler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.requestPermits = new Semaphore(backfillConfig.getMaxConcurrent());
+    }
+
+    public void start() {
+        if (isRunning.compareAndSet(false, true)) {
+            int intervalMs = backfillConfig.getIntervalMs();
+            scheduler.scheduleWithFixedDelay(this::runCycle, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            logger.info("BackfillWorker started with interval: {} ms, max concurrent requests: {}",
+                    intervalMs, backfillConfig.getMaxConcurrent());
+        }
+    }
+
+    private void runCycle() {
+        try {
+            if (gapIndex.isEmpty()) {
+                return;
+            }
+            if (livePollInFlight.getAsBoolean() || !hasQueueHeadroom()) {
+                skippedCycles.incrementAndGet();
+                logger.debug("Backfill cycle skipped, live traffic has precedence");
+                return;
+            }
+
+            int available = requestPermits.availablePermits();
+            if (available == 0) {
+                return;
+            }
+
+            List<GapRange> ranges = gapIndex.takeRanges(available,
+                    backfillConfig.getMaxTagsPerRequest(), backfillConfig.getMaxWindowMs());
+            for (GapRange range : ranges) {
+                if (!requestPermits.tryAcquire()) {
+                    gapIndex.addRange(range);
+                    continue;
+                }
+                fetchRange(range);
+            }
+
+            logger.info("Backfill dispatched {} ranges, {} tags with gaps remaining ({} ms in total)",
+                    ranges.size(), gapIndex.getTagCount(), gapIndex.getTotalGapMs());
+        } catch (Exception e) {
+            logger.error("Backfill cycle failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean hasQueueHeadroom() {
+        int free = dataQueue.remainingCapacity();
+        int capacity = free + dataQueue.size();
+        return capacity == 0 || (double) free / capacity >= backfillConfig.getMinFreeQueueRatio();
+    }
+
+    private void fetchRange(GapRange range) {
+        AtomicBoolean failed = new AtomicBoolean(false);
+        try {
+            String url = buildHistoryRequest(range);
+            logger.debug("Backfilling {} from URL: {}", range, url);
+
+            FetchCallback callback = new FetchCallback(dataQueue, objectMapper,
+                    (reason, statusCode) -> {
+                        failed.set(true);
+                        handleFailure(range, reason, statusCode);
+                    }, null, null, parserPool);
+            callback.getCompletion().whenComplete((result, error) -> {
+                requestPermits.release();
+                if (!failed.get()) {
+                    completedRanges.incrementAndGet();
+                }
+            });
+            httpClient
+                    .prepareGet(url)
+                    .setRequestTimeout(config.getProcessingConfig().getFetcher().getTimeoutMs())
+                    .execute(callback);
+        } catch (Exception e) {
+            requestPermits.release();
+            handleFailure(range, "Failed to initiate backfill: " + e.getMessage(), 0);
+        }
+    }
+
+    private void handleFailure(GapRange range, String reason, int statusCode) {
+        failedRanges.incrementAndGet();
+        if (statusCode >= 400 && statusCode < 500) {
+            // The request itself is invalid, retrying it would fail the same way
+            logger.error("Backfill of {} rejected with status {}, giving up on it", range, statusCode);
+            for (String tag : range.getTags()) {
+                FailedRequestLogger.logFailedRequest(new FailedRequest(tag,
+                        GapRecorder.toLocalDateTime(range.getStartTime()),
+                        GapRecorder.toLocalDateTime(range.getEndTime()),
+                        reason, statusCode, true));
+            }
+            return;
+        }
+        logger.warn("Backfill of {} failed, will retry: {}", range, reason);
+        gapIndex.addRange(range);
+    }
+
+    private String buildHistoryRequest(GapRange range) throws UnsupportedEncodingException {
+        String historyUrl = config.getSourceConfig().getRedisSettings().getHistoryUrl();
+        String userKey = config.getSourceConfig().getRedisSettings().getUserKey();
+        String start = GapRecorder.toLocalDateTime(range.getStartTime()).format(TIME_FORMAT);
+        String end = GapRecorder.toLocalDateTime(range.getEndTime()).format(TIME_FORMAT);
+
+        return historyUrl + "?tags=" + String.join(",", range.getTags()) +
+                "&start=" + URLEncoder.encode(start, "UTF-8") +
+                "&end=" + URLEncoder.encode(end, "UTF-8") +
+                "&PWCM_CD=" + DataFetcher.PWCM_CD +
+                "&USER_KEY=" + userKey;
+    }
+
+    public long getCompletedRanges() {
+        return completedRanges.get();
+    }
+
+    public long getFailedRanges() {
+        return failedRanges.get();
+    }
+
+    public long getSkippedCycles() {
+        return skippedCycles.get();
+    }
+
+    @Override
+    public void close() {
+        if (isRunning.compareAndSet(true, false)) {
+            try {
+                scheduler.shutdown();
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+                httpClient.close();
+            } catch (Exception e) {
+                logger.error("Error while closing BackfillWorker", e);
+                scheduler.shutdownNow();
+            }
+            logger.info("BackfillWorker stopped, {} tags still have gaps", gapIndex.getTagCount());
+        }
+    }
+}
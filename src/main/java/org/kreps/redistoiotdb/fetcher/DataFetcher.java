@@ -1,6 +1,8 @@
 package org.kreps.redistoiotdb.fetcher;
 
 import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.FetcherConfig;
+import org.kreps.redistoiotdb.config.TagDefinition;
 import org.kreps.redistoiotdb.model.DataPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,16 +10,39 @@ import org.slf4j.LoggerFactory;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.asynchttpclient.*;
 
-public class DataFetcher implements AutoCloseable {
+/**
+ * {@link DataSource} that polls the current values of all tags from the HTTP API.
+ * <p>
+ * With several API endpoints configured, every poll is a {@link HedgedPoll}: it
+ * goes to the endpoint with the lowest recent median latency first and is
+ * duplicated to the next one if no response arrives within the configured
+ * latency percentile of the preferred endpoint.
+ * <p>
+ * Tags are polled in tiers (see {@link TagTiers}): every tier is its own
+ * request set on its own interval, so a slow-changing tag is not fetched as
+ * often as a fast one. The query string of every tier is built once and only
+ * rebuilt when the tier's tags change, by adaptive tiering or a tags file reload.
+ */
+public class DataFetcher implements DataSource {
     private static final Logger logger = LoggerFactory.getLogger(DataFetcher.class);
-    private static final String PWCM_CD = "ST";
+    static final String PWCM_CD = "ST";
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+    private static final long STATS_INTERVAL_MS = 60000;
 
     private final AppConfig config;
     private final BlockingQueue<DataPoint> dataQueue;
@@ -25,69 +50,276 @@ public class DataFetcher implements AutoCloseable {
     private final AsyncHttpClient httpClient;
     private final ScheduledExecutorService scheduler;
     private final AtomicBoolean isRunning;
-    private volatile long nextFetchTime;
+    private final GapRecorder gapRecorder;
+    private final AtomicInteger pollsInFlight = new AtomicInteger();
+    private final List<EndpointStats> endpoints = new ArrayList<>();
+    private final TransferStats transferStats = new TransferStats();
+    private final ParserPool parserPool;
+    private final TagTiers tagTiers;
+    private final Map<String, Long> lastPollTimes = new ConcurrentHashMap<>();
+    // Only used on the scheduler thread
+    private final Map<String, PreparedTier> preparedTiers = new HashMap<>();
+    private volatile long lastStatsTime;
 
-    public DataFetcher(AppConfig config, BlockingQueue<DataPoint> dataQueue) {
+    public DataFetcher(AppConfig config, BlockingQueue<DataPoint> dataQueue, GapRecorder gapRecorder,
+            ParserPool parserPool) {
         this.config = config;
         this.dataQueue = dataQueue;
+        this.gapRecorder = gapRecorder;
+        this.parserPool = parserPool;
         this.objectMapper = new ObjectMapper();
-        this.httpClient = Dsl.asyncHttpClient();
+        // Netty inflates gzip and deflate bodies part by part before they reach FetchCallback
+        this.httpClient = Dsl.asyncHttpClient(Dsl.config()
+                .setCompressionEnforced(config.getProcessingConfig().getFetcher().isCompression())
+                .setHttpAdditionalChannelInitializer(transferStats.channelInitializer()));
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
         this.isRunning = new AtomicBoolean(false);
+        for (String url : config.getSourceConfig().getRedisSettings().getApiUrls()) {
+            endpoints.add(new EndpointStats(url));
+        }
+        FetcherConfig fetcherConfig = config.getProcessingConfig().getFetcher();
+        this.tagTiers = new TagTiers(config.getTagDefinitions(), fetcherConfig.getTiers(),
+                fetcherConfig.getIntervalMs());
     }
 
+    @Override
     public void start() {
         if (isRunning.compareAndSet(false, true)) {
-            int intervalMs = config.getProcessingConfig().getFetcher().getIntervalMs();
+            FetcherConfig fetcherConfig = config.getProcessingConfig().getFetcher();
 
-            nextFetchTime = System.currentTimeMillis();
             logger.info("Initial fetch scheduled for: {}",
-                    Instant.ofEpochMilli(nextFetchTime)
+                    Instant.ofEpochMilli(System.currentTimeMillis())
                             .atZone(ZoneId.systemDefault())
                             .format(TIME_FORMATTER));
 
-            scheduler.scheduleAtFixedRate(
-                    () -> {
-                        fetchData();
-                        nextFetchTime = System.currentTimeMillis() + intervalMs;
-                        logger.info("Next fetch scheduled for: {}",
-                                Instant.ofEpochMilli(nextFetchTime)
-                                        .atZone(ZoneId.systemDefault())
-                                        .format(TIME_FORMATTER));
-                    },
-                    0,
-                    intervalMs,
-                    TimeUnit.MILLISECONDS);
+            // Every tier is scheduled, even an empty one, since adaptive mode may move tags into it
+            for (String tier : tagTiers.getTierNames()) {
+                schedulePoll(tier, System.currentTimeMillis());
+                logger.info("Polling tier '{}' every {} ms with {} tags", tier, intervalMs(tier),
+                        tagTiers.getTags(tier).size());
+            }
 
-            logger.info("DataFetcher started with interval: {} ms", intervalMs);
+            if (fetcherConfig.getAdaptive().isEnabled()) {
+                int evaluationMs = fetcherConfig.getAdaptive().getEvaluationIntervalMs();
+                scheduler.scheduleAtFixedRate(() -> tagTiers.adapt(fetcherConfig.getAdaptive()),
+                        evaluationMs, evaluationMs, TimeUnit.MILLISECONDS);
+                logger.info("Adaptive polling tiers enabled, evaluated every {} ms", evaluationMs);
+            }
+
+            logger.info("DataFetcher started with interval: {} ms", fetcherConfig.getIntervalMs());
         }
     }
 
-    private void fetchData() {
+    /**
+     * Schedules the tier's next poll at the given time. Each poll schedules the one after
+     * it, so a change of {@code interval_ms} at runtime applies from the next poll on.
+     */
+    private void schedulePoll(String tier, long atMs) {
         try {
-            String url = buildApiRequest();
-            logger.debug("Fetching data from URL: {}", url);
+            scheduler.schedule(() -> {
+                try {
+                    fetchData(tier);
+                } finally {
+                    if (isRunning.get()) {
+                        // Polls that fell behind are not caught up in a burst, the next window covers them
+                        schedulePoll(tier, Math.max(atMs + intervalMs(tier), System.currentTimeMillis()));
+                    }
+                }
+            }, Math.max(0, atMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Not scheduling tier '{}', the fetcher is stopping", tier);
+        }
+    }
+
+    /**
+     * @return the tier's interval; the default tier follows {@code interval_ms} unless configured as a tier.
+     */
+    private int intervalMs(String tier) {
+        FetcherConfig fetcherConfig = config.getProcessingConfig().getFetcher();
+        if (TagTiers.DEFAULT_TIER.equals(tier) && !fetcherConfig.getTiers().containsKey(TagTiers.DEFAULT_TIER)) {
+            return fetcherConfig.getIntervalMs();
+        }
+        return tagTiers.getIntervalMs(tier);
+    }
+
+    private void fetchData(String tier) {
+        PreparedTier prepared = prepareTier(tier);
+        List<String> tags = prepared.tags;
+        if (tags.isEmpty()) {
+            return;
+        }
+
+        // The poll covers everything since the tier's previous one, so a failure leaves that window as a gap
+        long windowEnd = System.currentTimeMillis();
+        Long lastPollTime = lastPollTimes.put(tier, windowEnd);
+        long windowStart = lastPollTime != null ? lastPollTime : windowEnd - intervalMs(tier);
+        Map<String, Long> movedStarts = prepared.movedStarts;
+        prepared.movedStarts = Collections.emptyMap();
 
-            httpClient
-                    .prepareGet(url)
-                    .setRequestTimeout(config.getProcessingConfig().getFetcher().getTimeoutMs())
-                    .execute(new FetchCallback(dataQueue, objectMapper))
-                    .toCompletableFuture();
-        } catch (Exception e) {
-            logger.error("Failed to initiate data fetch: {}", e.getMessage());
+        FetchCallback.ResponseListener changeTracker =
+                config.getProcessingConfig().getFetcher().getAdaptive().isEnabled() ? tagTiers::observe : null;
+        List<EndpointStats> ordered = orderedEndpoints();
+        new HedgedPoll(httpClient, scheduler, ordered, url -> url + prepared.query,
+                config.getProcessingConfig().getFetcher().getTimeoutMs(), dataQueue, objectMapper,
+                (reason, statusCode) -> recordGap(tags, windowStart, movedStarts, windowEnd, reason, statusCode),
+                pollsInFlight, transferStats, parserPool, changeTracker)
+                .start(hedgeDelayMs(ordered.get(0)));
+
+        if (windowEnd - lastStatsTime >= STATS_INTERVAL_MS) {
+            lastStatsTime = windowEnd;
+            for (EndpointStats endpoint : endpoints) {
+                logger.info("Endpoint {}", endpoint);
+            }
+            logger.info("Transfer: {}", transferStats);
+            logger.info("Parser pool: {}", parserPool);
+            logger.info("Tags per tier: {}", tagTiers);
+        }
+    }
+
+    /**
+     * Records a failed poll as a gap. Tags that moved into the tier since its last poll were
+     * last polled by their previous tier, so their gap starts there instead.
+     */
+    private void recordGap(List<String> tags, long windowStart, Map<String, Long> movedStarts, long windowEnd,
+            String reason, int statusCode) {
+        if (movedStarts.isEmpty()) {
+            gapRecorder.recordGap(tags, windowStart, windowEnd, reason, statusCode);
+            return;
+        }
+        Map<Long, List<String>> tagsByStart = new HashMap<>();
+        for (String tag : tags) {
+            tagsByStart.computeIfAbsent(movedStarts.getOrDefault(tag, windowStart), start -> new ArrayList<>())
+                    .add(tag);
+        }
+        for (Map.Entry<Long, List<String>> entry : tagsByStart.entrySet()) {
+            gapRecorder.recordGap(entry.getValue(), entry.getKey(), windowEnd, reason, statusCode);
         }
     }
 
-    private String buildApiRequest() {
-        String apiUrl = config.getSourceConfig().getRedisSettings().getApiUrl();
+    /**
+     * Orders endpoints by recent median latency; every consecutive failure counts as a full timeout.
+     * Endpoints without enough samples are assumed to take half the timeout.
+     */
+    private List<EndpointStats> orderedEndpoints() {
+        List<EndpointStats> ordered = new ArrayList<>(endpoints);
+        if (ordered.size() > 1) {
+            long timeoutMs = config.getProcessingConfig().getFetcher().getTimeoutMs();
+            Collections.sort(ordered, Comparator.comparingLong(endpoint -> {
+                long medianMs = endpoint.getLatencyPercentile(50);
+                return (medianMs >= 0 ? medianMs : timeoutMs / 2) + endpoint.getConsecutiveFailures() * timeoutMs;
+            }));
+        }
+        return ordered;
+    }
+
+    private long hedgeDelayMs(EndpointStats primary) {
+        long timeoutMs = config.getProcessingConfig().getFetcher().getTimeoutMs();
+        long percentileMs = primary.getLatencyPercentile(config.getProcessingConfig().getFetcher().getHedgePercentile());
+        if (percentileMs < 0) {
+            // Not enough samples yet, hedge only when the primary is clearly slow
+            return timeoutMs / 2;
+        }
+        return Math.max(config.getProcessingConfig().getFetcher().getHedgeMinDelayMs(), percentileMs);
+    }
+
+    public List<EndpointStats> getEndpointStats() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public TagTiers getTagTiers() {
+        return tagTiers;
+    }
+
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    @Override
+    public boolean isPollInFlight() {
+        return pollsInFlight.get() > 0;
+    }
+
+    @Override
+    public void onTagsReloaded(List<TagDefinition> definitions) {
+        int[] counts = tagTiers.update(definitions);
+        logger.info("Tags reloaded: {} added, {} changed, {} removed, tags per tier {}", counts[0], counts[1],
+                counts[2], tagTiers);
+    }
+
+    /**
+     * @return the tier's tags with their query string, rebuilt only if the tags changed since the last poll.
+     */
+    private PreparedTier prepareTier(String tier) {
+        PreparedTier prepared = preparedTiers.get(tier);
+        if (prepared == null || prepared.tags != tagTiers.getTags(tier)) {
+            refreshTiers();
+            prepared = preparedTiers.get(tier);
+        }
+        return prepared;
+    }
+
+    /**
+     * Rebuilds every prepared tier whose tags changed, all at once, so that a tag that moved
+     * between tiers is still listed in its previous tier. The first poll of its new tier then
+     * covers the time since its previous tier last polled it, not the new tier's own window.
+     */
+    private void refreshTiers() {
+        Map<String, Long> lastPolled = new HashMap<>();
+        Map<String, List<String>> changed = new LinkedHashMap<>();
+        for (String tier : tagTiers.getTierNames()) {
+            List<String> tags = tagTiers.getTags(tier);
+            PreparedTier prepared = preparedTiers.get(tier);
+            if (prepared != null && prepared.tags == tags) {
+                continue;
+            }
+            changed.put(tier, tags);
+            Long tierPolled = lastPollTimes.get(tier);
+            if (prepared != null) {
+                for (String tag : prepared.tags) {
+                    Long polled = prepared.movedStarts.getOrDefault(tag, tierPolled);
+                    if (polled != null) {
+                        lastPolled.put(tag, polled);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : changed.entrySet()) {
+            PreparedTier previous = preparedTiers.get(entry.getKey());
+            Set<String> stayed = previous != null ? new HashSet<>(previous.tags) : Collections.emptySet();
+            Long tierPolled = lastPollTimes.get(entry.getKey());
+            Map<String, Long> movedStarts = new HashMap<>();
+            for (String tag : entry.getValue()) {
+                Long start = stayed.contains(tag) ? previous.movedStarts.get(tag) : lastPolled.get(tag);
+                if (start != null && !start.equals(tierPolled)) {
+                    movedStarts.put(tag, start);
+                }
+            }
+            preparedTiers.put(entry.getKey(),
+                    new PreparedTier(entry.getValue(), buildQuery(entry.getValue()), movedStarts));
+        }
+    }
+
+    private String buildQuery(List<String> tags) {
         String userKey = config.getSourceConfig().getRedisSettings().getUserKey();
-        List<String> tags = config.getTags();
 
-        return apiUrl + "?tags=" + String.join(",", tags) +
+        return "?tags=" + String.join(",", tags) +
                 "&PWCM_CD=" + PWCM_CD +
                 "&USER_KEY=" + userKey;
     }
 
+    private static final class PreparedTier {
+        private final List<String> tags;
+        private final String query;
+        // Start of the next poll window of the tags that moved in since the tier's last poll
+        private Map<String, Long> movedStarts;
+
+        private PreparedTier(List<String> tags, String query, Map<String, Long> movedStarts) {
+            this.tags = tags;
+            this.query = query;
+            this.movedStarts = movedStarts.isEmpty() ? Collections.<String, Long>emptyMap() : movedStarts;
+        }
+    }
+
     @Override
     public void close() {
         if (isRunning.compareAndSet(true, false)) {
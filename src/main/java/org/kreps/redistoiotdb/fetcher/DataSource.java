@@ -0,0 +1,30 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import org.kreps.redistoiotdb.config.TagDefinition;
+
+import java.util.List;
+
+/**
+ * A source of live data points. Implementations poll or subscribe to the source
+ * system on their own threads and offer converted points to the shared queue.
+ */
+public interface DataSource extends AutoCloseable {
+
+    void start();
+
+    /**
+     * Returns true while a live request is waiting for its response, so that
+     * lower priority work such as backfill can stay out of its way.
+     */
+    boolean isPollInFlight();
+
+    /**
+     * Called after the tags file was reloaded, once the config holds the new tags.
+     * Sources that read the tags from the config on every poll need not override it.
+     */
+    default void onTagsReloaded(List<TagDefinition> definitions) {
+    }
+
+    @Override
+    void close();
+}
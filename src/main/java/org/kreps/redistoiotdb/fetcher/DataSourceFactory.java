@@ -0,0 +1,24 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.SourceConfig;
+import org.kreps.redistoiotdb.fetcher.resp.RespDataSource;
+import org.kreps.redistoiotdb.fetcher.resp.RespStreamSource;
+import org.kreps.redistoiotdb.model.DataPoint;
+
+import java.util.concurrent.BlockingQueue;
+
+public class DataSourceFactory {
+
+    public static DataSource create(AppConfig config, BlockingQueue<DataPoint> dataQueue, GapIndex gapIndex,
+            ParserPool parserPool) {
+        String type = config.getSourceConfig().getType();
+        if (SourceConfig.TYPE_STREAM.equals(type)) {
+            return new RespStreamSource(config, dataQueue);
+        }
+        if (SourceConfig.TYPE_RESP.equals(type)) {
+            return new RespDataSource(config, dataQueue, new GapRecorder(config, gapIndex));
+        }
+        return new DataFetcher(config, dataQueue, new GapRecorder(config, gapIndex), parserPool);
+    }
+}
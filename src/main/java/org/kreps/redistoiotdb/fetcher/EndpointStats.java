@@ -0,0 +1,110 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request outcomes and recent response latencies of one source endpoint.
+ * Latencies are kept in a fixed-size ring of the most recent successful responses.
+ */
+public class EndpointStats {
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_SAMPLES = 10;
+
+    private final String url;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int sampleCount;
+    private int nextSample;
+    private volatile int consecutiveFailures;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    public EndpointStats(String url) {
+        this.url = url;
+    }
+
+    public void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    public synchronized void recordResponse(long latencyMs) {
+        addSample(latencyMs);
+        consecutiveFailures = 0;
+    }
+
+    public void recordWin() {
+        wins.incrementAndGet();
+    }
+
+    public synchronized void recordFailure() {
+        failures.incrementAndGet();
+        consecutiveFailures++;
+    }
+
+    /**
+     * @param elapsedMs time until the request was cancelled, a lower bound of its latency
+     */
+    public synchronized void recordCancelled(long elapsedMs) {
+        cancelled.incrementAndGet();
+        addSample(elapsedMs);
+    }
+
+    private void addSample(long latencyMs) {
+        latencies[nextSample] = latencyMs;
+        nextSample = (nextSample + 1) % LATENCY_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency at that percentile, or -1 if there are too few samples.
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (sampleCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+        return sorted[Math.max(0, Math.min(sampleCount - 1, index))];
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getWins() {
+        return wins.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    public double getWinRate() {
+        long total = requests.get();
+        return total > 0 ? (double) wins.get() / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: requests %d, wins %d (%.1f%%), failures %d, cancelled %d, p50 %d ms, p95 %d ms",
+                url, getRequests(), getWins(), getWinRate() * 100, getFailures(), getCancelled(),
+                getLatencyPercentile(50), getLatencyPercentile(95));
+    }
+}
@@ -1,30 +1,111 @@
 package org.kreps.redistoiotdb.fetcher;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.asynchttpclient.AsyncHandler;
 import org.asynchttpclient.HttpResponseBodyPart;
 import org.asynchttpclient.HttpResponseStatus;
 import org.asynchttpclient.HttpResponseHeaders;
+import org.kreps.redistoiotdb.columnar.RowBlock;
 import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Collects the (already decompressed) body parts of a response on the I/O
+ * thread and hands the complete body to a {@link ParserPool}, which parses it
+ * and queues the data points. Without a pool the body is parsed on the I/O
+ * thread when the response completes. If the pool parses for a columnar store
+ * the rows are appended to the store instead of queued, and no
+ * {@link ResponseListener} is notified.
+ */
 public class FetchCallback implements AsyncHandler<Void> {
     private static final Logger logger = LoggerFactory.getLogger(FetchCallback.class);
     private final BlockingQueue<DataPoint> dataQueue;
     private final ObjectMapper objectMapper;
-    private final StringBuilder responseBuilder;
+    private final FailureListener failureListener;
+    private final ResponseGate responseGate;
+    private final TransferStats transferStats;
+    private final ParserPool parserPool;
+    private final ResponseListener responseListener;
+    private final List<byte[]> bodyParts = new ArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private long bodyBytes;
     private int statusCode;
+    private boolean failureReported;
+
+    /**
+     * Notified once per request when the response could not be turned into data points.
+     * The status code is 0 for transport errors.
+     */
+    @FunctionalInterface
+    public interface FailureListener {
+        void onFailure(String reason, int statusCode);
+    }
+
+    /**
+     * Asked once a response has been received in full, before it is parsed, whether it
+     * should be used. Lets duplicate requests for the same poll race each other so only
+     * one is parsed and queued.
+     */
+    @FunctionalInterface
+    public interface ResponseGate {
+        boolean tryClaim();
+    }
+
+    /**
+     * Sees the data points of every response that is queued, before they are queued.
+     */
+    @FunctionalInterface
+    public interface ResponseListener {
+        void onResponse(List<DataPoint> dataPoints);
+    }
 
     public FetchCallback(BlockingQueue<DataPoint> dataQueue, ObjectMapper objectMapper) {
+        this(dataQueue, objectMapper, null);
+    }
+
+    public FetchCallback(BlockingQueue<DataPoint> dataQueue, ObjectMapper objectMapper,
+            FailureListener failureListener) {
+        this(dataQueue, objectMapper, failureListener, null);
+    }
+
+    public FetchCallback(BlockingQueue<DataPoint> dataQueue, ObjectMapper objectMapper,
+            FailureListener failureListener, ResponseGate responseGate) {
+        this(dataQueue, objectMapper, failureListener, responseGate, null, null);
+    }
+
+    public FetchCallback(BlockingQueue<DataPoint> dataQueue, ObjectMapper objectMapper,
+            FailureListener failureListener, ResponseGate responseGate, TransferStats transferStats,
+            ParserPool parserPool) {
+        this(dataQueue, objectMapper, failureListener, responseGate, transferStats, parserPool, null);
+    }
+
+    public FetchCallback(BlockingQueue<DataPoint> dataQueue, ObjectMapper objectMapper,
+            FailureListener failureListener, ResponseGate responseGate, TransferStats transferStats,
+            ParserPool parserPool, ResponseListener responseListener) {
         this.dataQueue = dataQueue;
         this.objectMapper = objectMapper;
-        this.responseBuilder = new StringBuilder();
+        this.failureListener = failureListener;
+        this.responseGate = responseGate;
+        this.transferStats = transferStats;
+        this.parserPool = parserPool;
+        this.responseListener = responseListener;
+    }
+
+    /**
+     * Completes once the response has been handed to the queue or has failed. With a
+     * parser pool this is later than the completion of the HTTP request itself.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
     }
 
     @Override
@@ -32,6 +113,8 @@ public class FetchCallback implements AsyncHandler<Void> {
         this.statusCode = responseStatus.getStatusCode();
         if (statusCode != 200) {
             logger.error("Received error status code: {}", statusCode);
+            reportFailure("HTTP " + statusCode + " error", statusCode);
+            completion.complete(null);
             return State.ABORT;
         }
         return State.CONTINUE;
@@ -44,52 +127,122 @@ public class FetchCallback implements AsyncHandler<Void> {
 
     @Override
     public State onBodyPartReceived(HttpResponseBodyPart bodyPart) {
-        try {
-            responseBuilder.append(new String(bodyPart.getBodyPartBytes()));
-            return State.CONTINUE;
-        } catch (Exception e) {
-            logger.error("Error processing body part: {}", e.getMessage());
-            return State.ABORT;
+        byte[] bytes = bodyPart.getBodyPartBytes();
+        bodyParts.add(bytes);
+        bodyBytes += bytes.length;
+        if (transferStats != null) {
+            transferStats.addDecodedBytes(bytes.length);
         }
+        return State.CONTINUE;
     }
 
     @Override
     public Void onCompleted() {
+        if (statusCode != 200) {
+            completion.complete(null);
+            return null;
+        }
+        if (transferStats != null) {
+            transferStats.addResponse();
+        }
+        // Claimed before parsing, so parser backlog neither delays the race nor counts as endpoint latency
+        if (responseGate != null && !responseGate.tryClaim()) {
+            logger.debug("Discarding a {} byte response that lost the race", bodyBytes);
+            completion.complete(null);
+            return null;
+        }
+
+        if (parserPool != null && parserPool.getColumnarStore() != null) {
+            parserPool.parseRows(bodyParts, bodyBytes).whenComplete(this::handleRows);
+            return null;
+        }
+        if (parserPool != null) {
+            parserPool.parse(bodyParts, bodyBytes).whenComplete(this::handleParsed);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        List<DataPoint> dataPoints = null;
+        Exception error = null;
         try {
-            if (statusCode == 200) {
-                String response = responseBuilder.toString();
-                List<Map<String, String>> dataList = objectMapper.readValue(
-                        response,
-                        new TypeReference<List<Map<String, String>>>() {
-                        });
-
-                int processedCount = 0;
-                int droppedCount = 0;
-
-                for (Map<String, String> data : dataList) {
-                    try {
-                        DataPoint dataPoint = new DataPoint(data);
-                        if (dataQueue.offer(dataPoint)) {
-                            processedCount++;
-                        } else {
-                            droppedCount++;
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error processing data point: {}", e.getMessage());
-                    }
-                }
-
-                logger.info("Processed {} data points, dropped {} due to queue full",
-                        processedCount, droppedCount);
+            dataPoints = ResponseChunks.parse(
+                    ResponseChunks.split(bodyParts, bodyBytes, Long.MAX_VALUE).get(0), objectMapper.getFactory(), null);
+        } catch (Exception e) {
+            error = e;
+        }
+        if (transferStats != null) {
+            transferStats.addParseNanos(System.nanoTime() - start);
+        }
+        handleParsed(dataPoints, error);
+        return null;
+    }
+
+    private void handleParsed(List<DataPoint> dataPoints, Throwable error) {
+        try {
+            if (error != null) {
+                reportParseError(error);
+                return;
             }
+
+            if (responseListener != null) {
+                responseListener.onResponse(dataPoints);
+            }
+
+            int processedCount = PriorityLaneQueue.offerAll(dataQueue, dataPoints);
+            int droppedCount = dataPoints.size() - processedCount;
+
+            logger.info("Processed {} data points, dropped {} due to queue full",
+                    processedCount, droppedCount);
         } catch (Exception e) {
             logger.error("Error processing response: {}", e.getMessage());
+            reportFailure("Invalid response: " + e.getMessage(), statusCode);
+        } finally {
+            completion.complete(null);
+        }
+    }
+
+    private void handleRows(RowBlock block, Throwable error) {
+        try {
+            if (error != null) {
+                reportParseError(error);
+                return;
+            }
+
+            parserPool.getColumnarStore().append(block);
+            logger.info("Appended {} rows to columnar buffers", block.size());
+        } catch (Exception e) {
+            logger.error("Error processing response: {}", e.getMessage());
+            reportFailure("Invalid response: " + e.getMessage(), statusCode);
+        } finally {
+            completion.complete(null);
+        }
+    }
+
+    private void reportParseError(Throwable error) {
+        if (error instanceof RejectedExecutionException) {
+            logger.error("Parser pool is saturated, dropping response");
+            reportFailure("Parser pool saturated", statusCode);
+        } else {
+            logger.error("Error processing response: {}", error.getMessage());
+            reportFailure("Invalid response: " + error.getMessage(), statusCode);
         }
-        return null;
     }
 
     @Override
     public void onThrowable(Throwable t) {
-        logger.error("Request failed: {}", t.getMessage());
+        if (t instanceof CancellationException) {
+            logger.debug("Request cancelled");
+        } else {
+            logger.error("Request failed: {}", t.getMessage());
+        }
+        reportFailure(String.valueOf(t.getMessage()), 0);
+        completion.complete(null);
+    }
+
+    private synchronized void reportFailure(String reason, int code) {
+        if (failureListener != null && !failureReported) {
+            failureReported = true;
+            failureListener.onFailure(reason, code);
+        }
     }
 }
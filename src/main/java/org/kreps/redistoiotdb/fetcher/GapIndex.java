@@ -0,0 +1,113 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import org.kreps.redistoiotdb.model.GapRange;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-tag index of time ranges that could not be fetched. Overlapping and
+ * adjacent ranges of a tag are merged on insert, so repeated failed polls
+ * collapse into one interval per outage.
+ */
+public class GapIndex {
+    // tag -> (start -> end), epoch millis, non-overlapping
+    private final Map<String, TreeMap<Long, Long>> gapsByTag = new HashMap<>();
+    private long totalGapMs;
+
+    public synchronized void addGap(String tag, long startTime, long endTime) {
+        if (endTime <= startTime) {
+            return;
+        }
+        TreeMap<Long, Long> gaps = gapsByTag.computeIfAbsent(tag, k -> new TreeMap<>());
+
+        long start = startTime;
+        long end = endTime;
+        Map.Entry<Long, Long> previous = gaps.floorEntry(start);
+        if (previous != null && previous.getValue() >= start) {
+            start = previous.getKey();
+            end = Math.max(end, previous.getValue());
+            totalGapMs -= previous.getValue() - previous.getKey();
+            gaps.remove(previous.getKey());
+        }
+
+        Iterator<Map.Entry<Long, Long>> following = gaps.subMap(start, true, end, true).entrySet().iterator();
+        while (following.hasNext()) {
+            Map.Entry<Long, Long> next = following.next();
+            end = Math.max(end, next.getValue());
+            totalGapMs -= next.getValue() - next.getKey();
+            following.remove();
+        }
+
+        gaps.put(start, end);
+        totalGapMs += end - start;
+    }
+
+    /**
+     * Removes the oldest gap of each tag, clipped to {@code maxWindowMs}, and groups
+     * tags with identical ranges so that they can be fetched with one request.
+     * Tags that do not fit into {@code maxRanges} groups stay in the index.
+     */
+    public synchronized List<GapRange> takeRanges(int maxRanges, int maxTagsPerRange, long maxWindowMs) {
+        Map<String, GapRange> ranges = new LinkedHashMap<>();
+        List<GapRange> fullRanges = new ArrayList<>();
+
+        Iterator<Map.Entry<String, TreeMap<Long, Long>>> tags = gapsByTag.entrySet().iterator();
+        while (tags.hasNext()) {
+            Map.Entry<String, TreeMap<Long, Long>> entry = tags.next();
+            TreeMap<Long, Long> gaps = entry.getValue();
+            Map.Entry<Long, Long> oldest = gaps.firstEntry();
+            long start = oldest.getKey();
+            long end = Math.min(oldest.getValue(), start + maxWindowMs);
+
+            String key = start + ":" + end;
+            GapRange range = ranges.get(key);
+            if (range == null) {
+                if (ranges.size() + fullRanges.size() >= maxRanges) {
+                    continue;
+                }
+                range = new GapRange(start, end);
+                ranges.put(key, range);
+            }
+            range.addTag(entry.getKey());
+            if (range.getTags().size() >= maxTagsPerRange) {
+                fullRanges.add(ranges.remove(key));
+            }
+
+            gaps.pollFirstEntry();
+            if (end < oldest.getValue()) {
+                gaps.put(end, oldest.getValue());
+            }
+            totalGapMs -= end - start;
+            if (gaps.isEmpty()) {
+                tags.remove();
+            }
+        }
+
+        fullRanges.addAll(ranges.values());
+        return fullRanges;
+    }
+
+    public synchronized void addRange(GapRange range) {
+        for (String tag : range.getTags()) {
+            addGap(tag, range.getStartTime(), range.getEndTime());
+        }
+    }
+
+    public synchronized int getTagCount() {
+        return gapsByTag.size();
+    }
+
+    public synchronized long getTotalGapMs() {
+        return totalGapMs;
+    }
+
+    public synchronized boolean isEmpty() {
+        return gapsByTag.isEmpty();
+    }
+}
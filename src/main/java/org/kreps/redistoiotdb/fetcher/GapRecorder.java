@@ -0,0 +1,54 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.model.FailedRequest;
+import org.kreps.redistoiotdb.utils.FailedRequestLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Records the window of a failed poll as a gap for every affected tag and logs
+ * a {@link FailedRequest} per tag. Both are only kept for the backfill worker,
+ * so without backfill a failed poll is just logged.
+ */
+public class GapRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(GapRecorder.class);
+
+    private final AppConfig config;
+    private final GapIndex gapIndex;
+
+    public GapRecorder(AppConfig config, GapIndex gapIndex) {
+        this.config = config;
+        this.gapIndex = gapIndex;
+    }
+
+    public void recordGap(long windowStart, long windowEnd, String reason, int statusCode) {
+        recordGap(config.getTags(), windowStart, windowEnd, reason, statusCode);
+    }
+
+    public void recordGap(List<String> tags, long windowStart, long windowEnd, String reason, int statusCode) {
+        LocalDateTime start = toLocalDateTime(windowStart);
+        LocalDateTime end = toLocalDateTime(windowEnd);
+        if (!config.getProcessingConfig().getBackfill().isEnabled()) {
+            logger.warn("Missed {} - {} for {} tags, backfill is disabled: {}", start, end, tags.size(), reason);
+            return;
+        }
+        boolean includeFullMessage = statusCode < 500;
+
+        for (String tag : tags) {
+            gapIndex.addGap(tag, windowStart, windowEnd);
+            FailedRequestLogger.logFailedRequest(
+                    new FailedRequest(tag, start, end, reason, statusCode, includeFullMessage));
+        }
+        logger.warn("Recorded gap {} - {} for {} tags: {}", start, end, tags.size(), reason);
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,200 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.ListenableFuture;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * One poll of the current values, raced across the source endpoints.
+ * <p>
+ * The request goes to the preferred endpoint first. If it has not answered
+ * within the hedge delay a duplicate goes to the next endpoint, and a failed
+ * attempt fails over to the next endpoint immediately. Each endpoint is tried
+ * at most once. The first complete response wins, before it is parsed, and the
+ * other attempts are cancelled; the poll fails once every attempt has failed or
+ * the winning response cannot be parsed.
+ */
+class HedgedPoll {
+    private static final Logger logger = LoggerFactory.getLogger(HedgedPoll.class);
+
+    private final AsyncHttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final List<EndpointStats> endpoints;
+    private final Function<String, String> urlBuilder;
+    private final int timeoutMs;
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final ObjectMapper objectMapper;
+    private final FetchCallback.FailureListener failureListener;
+    private final AtomicInteger attemptsInFlight;
+    private final TransferStats transferStats;
+    private final ParserPool parserPool;
+    private final FetchCallback.ResponseListener responseListener;
+
+    private final List<Attempt> attempts = new ArrayList<>();
+    private boolean finished;
+    private Attempt winner;
+
+    HedgedPoll(AsyncHttpClient httpClient, ScheduledExecutorService scheduler, List<EndpointStats> endpoints,
+            Function<String, String> urlBuilder, int timeoutMs, BlockingQueue<DataPoint> dataQueue,
+            ObjectMapper objectMapper, FetchCallback.FailureListener failureListener,
+            AtomicInteger attemptsInFlight, TransferStats transferStats, ParserPool parserPool,
+            FetchCallback.ResponseListener responseListener) {
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.endpoints = endpoints;
+        this.urlBuilder = urlBuilder;
+        this.timeoutMs = timeoutMs;
+        this.dataQueue = dataQueue;
+        this.objectMapper = objectMapper;
+        this.failureListener = failureListener;
+        this.attemptsInFlight = attemptsInFlight;
+        this.transferStats = transferStats;
+        this.parserPool = parserPool;
+        this.responseListener = responseListener;
+    }
+
+    /**
+     * Sends the first request and, with more than one endpoint, schedules the hedge.
+     *
+     * @param hedgeDelayMs delay before the duplicate request, ignored if not below the timeout
+     */
+    void start(long hedgeDelayMs) {
+        synchronized (this) {
+            launchNext();
+        }
+        if (endpoints.size() > 1 && hedgeDelayMs < timeoutMs) {
+            scheduler.schedule(this::hedge, hedgeDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void hedge() {
+        if (!finished && attempts.size() == 1) {
+            logger.debug("No response from {} yet, hedging", attempts.get(0).endpoint.getUrl());
+            launchNext();
+        }
+    }
+
+    /**
+     * @return false if every endpoint has been tried.
+     */
+    private boolean launchNext() {
+        if (attempts.size() >= endpoints.size()) {
+            return false;
+        }
+        Attempt attempt = new Attempt(endpoints.get(attempts.size()));
+        attempts.add(attempt);
+        attempt.endpoint.recordRequest();
+        attemptsInFlight.incrementAndGet();
+        try {
+            String url = urlBuilder.apply(attempt.endpoint.getUrl());
+            logger.debug("Fetching data from URL: {}", url);
+            FetchCallback callback = new FetchCallback(dataQueue, objectMapper,
+                    (reason, statusCode) -> onFailure(attempt, reason, statusCode),
+                    () -> claim(attempt), transferStats, parserPool, responseListener);
+            // Counted until the parsed response has been queued, not just until the HTTP exchange ends
+            callback.getCompletion().whenComplete((result, error) -> attemptsInFlight.decrementAndGet());
+            attempt.future = httpClient
+                    .prepareGet(url)
+                    .setRequestTimeout(timeoutMs)
+                    .execute(callback);
+            if (attempt.lost) {
+                // Another attempt won before the future was assigned, so claim() could not cancel it
+                attempt.future.cancel(true);
+            }
+        } catch (Exception e) {
+            attemptsInFlight.decrementAndGet();
+            attempt.failed = true;
+            attempt.endpoint.recordFailure();
+            logger.error("Failed to initiate data fetch from {}: {}", attempt.endpoint.getUrl(), e.getMessage());
+            if (!launchNext() && allFailed()) {
+                finished = true;
+                failureListener.onFailure("Failed to initiate data fetch: " + e.getMessage(), 0);
+            }
+        }
+        return true;
+    }
+
+    private boolean claim(Attempt winner) {
+        winner.endpoint.recordResponse(System.currentTimeMillis() - winner.startTime);
+        List<Attempt> losers = new ArrayList<>();
+        int attemptCount;
+        synchronized (this) {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            this.winner = winner;
+            for (Attempt attempt : attempts) {
+                if (attempt != winner && !attempt.failed) {
+                    attempt.lost = true;
+                    losers.add(attempt);
+                }
+            }
+            attemptCount = attempts.size();
+        }
+        winner.endpoint.recordWin();
+        long now = System.currentTimeMillis();
+        for (Attempt loser : losers) {
+            if (loser.future != null && loser.future.cancel(true)) {
+                // The loser would have taken at least this long, keep it as a latency sample
+                loser.endpoint.recordCancelled(now - loser.startTime);
+            }
+        }
+        if (attemptCount > 1) {
+            logger.debug("Response from {} won after {} attempts", winner.endpoint.getUrl(), attemptCount);
+        }
+        return true;
+    }
+
+    private synchronized void onFailure(Attempt attempt, String reason, int statusCode) {
+        if (attempt == winner) {
+            // The won response could not be parsed or queued, the other attempts are already cancelled
+            failureListener.onFailure(reason, statusCode);
+            return;
+        }
+        if (finished) {
+            // Cancelled loser or a failure after the poll was already served
+            return;
+        }
+        attempt.failed = true;
+        attempt.endpoint.recordFailure();
+        if (launchNext()) {
+            logger.warn("Request to {} failed ({}), failing over", attempt.endpoint.getUrl(), reason);
+        } else if (allFailed()) {
+            finished = true;
+            failureListener.onFailure(reason, statusCode);
+        }
+    }
+
+    private boolean allFailed() {
+        for (Attempt attempt : attempts) {
+            if (!attempt.failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Attempt {
+        private final EndpointStats endpoint;
+        private final long startTime = System.currentTimeMillis();
+        private volatile ListenableFuture<Void> future;
+        private volatile boolean lost;
+        private boolean failed;
+
+        private Attempt(EndpointStats endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.kreps.redistoiotdb.columnar.ColumnarStore;
+import org.kreps.redistoiotdb.columnar.RowBlock;
+import org.kreps.redistoiotdb.config.ParserConfig;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded pool that parses HTTP responses off the Netty I/O threads.
+ * <p>
+ * Responses larger than {@code chunk_size_bytes} are split into chunks of whole
+ * rows that are parsed in parallel. A response is rejected, not queued, once
+ * {@code queue_capacity} responses are waiting, so the I/O threads never block.
+ * <p>
+ * With a {@link ColumnarStore} responses are parsed into {@link RowBlock}s for
+ * the store instead of into data points.
+ */
+public class ParserPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ParserPool.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int chunkSizeBytes;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final TagDictionary dictionary;
+    private final ColumnarStore columnarStore;
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong handoffNanos = new AtomicLong();
+    private final AtomicLong maxHandoffNanos = new AtomicLong();
+
+    /**
+     * @param dictionary dictionary to resolve tags with while parsing, or null
+     */
+    public ParserPool(ParserConfig config, TagDictionary dictionary) {
+        this(config, dictionary, null);
+    }
+
+    /**
+     * @param dictionary dictionary to resolve tags with while parsing, or null
+     * @param columnarStore store that parsed responses are appended to, or null to parse into data points
+     */
+    public ParserPool(ParserConfig config, TagDictionary dictionary, ColumnarStore columnarStore) {
+        this.dictionary = dictionary;
+        this.columnarStore = columnarStore;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                r -> new Thread(r, "Parser-" + threadCounter.incrementAndGet()));
+        this.chunkSizeBytes = config.getChunkSizeBytes();
+    }
+
+    /**
+     * Parses a response on the pool. Called from an I/O thread, returns immediately.
+     *
+     * @return a future of the data points in response order, failed with
+     *         {@link RejectedExecutionException} if the pool is saturated.
+     */
+    public CompletableFuture<List<DataPoint>> parse(List<byte[]> parts, long totalBytes) {
+        return submit(parts, totalBytes,
+                chunk -> ResponseChunks.parse(chunk, jsonFactory, dictionary),
+                results -> {
+                    List<DataPoint> dataPoints = new ArrayList<>();
+                    for (List<DataPoint> result : results) {
+                        dataPoints.addAll(result);
+                    }
+                    rows.addAndGet(dataPoints.size());
+                    return dataPoints;
+                });
+    }
+
+    /**
+     * Parses a response on the pool into one columnar block for the {@link #getColumnarStore() store}.
+     * Called from an I/O thread, returns immediately.
+     *
+     * @return a future of the rows in response order, failed with
+     *         {@link RejectedExecutionException} if the pool is saturated.
+     */
+    public CompletableFuture<RowBlock> parseRows(List<byte[]> parts, long totalBytes) {
+        return submit(parts, totalBytes,
+                chunk -> ResponseChunks.parseRows(chunk, jsonFactory, dictionary, columnarStore.getMeasurements()),
+                results -> {
+                    RowBlock block = results.get(0);
+                    if (results.size() > 1) {
+                        block = new RowBlock(columnarStore.getMeasurements(), 0);
+                        for (RowBlock result : results) {
+                            block.addAll(result);
+                        }
+                    }
+                    rows.addAndGet(block.size());
+                    return block;
+                });
+    }
+
+    /**
+     * @return the store responses are parsed for, or null if they are parsed into data points.
+     */
+    public ColumnarStore getColumnarStore() {
+        return columnarStore;
+    }
+
+    @FunctionalInterface
+    private interface ChunkParser<T> {
+        T parse(ResponseChunks.Chunk chunk) throws Exception;
+    }
+
+    private <T> CompletableFuture<T> submit(List<byte[]> parts, long totalBytes, ChunkParser<T> chunkParser,
+            Function<List<T>, T> merger) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long waited = System.nanoTime() - submitted;
+                handoffNanos.addAndGet(waited);
+                maxHandoffNanos.accumulateAndGet(waited, Math::max);
+                responses.incrementAndGet();
+                parseChunks(parts, totalBytes, chunkParser, merger, result);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private <T> void parseChunks(List<byte[]> parts, long totalBytes, ChunkParser<T> chunkParser,
+            Function<List<T>, T> merger, CompletableFuture<T> result) {
+        List<ResponseChunks.Chunk> split;
+        try {
+            split = ResponseChunks.split(parts, totalBytes, chunkSizeBytes);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        chunks.addAndGet(split.size());
+
+        List<CompletableFuture<T>> chunkResults = new ArrayList<>(split.size());
+        for (int i = 0; i < split.size(); i++) {
+            ResponseChunks.Chunk chunk = split.get(i);
+            CompletableFuture<T> chunkResult = new CompletableFuture<>();
+            chunkResults.add(chunkResult);
+            Runnable task = () -> parseChunk(chunk, chunkParser, chunkResult);
+            if (i == split.size() - 1) {
+                // This thread takes the last chunk itself instead of waiting
+                task.run();
+                continue;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+
+        CompletableFuture.allOf(chunkResults.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            List<T> results = new ArrayList<>(chunkResults.size());
+            for (CompletableFuture<T> chunkResult : chunkResults) {
+                results.add(chunkResult.join());
+            }
+            result.complete(merger.apply(results));
+        });
+    }
+
+    private <T> void parseChunk(ResponseChunks.Chunk chunk, ChunkParser<T> chunkParser, CompletableFuture<T> result) {
+        long start = System.nanoTime();
+        try {
+            result.complete(chunkParser.parse(chunk));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        } finally {
+            parseNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getParseNanos() {
+        return parseNanos.get();
+    }
+
+    public long getHandoffNanos() {
+        return handoffNanos.get();
+    }
+
+    public long getMaxHandoffNanos() {
+        return maxHandoffNanos.get();
+    }
+
+    public int getQueuedResponses() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        long parsed = getResponses();
+        return String.format("%d responses in %d chunks, %d rows, %d rejected, %d queued, "
+                + "parse %d ms, handoff wait avg %.2f ms max %.2f ms",
+                parsed, getChunks(), getRows(), getRejected(), getQueuedResponses(), getParseNanos() / 1000000,
+                parsed > 0 ? getHandoffNanos() / 1e6 / parsed : 0, getMaxHandoffNanos() / 1e6);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Parser pool stopped: {}", this);
+    }
+}
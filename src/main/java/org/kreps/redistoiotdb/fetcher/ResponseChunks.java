@@ -0,0 +1,219 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.kreps.redistoiotdb.columnar.RowBlock;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a response body, held as the byte arrays of its body parts, into
+ * chunks of whole rows that can be parsed independently.
+ * <p>
+ * The split only scans for row boundaries at the top level of the array,
+ * skipping over strings; bytes are never copied. Each chunk of a split body is
+ * parsed as its own array by wrapping it in brackets.
+ */
+final class ResponseChunks {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseChunks.class);
+    private static final byte[] OPEN = {'['};
+    private static final byte[] CLOSE = {']'};
+
+    private ResponseChunks() {
+    }
+
+    /**
+     * A run of slices of the body parts.
+     */
+    static final class Chunk {
+        private final List<byte[]> arrays = new ArrayList<>();
+        private final List<int[]> ranges = new ArrayList<>();
+        private final boolean wrapped;
+
+        private Chunk(boolean wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        private void add(byte[] array, int from, int to) {
+            if (to > from) {
+                arrays.add(array);
+                ranges.add(new int[] {from, to});
+            }
+        }
+    }
+
+    /**
+     * Returns the body as one chunk if it is at most {@code chunkSize} bytes, otherwise
+     * as chunks of whole rows of roughly {@code chunkSize} bytes each.
+     */
+    static List<Chunk> split(List<byte[]> parts, long totalBytes, long chunkSize) throws IOException {
+        if (totalBytes <= chunkSize) {
+            Chunk chunk = new Chunk(false);
+            for (byte[] part : parts) {
+                chunk.add(part, 0, part.length);
+            }
+            return Collections.singletonList(chunk);
+        }
+
+        List<Chunk> chunks = new ArrayList<>();
+        Chunk current = null;
+        int currentStartPart = 0;
+        int currentStartOffset = 0;
+        long currentStartPosition = 0;
+        long position = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        boolean awaitingSeparator = false;
+        boolean ended = false;
+
+        for (int partIndex = 0; partIndex < parts.size(); partIndex++) {
+            byte[] part = parts.get(partIndex);
+            for (int i = 0; i < part.length; i++, position++) {
+                byte b = part[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                if (ended) {
+                    if (!isWhitespace(b)) {
+                        throw new IOException("Unexpected content after the array of rows");
+                    }
+                    continue;
+                }
+
+                switch (b) {
+                    case '"':
+                        inString = true;
+                        break;
+                    case '[':
+                    case '{':
+                        if (depth == 0 && b != '[') {
+                            throw new IOException("Expected an array of rows");
+                        }
+                        depth++;
+                        if (depth == 1) {
+                            current = new Chunk(true);
+                            currentStartPart = partIndex;
+                            currentStartOffset = i + 1;
+                            currentStartPosition = position + 1;
+                        }
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        if (depth == 0) {
+                            if (current != null) {
+                                close(current, parts, currentStartPart, currentStartOffset, partIndex, i);
+                                chunks.add(current);
+                                current = null;
+                            }
+                            ended = true;
+                        } else if (depth == 1 && b == '}' && current != null
+                                && position + 1 - currentStartPosition >= chunkSize) {
+                            close(current, parts, currentStartPart, currentStartOffset, partIndex, i + 1);
+                            chunks.add(current);
+                            current = null;
+                            awaitingSeparator = true;
+                        }
+                        break;
+                    case ',':
+                        if (depth == 1 && awaitingSeparator) {
+                            awaitingSeparator = false;
+                            current = new Chunk(true);
+                            currentStartPart = partIndex;
+                            currentStartOffset = i + 1;
+                            currentStartPosition = position + 1;
+                        }
+                        break;
+                    default:
+                        if (depth == 0 && !isWhitespace(b)) {
+                            throw new IOException("Expected an array of rows");
+                        }
+                        break;
+                }
+            }
+        }
+
+        if (!ended) {
+            throw new IOException("Response ended before the closing bracket");
+        }
+        return chunks;
+    }
+
+    private static void close(Chunk chunk, List<byte[]> parts, int startPart, int startOffset, int endPart,
+            int endOffset) {
+        for (int p = startPart; p <= endPart; p++) {
+            byte[] part = parts.get(p);
+            chunk.add(part, p == startPart ? startOffset : 0, p == endPart ? endOffset : part.length);
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Parses one chunk into data points; rows that are not valid data points are logged and skipped.
+     *
+     * @param dictionary dictionary to resolve tags with, or null
+     */
+    static List<DataPoint> parse(Chunk chunk, JsonFactory factory, TagDictionary dictionary) throws IOException {
+        List<DataPoint> dataPoints = new ArrayList<>();
+        StreamingRowParser parser = new StreamingRowParser(factory, (row, tagId) -> {
+            try {
+                dataPoints.add(new DataPoint(row, dictionary, tagId));
+            } catch (Exception e) {
+                logger.error("Error processing data point: {}", e.getMessage());
+            }
+        }, dictionary);
+
+        feed(parser, chunk);
+        return dataPoints;
+    }
+
+    /**
+     * Parses one chunk into a columnar block; rows that are not valid data points are logged and skipped.
+     *
+     * @param dictionary dictionary to resolve tags with, or null
+     */
+    static RowBlock parseRows(Chunk chunk, JsonFactory factory, TagDictionary dictionary, List<String> measurements)
+            throws IOException {
+        RowBlock block = new RowBlock(measurements, 256);
+        StreamingRowParser parser = new StreamingRowParser(factory, (row, tagId) -> {
+            try {
+                block.add(row, tagId);
+            } catch (Exception e) {
+                logger.error("Error processing data point: {}", e.getMessage());
+            }
+        }, dictionary, true);
+        feed(parser, chunk);
+        return block;
+    }
+
+    private static void feed(StreamingRowParser parser, Chunk chunk) throws IOException {
+        if (chunk.wrapped) {
+            parser.feed(OPEN, 0, OPEN.length);
+        }
+        for (int i = 0; i < chunk.arrays.size(); i++) {
+            int[] range = chunk.ranges.get(i);
+            parser.feed(chunk.arrays.get(i), range[0], range[1] - range[0]);
+        }
+        if (chunk.wrapped) {
+            parser.feed(CLOSE, 0, CLOSE.length);
+        }
+        parser.finish();
+    }
+}
@@ -0,0 +1,167 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.kreps.redistoiotdb.model.TagDictionary;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Incremental parser for the API response, a JSON array of flat row objects.
+ * Bytes are fed slice by slice straight from the body parts and every completed
+ * row is handed over immediately, so the body is never copied into one string.
+ * <p>
+ * With a {@link TagDictionary} the tag name is resolved to its ID and
+ * canonical String from the parser's buffer, and the repeated attribute values
+ * are shared, so none of them allocate a String per row.
+ */
+class StreamingRowParser {
+
+    @FunctionalInterface
+    interface RowHandler {
+        /**
+         * @param tagId the row's tag ID, or {@link TagDictionary#UNKNOWN} without a dictionary or for unknown tags
+         */
+        void onRow(Map<String, String> row, int tagId);
+    }
+
+    private static final String TAG_FIELD = "org_tag";
+    private static final String[] SHARED_FIELDS = {"PlantCode", "std_tag", "SensorType"};
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final RowHandler rowHandler;
+    private final TagDictionary dictionary;
+    private final boolean reuseRow;
+    private boolean started;
+    private boolean finished;
+    private Map<String, String> row;
+    private Map<String, String> spareRow;
+    private String field;
+    private int tagId;
+
+    StreamingRowParser(JsonFactory factory, RowHandler rowHandler) throws IOException {
+        this(factory, rowHandler, null);
+    }
+
+    /**
+     * @param dictionary dictionary to resolve tags with, or null
+     */
+    StreamingRowParser(JsonFactory factory, RowHandler rowHandler, TagDictionary dictionary) throws IOException {
+        this(factory, rowHandler, dictionary, false);
+    }
+
+    /**
+     * @param dictionary dictionary to resolve tags with, or null
+     * @param reuseRow pass the same map, cleared, for every row; the handler must not keep it
+     */
+    StreamingRowParser(JsonFactory factory, RowHandler rowHandler, TagDictionary dictionary, boolean reuseRow)
+            throws IOException {
+        this.reuseRow = reuseRow;
+        this.parser = factory.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.rowHandler = rowHandler;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Parses the next chunk of the response. The array must not be modified afterwards.
+     */
+    void feed(byte[] data, int offset, int length) throws IOException {
+        feeder.feedInput(data, offset, offset + length);
+        drain();
+    }
+
+    /**
+     * Signals the end of the response and checks that the array was complete.
+     */
+    void finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        if (!finished) {
+            throw new JsonParseException(parser, "Response ended before the closing bracket");
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (!started) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of rows but found " + token);
+            }
+            started = true;
+            return;
+        }
+        if (finished) {
+            throw new JsonParseException(parser, "Unexpected content after the array of rows");
+        }
+
+        if (row == null) {
+            if (token == JsonToken.END_ARRAY) {
+                finished = true;
+            } else if (token == JsonToken.START_OBJECT) {
+                if (reuseRow && spareRow != null) {
+                    row = spareRow;
+                    row.clear();
+                } else {
+                    row = new HashMap<>();
+                }
+                tagId = TagDictionary.UNKNOWN;
+            } else {
+                throw new JsonParseException(parser, "Expected a row object but found " + token);
+            }
+            return;
+        }
+
+        switch (token) {
+            case FIELD_NAME:
+                field = parser.getCurrentName();
+                break;
+            case END_OBJECT:
+                rowHandler.onRow(row, tagId);
+                spareRow = row;
+                row = null;
+                break;
+            case VALUE_NULL:
+                row.put(field, null);
+                break;
+            case START_OBJECT:
+            case START_ARRAY:
+                throw new JsonParseException(parser, "Nested value in field '" + field + "' is not supported");
+            case VALUE_STRING:
+                row.put(field, dictionary != null ? sharedValue() : parser.getText());
+                break;
+            default:
+                row.put(field, parser.getText());
+                break;
+        }
+    }
+
+    private String sharedValue() throws IOException {
+        if (TAG_FIELD.equals(field)) {
+            int id = dictionary.lookup(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            if (id != TagDictionary.UNKNOWN) {
+                tagId = id;
+                return dictionary.getName(id);
+            }
+            return parser.getText();
+        }
+        for (String sharedField : SHARED_FIELDS) {
+            if (sharedField.equals(field)) {
+                return dictionary.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            }
+        }
+        return parser.getText();
+    }
+}
@@ -0,0 +1,224 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import org.kreps.redistoiotdb.config.AdaptiveTierConfig;
+import org.kreps.redistoiotdb.config.FetcherConfig;
+import org.kreps.redistoiotdb.config.TagDefinition;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Assigns every tag to a polling tier. Tiers are ordered from the shortest to
+ * the longest interval; tags without a tier go to the {@value #DEFAULT_TIER}
+ * tier, polled at {@code interval_ms} unless it is configured explicitly.
+ * <p>
+ * In adaptive mode each polled value is compared with the previous one. At
+ * every evaluation a tag whose value changed in at least
+ * {@code promote_change_ratio} of its polls moves one tier faster, and one that
+ * changed in at most {@code demote_change_ratio} of them moves one tier slower.
+ * Tags with a priority above 0 never move slower than their configured tier.
+ * <p>
+ * The tag list of every tier is built once and kept until a tag moves into or
+ * out of the tier, so callers can tell by reference whether it changed.
+ */
+public class TagTiers {
+    private static final Logger logger = LoggerFactory.getLogger(TagTiers.class);
+    public static final String DEFAULT_TIER = FetcherConfig.DEFAULT_TIER;
+
+    private final List<String> tierNames = new ArrayList<>();
+    private final Map<String, Integer> intervals = new HashMap<>();
+    private final Map<String, TagState> states = new LinkedHashMap<>();
+    // Tag list per tier index, null until built or after the tier's tags changed
+    private final List<List<String>> tagsByTier = new ArrayList<>();
+
+    public TagTiers(List<TagDefinition> definitions, Map<String, Integer> tiers, int defaultIntervalMs) {
+        intervals.putAll(tiers);
+        intervals.putIfAbsent(DEFAULT_TIER, defaultIntervalMs);
+        tierNames.addAll(intervals.keySet());
+        Collections.sort(tierNames, Comparator.comparingInt(intervals::get));
+        for (int i = 0; i < tierNames.size(); i++) {
+            tagsByTier.add(null);
+        }
+
+        for (TagDefinition definition : definitions) {
+            states.put(definition.getName(), newState(definition));
+        }
+    }
+
+    private TagState newState(TagDefinition definition) {
+        String tier = definition.getTier() != null ? definition.getTier() : DEFAULT_TIER;
+        return new TagState(definition.getPriority(), tierNames.indexOf(tier));
+    }
+
+    /**
+     * @return every configured tier, fastest first.
+     */
+    public List<String> getTierNames() {
+        return Collections.unmodifiableList(tierNames);
+    }
+
+    public int getIntervalMs(String tier) {
+        return intervals.get(tier);
+    }
+
+    /**
+     * @return the tags currently in the tier, highest priority first. The same unmodifiable
+     *         list is returned until the tier's tags change.
+     */
+    public synchronized List<String> getTags(String tier) {
+        int index = tierNames.indexOf(tier);
+        List<String> cached = tagsByTier.get(index);
+        if (cached == null) {
+            cached = Collections.unmodifiableList(buildTags(index));
+            tagsByTier.set(index, cached);
+        }
+        return cached;
+    }
+
+    private List<String> buildTags(int index) {
+        List<Map.Entry<String, TagState>> members = new ArrayList<>();
+        for (Map.Entry<String, TagState> entry : states.entrySet()) {
+            if (entry.getValue().tier == index) {
+                members.add(entry);
+            }
+        }
+        members.sort(Comparator.comparingInt((Map.Entry<String, TagState> entry) -> entry.getValue().priority)
+                .reversed());
+        List<String> tags = new ArrayList<>(members.size());
+        for (Map.Entry<String, TagState> entry : members) {
+            tags.add(entry.getKey());
+        }
+        return tags;
+    }
+
+    /**
+     * Replaces the tag set with the one from a reloaded tags file. Tags that are still
+     * there with the same tier and priority keep their state, adaptive tier included;
+     * only the tiers whose tags changed have their tag list rebuilt.
+     *
+     * @return the number of tags added, changed and removed, in that order.
+     */
+    public synchronized int[] update(List<TagDefinition> definitions) {
+        int added = 0;
+        int changed = 0;
+        Map<String, TagState> previous = new LinkedHashMap<>(states);
+        states.clear();
+        for (TagDefinition definition : definitions) {
+            TagState state = previous.remove(definition.getName());
+            TagState configured = newState(definition);
+            if (state == null || state.priority != configured.priority
+                    || state.configuredTier != configured.configuredTier) {
+                if (state == null) {
+                    added++;
+                } else {
+                    changed++;
+                    tagsByTier.set(state.tier, null);
+                }
+                tagsByTier.set(configured.tier, null);
+                state = configured;
+            }
+            states.put(definition.getName(), state);
+        }
+        for (TagState removed : previous.values()) {
+            tagsByTier.set(removed.tier, null);
+        }
+        return new int[] { added, changed, previous.size() };
+    }
+
+    /**
+     * Records whether each polled value differs from the previous poll of its tag.
+     */
+    public synchronized void observe(List<DataPoint> dataPoints) {
+        for (DataPoint dataPoint : dataPoints) {
+            if (dataPoint.getOrgTag() == null) {
+                continue;
+            }
+            TagState state = states.get(dataPoint.getOrgTag().trim());
+            if (state == null) {
+                continue;
+            }
+            Object value = dataPoint.getMeasurements().get("Val");
+            Object time = dataPoint.getOriTime();
+            if (state.lastTime != null) {
+                state.observations++;
+                if (!Objects.equals(value, state.lastValue) || !Objects.equals(time, state.lastTime)) {
+                    state.changes++;
+                }
+            }
+            state.lastValue = value;
+            state.lastTime = time;
+        }
+    }
+
+    /**
+     * Moves tags between tiers by their change ratio since the previous evaluation.
+     */
+    public synchronized void adapt(AdaptiveTierConfig adaptive) {
+        int promoted = 0;
+        int demoted = 0;
+        for (TagState state : states.values()) {
+            if (state.observations >= adaptive.getMinObservations()) {
+                double ratio = (double) state.changes / state.observations;
+                if (ratio >= adaptive.getPromoteChangeRatio() && state.tier > 0) {
+                    moveTo(state, state.tier - 1);
+                    promoted++;
+                } else if (ratio <= adaptive.getDemoteChangeRatio() && state.tier < tierNames.size() - 1
+                        && (state.priority <= 0 || state.tier < state.configuredTier)) {
+                    moveTo(state, state.tier + 1);
+                    demoted++;
+                }
+            }
+            state.observations = 0;
+            state.changes = 0;
+        }
+        logger.info("Adaptive tiers: promoted {} tags, demoted {} tags, tier sizes {}", promoted, demoted,
+                tierSizes());
+    }
+
+    private void moveTo(TagState state, int tier) {
+        tagsByTier.set(state.tier, null);
+        tagsByTier.set(tier, null);
+        state.tier = tier;
+    }
+
+    private Map<String, Integer> tierSizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        for (String tier : tierNames) {
+            sizes.put(tier, 0);
+        }
+        for (TagState state : states.values()) {
+            sizes.merge(tierNames.get(state.tier), 1, Integer::sum);
+        }
+        return sizes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return tierSizes().toString();
+    }
+
+    private static final class TagState {
+        private final int priority;
+        private final int configuredTier;
+        private int tier;
+        private int observations;
+        private int changes;
+        private Object lastValue;
+        private Object lastTime;
+
+        private TagState(int priority, int tier) {
+            this.priority = priority;
+            this.configuredTier = tier;
+            this.tier = tier;
+        }
+    }
+}
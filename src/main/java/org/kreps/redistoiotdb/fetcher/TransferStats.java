@@ -0,0 +1,79 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.asynchttpclient.AsyncHttpClientConfig;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte and parse-time counters of the HTTP responses of one client.
+ * <p>
+ * Wire bytes are counted by a handler in front of the HTTP codec, so they are
+ * the compressed size when a compressed encoding was negotiated. Decoded bytes
+ * are counted as body parts reach {@link FetchCallback}, after decompression.
+ */
+public class TransferStats {
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+
+    /**
+     * Returns an initializer for {@code setHttpAdditionalChannelInitializer} that counts
+     * the bytes read from every connection of the client.
+     */
+    public AsyncHttpClientConfig.AdditionalChannelInitializer channelInitializer() {
+        WireByteCounter counter = new WireByteCounter();
+        return channel -> channel.pipeline().addFirst("wire-bytes", counter);
+    }
+
+    void addDecodedBytes(long bytes) {
+        decodedBytes.addAndGet(bytes);
+    }
+
+    void addParseNanos(long nanos) {
+        parseNanos.addAndGet(nanos);
+    }
+
+    void addResponse() {
+        responses.incrementAndGet();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    public long getParseNanos() {
+        return parseNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long wire = getWireBytes();
+        long decoded = getDecodedBytes();
+        return String.format("%d responses, %d bytes on the wire, %d bytes decoded (%.1fx), %d ms parsing",
+                getResponses(), wire, decoded, wire > 0 ? (double) decoded / wire : 0, getParseNanos() / 1000000);
+    }
+
+    @ChannelHandler.Sharable
+    private class WireByteCounter extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof ByteBuf) {
+                wireBytes.addAndGet(((ByteBuf) msg).readableBytes());
+            }
+            ctx.fireChannelRead(msg);
+        }
+    }
+}
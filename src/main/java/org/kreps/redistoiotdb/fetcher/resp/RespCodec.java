@@ -0,0 +1,214 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RESP2 encoder and incremental decoder shared by {@link RespConnection}
+ * and the {@code RespStandInServer} test fixture.
+ * <p>
+ * Decoded values are {@code String} (simple and bulk strings), {@code Long}
+ * (integers), {@link RespError}, {@code List<Object>} (arrays) or {@code null}
+ * (nil bulk string or array).
+ */
+public final class RespCodec {
+    /** Returned by {@link #parse(ByteBuffer)} when the buffer does not hold a complete value yet. */
+    public static final Object INCOMPLETE = new Object();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private RespCodec() {
+    }
+
+    public static final class RespError {
+        private final String message;
+
+        public RespError(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return message;
+        }
+    }
+
+    /**
+     * Parses one value starting at the buffer's position. On success the position
+     * is moved past the value; if the value is incomplete the position is left
+     * unchanged and {@link #INCOMPLETE} is returned.
+     */
+    public static Object parse(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        Object value = parseValue(buffer);
+        if (value == INCOMPLETE) {
+            buffer.position(start);
+        }
+        return value;
+    }
+
+    private static Object parseValue(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return INCOMPLETE;
+        }
+        byte type = buffer.get();
+        String line = readLine(buffer);
+        if (line == null) {
+            return INCOMPLETE;
+        }
+
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new RespError(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                if (buffer.remaining() < length + 2) {
+                    return INCOMPLETE;
+                }
+                String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length + 2);
+                return value;
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Object element = parseValue(buffer);
+                    if (element == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    values.add(element);
+                }
+                return values;
+            }
+            default:
+                throw new IOException("Unexpected RESP type byte: " + (char) type);
+        }
+    }
+
+    private static String readLine(ByteBuffer buffer) {
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit() - 1; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+                String line = new String(buffer.array(), buffer.arrayOffset() + start, i - start,
+                        StandardCharsets.US_ASCII);
+                buffer.position(i + 2);
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Growable output buffer for RESP values.
+     */
+    public static final class Writer {
+        private ByteBuffer buffer;
+
+        public Writer(int initialCapacity) {
+            this.buffer = ByteBuffer.allocate(initialCapacity);
+        }
+
+        public Writer command(List<String> args) {
+            arrayHeader(args.size());
+            for (String arg : args) {
+                bulk(arg);
+            }
+            return this;
+        }
+
+        public Writer command(String... args) {
+            arrayHeader(args.length);
+            for (String arg : args) {
+                bulk(arg);
+            }
+            return this;
+        }
+
+        public Writer arrayHeader(int count) {
+            return header('*', Integer.toString(count));
+        }
+
+        public Writer bulk(String value) {
+            if (value == null) {
+                return header('$', "-1");
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            header('$', Integer.toString(bytes.length));
+            ensureCapacity(bytes.length + 2);
+            buffer.put(bytes).put(CRLF);
+            return this;
+        }
+
+        public Writer nullArray() {
+            return header('*', "-1");
+        }
+
+        public Writer simple(String value) {
+            return header('+', value);
+        }
+
+        public Writer error(String message) {
+            return header('-', message);
+        }
+
+        public Writer integer(long value) {
+            return header(':', Long.toString(value));
+        }
+
+        private Writer header(char type, String line) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(bytes.length + 3);
+            buffer.put((byte) type).put(bytes).put(CRLF);
+            return this;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (buffer.remaining() < extra) {
+                int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+                ByteBuffer grown = ByteBuffer.allocate(capacity);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        public boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        /**
+         * Writes as much as the channel accepts and keeps the rest.
+         *
+         * @return true if everything has been written.
+         */
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            buffer.flip();
+            try {
+                channel.write(buffer);
+                return !buffer.hasRemaining();
+            } finally {
+                buffer.compact();
+            }
+        }
+    }
+}
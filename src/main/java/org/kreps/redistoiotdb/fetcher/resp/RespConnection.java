@@ -0,0 +1,160 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import org.kreps.redistoiotdb.fetcher.resp.RespCodec.RespError;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single non-blocking RESP connection used by one thread at a time. Commands are
+ * pipelined: all requests are written first, then all replies are read back.
+ */
+public class RespConnection implements AutoCloseable {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final String address;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final RespCodec.Writer writer = new RespCodec.Writer(INITIAL_BUFFER_SIZE);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final int timeoutMs;
+
+    public RespConnection(String host, int port, int connectTimeoutMs, int timeoutMs) throws IOException {
+        this.address = host + ":" + port;
+        this.timeoutMs = timeoutMs;
+        this.channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        readBuffer.flip();
+    }
+
+    /**
+     * Authenticates and selects the database if configured.
+     */
+    public void init(String password, int database) throws IOException {
+        if (password != null && !password.isEmpty()) {
+            expectOk(execute("AUTH", password));
+        }
+        if (database != 0) {
+            expectOk(execute("SELECT", Integer.toString(database)));
+        }
+    }
+
+    public Object execute(String... args) throws IOException {
+        writer.command(args);
+        flush();
+        return readReply();
+    }
+
+    /**
+     * Sends all commands before reading any reply, then returns the replies in order.
+     * Error replies are returned as {@link RespError} values.
+     */
+    public List<Object> pipeline(List<List<String>> commands) throws IOException {
+        for (List<String> command : commands) {
+            writer.command(command);
+        }
+        flush();
+
+        List<Object> replies = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            replies.add(readReply());
+        }
+        return replies;
+    }
+
+    private void flush() throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!writer.writeTo(channel)) {
+            await(SelectionKey.OP_WRITE, deadline);
+        }
+    }
+
+    /**
+     * Reads the next reply, blocking until it is complete or the timeout elapses.
+     */
+    public Object readReply() throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            Object reply = RespCodec.parse(readBuffer);
+            if (reply != RespCodec.INCOMPLETE) {
+                return reply;
+            }
+            fill(deadline);
+        }
+    }
+
+    private void fill(long deadline) throws IOException {
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            grown.put(readBuffer);
+            readBuffer = grown;
+        }
+        try {
+            int read;
+            while ((read = channel.read(readBuffer)) == 0) {
+                await(SelectionKey.OP_READ, deadline);
+            }
+            if (read < 0) {
+                throw new EOFException("Connection closed by " + address);
+            }
+        } finally {
+            readBuffer.flip();
+        }
+    }
+
+    private void await(int operation, long deadline) throws IOException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Timed out after " + timeoutMs + " ms waiting for " + address);
+        }
+        SelectionKey key = channel.register(selector, operation);
+        try {
+            selector.select(remaining);
+        } finally {
+            key.interestOps(0);
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private static void expectOk(Object reply) throws IOException {
+        if (reply instanceof RespError) {
+            throw new IOException("Redis error: " + ((RespError) reply).getMessage());
+        }
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public void close() {
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Nothing to release beyond the channel
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.RespSettings;
+import org.kreps.redistoiotdb.fetcher.DataSource;
+import org.kreps.redistoiotdb.fetcher.GapRecorder;
+import org.kreps.redistoiotdb.fetcher.resp.RespCodec.RespError;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DataSource} that reads tag hashes directly from Redis over RESP.
+ * <p>
+ * Every tag is stored as a hash under {@code key_prefix + tag} with the same
+ * fields as a row of the HTTP API. Tags are sharded across a fixed number of
+ * connections; each shard is polled on its own thread with pipelined
+ * {@code HMGET} (or {@code HGETALL}) commands, {@code pipeline_size} at a time.
+ */
+public class RespDataSource implements DataSource {
+    private static final Logger logger = LoggerFactory.getLogger(RespDataSource.class);
+    private static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "PlantCode", "org_tag", "OriTime", "Qual", "ColTime", "std_tag", "SensorType", "Val"));
+
+    private final AppConfig config;
+    private final RespSettings settings;
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final GapRecorder gapRecorder;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService shardPool;
+    private final RespConnection[] connections;
+    private final AtomicBoolean[] shardBusy;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final AtomicInteger shardsInFlight = new AtomicInteger();
+    private long lastPollTime;
+    // Only used on the scheduler thread
+    private List<String> shardedTags;
+    private List<TagShard> tagShards;
+    private Map<String, List<String>> commandByTag = new HashMap<>();
+
+    public RespDataSource(AppConfig config, BlockingQueue<DataPoint> dataQueue, GapRecorder gapRecorder) {
+        this.config = config;
+        this.settings = config.getSourceConfig().getRespSettings();
+        this.dataQueue = dataQueue;
+        this.gapRecorder = gapRecorder;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Resp-Poll-Scheduler"));
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.shardPool = Executors.newFixedThreadPool(settings.getConnections(),
+                r -> new Thread(r, "Resp-Shard-" + threadCounter.incrementAndGet()));
+        this.connections = new RespConnection[settings.getConnections()];
+        this.shardBusy = new AtomicBoolean[settings.getConnections()];
+        for (int i = 0; i < shardBusy.length; i++) {
+            shardBusy[i] = new AtomicBoolean(false);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (isRunning.compareAndSet(false, true)) {
+            int intervalMs = config.getProcessingConfig().getFetcher().getIntervalMs();
+            schedulePoll(System.currentTimeMillis());
+            logger.info("RespDataSource started against {}:{} with {} connections, interval: {} ms",
+                    settings.getHost(), settings.getPort(), settings.getConnections(), intervalMs);
+        }
+    }
+
+    /**
+     * Schedules the next poll at the given time. Each poll schedules the one after it, so
+     * a change of {@code interval_ms} at runtime applies from the next poll on.
+     */
+    private void schedulePoll(long atMs) {
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    pollAll();
+                } finally {
+                    if (isRunning.get()) {
+                        long next = atMs + config.getProcessingConfig().getFetcher().getIntervalMs();
+                        schedulePoll(Math.max(next, System.currentTimeMillis()));
+                    }
+                }
+            }, Math.max(0, atMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Not scheduling a poll, the source is stopping");
+        }
+    }
+
+    private void pollAll() {
+        long windowEnd = System.currentTimeMillis();
+        long windowStart = lastPollTime > 0 ? lastPollTime
+                : windowEnd - config.getProcessingConfig().getFetcher().getIntervalMs();
+        lastPollTime = windowEnd;
+
+        List<TagShard> shards = shardTags(config.getTags());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            TagShard tagShard = shards.get(shard);
+            List<String> shardTags = tagShard.tags;
+            if (shardTags.isEmpty()) {
+                continue;
+            }
+
+            if (!shardBusy[shard].compareAndSet(false, true)) {
+                gapRecorder.recordGap(shardTags, windowStart, windowEnd,
+                        "Previous poll of shard " + shard + " still running", 0);
+                continue;
+            }
+            int shardIndex = shard;
+            shardsInFlight.incrementAndGet();
+            try {
+                shardPool.execute(() -> pollShard(shardIndex, tagShard, windowStart, windowEnd));
+            } catch (RuntimeException e) {
+                shardsInFlight.decrementAndGet();
+                shardBusy[shard].set(false);
+                gapRecorder.recordGap(shardTags, windowStart, windowEnd, "Failed to schedule poll: " + e.getMessage(), 0);
+            }
+        }
+    }
+
+    /**
+     * @return the tags split over the shards with their commands, split again only when the
+     *         config holds a new tag list. Commands of tags that were already polled are reused.
+     */
+    private List<TagShard> shardTags(List<String> tags) {
+        if (tags != shardedTags) {
+            int shardCount = connections.length;
+            Map<String, List<String>> commands = new HashMap<>(tags.size() * 2);
+            List<TagShard> shards = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<String> shardTags = new ArrayList<>(tags.size() / shardCount + 1);
+                List<List<String>> shardCommands = new ArrayList<>(tags.size() / shardCount + 1);
+                for (int i = shard; i < tags.size(); i += shardCount) {
+                    String tag = tags.get(i);
+                    List<String> command = commandByTag.get(tag);
+                    if (command == null) {
+                        command = buildCommand(tag);
+                    }
+                    commands.put(tag, command);
+                    shardTags.add(tag);
+                    shardCommands.add(command);
+                }
+                shards.add(new TagShard(shardTags, shardCommands));
+            }
+            commandByTag = commands;
+            tagShards = shards;
+            shardedTags = tags;
+        }
+        return tagShards;
+    }
+
+    private void pollShard(int shard, TagShard tagShard, long windowStart, long windowEnd) {
+        List<String> tags = tagShard.tags;
+        long startTime = System.currentTimeMillis();
+        int processedCount = 0;
+        int droppedCount = 0;
+        int missingCount = 0;
+        int errorCount = 0;
+
+        try {
+            RespConnection connection = connection(shard);
+            for (int from = 0; from < tags.size(); from += settings.getPipelineSize()) {
+                int to = Math.min(tags.size(), from + settings.getPipelineSize());
+                List<String> chunk = tags.subList(from, to);
+                List<Object> replies = connection.pipeline(tagShard.commands.subList(from, to));
+
+                List<DataPoint> dataPoints = new ArrayList<>(replies.size());
+                for (int i = 0; i < replies.size(); i++) {
+                    Object reply = replies.get(i);
+                    if (reply instanceof RespError) {
+                        // A per-key error such as WRONGTYPE, the connection and the other tags are fine
+                        errorCount++;
+                        logger.warn("Redis rejected the read of tag {}: {}", chunk.get(i),
+                                ((RespError) reply).getMessage());
+                        continue;
+                    }
+                    Map<String, String> row = toRow(reply);
+                    if (row == null) {
+                        missingCount++;
+                        continue;
+                    }
+                    try {
+                        dataPoints.add(new DataPoint(row, config.getTagDictionary(), TagDictionary.UNKNOWN));
+                    } catch (Exception e) {
+                        logger.error("Error processing data point for tag {}: {}", chunk.get(i), e.getMessage());
+                    }
+                }
+                int accepted = PriorityLaneQueue.offerAll(dataQueue, dataPoints);
+                processedCount += accepted;
+                droppedCount += dataPoints.size() - accepted;
+            }
+
+            logger.info("Shard {} processed {} data points, dropped {} due to queue full, {} tags missing, "
+                    + "{} tags rejected by Redis in {} ms", shard, processedCount, droppedCount, missingCount,
+                    errorCount, System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            logger.error("RESP poll of shard {} failed: {}", shard, e.getMessage());
+            closeConnection(shard);
+            gapRecorder.recordGap(tags, windowStart, windowEnd, "RESP poll failed: " + e.getMessage(), 0);
+        } finally {
+            shardBusy[shard].set(false);
+            shardsInFlight.decrementAndGet();
+        }
+    }
+
+    private List<String> buildCommand(String tag) {
+        boolean hgetall = RespSettings.COMMAND_HGETALL.equals(settings.getCommand());
+        List<String> command = new ArrayList<>(FIELDS.size() + 2);
+        command.add(hgetall ? "HGETALL" : "HMGET");
+        command.add(settings.getKeyPrefix() + tag);
+        if (!hgetall) {
+            command.addAll(FIELDS);
+        }
+        return Collections.unmodifiableList(command);
+    }
+
+    /**
+     * Converts an HMGET or HGETALL reply into a row keyed by field name.
+     *
+     * @return null if the key does not exist.
+     */
+    private Map<String, String> toRow(Object reply) {
+        if (!(reply instanceof List)) {
+            return null;
+        }
+        List<?> values = (List<?>) reply;
+        if (values.isEmpty()) {
+            return null;
+        }
+
+        Map<String, String> row = new HashMap<>();
+        if (RespSettings.COMMAND_HGETALL.equals(settings.getCommand())) {
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                row.put((String) values.get(i), (String) values.get(i + 1));
+            }
+        } else {
+            boolean anyValue = false;
+            for (int i = 0; i < FIELDS.size() && i < values.size(); i++) {
+                String value = (String) values.get(i);
+                if (value != null) {
+                    anyValue = true;
+                    row.put(FIELDS.get(i), value);
+                }
+            }
+            if (!anyValue) {
+                return null;
+            }
+        }
+        return row;
+    }
+
+    private RespConnection connection(int shard) throws IOException {
+        RespConnection connection = connections[shard];
+        if (connection == null) {
+            connection = new RespConnection(settings.getHost(), settings.getPort(),
+                    settings.getConnectTimeoutMs(), config.getProcessingConfig().getFetcher().getTimeoutMs());
+            try {
+                connection.init(settings.getPassword(), settings.getDatabase());
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+            connections[shard] = connection;
+            logger.info("Shard {} connected to {}", shard, connection.getAddress());
+        }
+        return connection;
+    }
+
+    private void closeConnection(int shard) {
+        RespConnection connection = connections[shard];
+        connections[shard] = null;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public boolean isPollInFlight() {
+        return shardsInFlight.get() > 0;
+    }
+
+    @Override
+    public void close() {
+        if (isRunning.compareAndSet(true, false)) {
+            try {
+                scheduler.shutdown();
+                shardPool.shutdown();
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+                if (!shardPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    shardPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                shardPool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            for (int shard = 0; shard < connections.length; shard++) {
+                closeConnection(shard);
+            }
+            logger.info("RespDataSource stopped");
+        }
+    }
+
+    private static final class TagShard {
+        private final List<String> tags;
+        private final List<List<String>> commands;
+
+        private TagShard(List<String> tags, List<List<String>> commands) {
+            this.tags = tags;
+            this.commands = commands;
+        }
+    }
+}
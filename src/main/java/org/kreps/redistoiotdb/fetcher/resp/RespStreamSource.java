@@ -0,0 +1,385 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.RespSettings;
+import org.kreps.redistoiotdb.config.StreamSettings;
+import org.kreps.redistoiotdb.fetcher.DataSource;
+import org.kreps.redistoiotdb.fetcher.resp.RespCodec.RespError;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Push-mode {@link DataSource} that consumes new samples from Redis Streams
+ * through a consumer group.
+ * <p>
+ * Each stream entry carries the fields of one API row. Consumers read with
+ * {@code XREADGROUP ... BLOCK} and hand the entries to the queue. An entry is
+ * acknowledged with {@code XACK} only once its point has been written to IoTDB
+ * or to the failed payload log, so the group's pending list holds everything
+ * that is not safely stored yet. The writers report delivered points back to
+ * their consumer, which acknowledges them before its next read; invalid entries
+ * are acknowledged right away.
+ * <p>
+ * On start, and after every reconnect, a consumer first re-reads its own
+ * pending entries before asking for new ones. Delivery is at least once: an
+ * entry still in the queue when its consumer reconnects is queued again, and
+ * writing the same point twice leaves the same value in IoTDB. Points the queue
+ * drops stay pending and are delivered again after the next reconnect or
+ * restart. The queue applies backpressure by blocking the consumer, leaving
+ * unread entries in Redis.
+ */
+public class RespStreamSource implements DataSource {
+    private static final Logger logger = LoggerFactory.getLogger(RespStreamSource.class);
+    private static final String NEW_ENTRIES = ">";
+    private static final String PENDING_ENTRIES = "0";
+    private static final long OFFER_TIMEOUT_MS = 100;
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private final AppConfig config;
+    private final RespSettings respSettings;
+    private final StreamSettings streamSettings;
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final ExecutorService consumerPool;
+    private final String consumerPrefix;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+    private final AtomicLong receivedEntries = new AtomicLong();
+    private final AtomicLong ackedEntries = new AtomicLong();
+    private final AtomicLong invalidEntries = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final Map<String, String> lastAckedIds = new ConcurrentHashMap<>();
+
+    public RespStreamSource(AppConfig config, BlockingQueue<DataPoint> dataQueue) {
+        this.config = config;
+        this.respSettings = config.getSourceConfig().getRespSettings();
+        this.streamSettings = config.getSourceConfig().getStreamSettings();
+        this.dataQueue = dataQueue;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.consumerPool = Executors.newFixedThreadPool(streamSettings.getConsumers(),
+                r -> new Thread(r, "Stream-Consumer-" + threadCounter.incrementAndGet()));
+        this.consumerPrefix = streamSettings.getConsumer() != null ? streamSettings.getConsumer() : hostName();
+    }
+
+    /**
+     * Consumer names must survive restarts so a consumer finds its own pending entries again.
+     */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "connector";
+        }
+    }
+
+    @Override
+    public void start() {
+        if (isRunning.compareAndSet(false, true)) {
+            for (int i = 0; i < streamSettings.getConsumers(); i++) {
+                String consumerName = consumerPrefix + "-" + i;
+                consumerPool.execute(() -> consume(consumerName));
+            }
+            logger.info("RespStreamSource started on streams {} with group {} and {} consumers",
+                    streamSettings.getKeys(), streamSettings.getGroup(), streamSettings.getConsumers());
+        }
+    }
+
+    private void consume(String consumerName) {
+        RespConnection connection = null;
+        Map<String, String> readIds = new LinkedHashMap<>();
+        // Stream key and entry ID of every delivered point, filled by the writers
+        ConcurrentLinkedQueue<String[]> delivered = new ConcurrentLinkedQueue<>();
+        long lastReport = System.currentTimeMillis();
+        long retryDelay = config.getRetryConfig().getInitialDelayMs();
+
+        while (isRunning.get()) {
+            try {
+                if (connection == null) {
+                    connection = connect();
+                    ensureGroups(connection);
+                    for (String key : streamSettings.getKeys()) {
+                        readIds.put(key, PENDING_ENTRIES);
+                    }
+                    retryDelay = config.getRetryConfig().getInitialDelayMs();
+                    logger.info("Consumer {} connected to {}", consumerName, connection.getAddress());
+                }
+
+                acknowledgeDelivered(connection, delivered);
+                Object reply = connection.execute(buildReadCommand(consumerName, readIds));
+                if (reply instanceof RespError) {
+                    throw new IOException("Redis error: " + ((RespError) reply).getMessage());
+                }
+                if (reply instanceof List) {
+                    handleReply(connection, (List<?>) reply, readIds, delivered);
+                }
+
+                if (System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MS) {
+                    lastReport = System.currentTimeMillis();
+                    logStats(consumerName);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                logger.error("Consumer {} failed: {}, reconnecting in {} ms", consumerName, e.getMessage(), retryDelay);
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                retryDelay = Math.min(config.getRetryConfig().getMaxDelayMs(),
+                        (long) (retryDelay * config.getRetryConfig().getBackoffMultiplier()));
+            }
+        }
+
+        if (connection != null) {
+            try {
+                // Points written later stay pending and are delivered again after a restart
+                acknowledgeDelivered(connection, delivered);
+            } catch (IOException e) {
+                logger.warn("Consumer {} could not acknowledge its last entries: {}", consumerName, e.getMessage());
+            }
+            connection.close();
+        }
+        logger.info("Consumer {} stopped", consumerName);
+    }
+
+    private RespConnection connect() throws IOException {
+        int timeoutMs = streamSettings.getBlockMs() + config.getProcessingConfig().getFetcher().getTimeoutMs();
+        RespConnection connection = new RespConnection(respSettings.getHost(), respSettings.getPort(),
+                respSettings.getConnectTimeoutMs(), timeoutMs);
+        try {
+            connection.init(respSettings.getPassword(), respSettings.getDatabase());
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private void ensureGroups(RespConnection connection) throws IOException {
+        for (String key : streamSettings.getKeys()) {
+            Object reply = connection.execute("XGROUP", "CREATE", key, streamSettings.getGroup(), "$", "MKSTREAM");
+            if (reply instanceof RespError && !((RespError) reply).getMessage().startsWith("BUSYGROUP")) {
+                throw new IOException("Failed to create consumer group on " + key + ": " + reply);
+            }
+        }
+    }
+
+    private String[] buildReadCommand(String consumerName, Map<String, String> readIds) {
+        List<String> command = new ArrayList<>();
+        command.add("XREADGROUP");
+        command.add("GROUP");
+        command.add(streamSettings.getGroup());
+        command.add(consumerName);
+        command.add("COUNT");
+        command.add(Integer.toString(streamSettings.getCount()));
+        if (allNew(readIds)) {
+            // Pending reads return immediately, only block once every stream reads new entries
+            command.add("BLOCK");
+            command.add(Integer.toString(streamSettings.getBlockMs()));
+        }
+        command.add("STREAMS");
+        command.addAll(readIds.keySet());
+        command.addAll(readIds.values());
+        return command.toArray(new String[0]);
+    }
+
+    private static boolean allNew(Map<String, String> readIds) {
+        for (String id : readIds.values()) {
+            if (!NEW_ENTRIES.equals(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queues the entries of one XREADGROUP reply. Valid entries are acknowledged once
+     * delivered, invalid ones right away.
+     */
+    private void handleReply(RespConnection connection, List<?> reply, Map<String, String> readIds,
+            ConcurrentLinkedQueue<String[]> delivered) throws IOException, InterruptedException {
+        Map<String, Object> entriesByKey = new HashMap<>();
+        for (Object streamReply : reply) {
+            List<?> keyAndEntries = (List<?>) streamReply;
+            entriesByKey.put((String) keyAndEntries.get(0), keyAndEntries.get(1));
+        }
+
+        for (Map.Entry<String, String> readId : readIds.entrySet()) {
+            String key = readId.getKey();
+            List<?> entries = (List<?>) entriesByKey.get(key);
+            boolean readingPending = !NEW_ENTRIES.equals(readId.getValue());
+
+            if (entries == null || entries.isEmpty()) {
+                if (readingPending) {
+                    // Own backlog is drained, continue with new entries
+                    readId.setValue(NEW_ENTRIES);
+                }
+                continue;
+            }
+
+            List<String> invalidIds = new ArrayList<>();
+            String lastId = null;
+            long now = System.currentTimeMillis();
+            for (Object entryObject : entries) {
+                List<?> entry = (List<?>) entryObject;
+                String id = (String) entry.get(0);
+                DataPoint dataPoint = toDataPoint(id, (List<?>) entry.get(1));
+                if (dataPoint == null) {
+                    invalidIds.add(id);
+                } else {
+                    dataPoint.setOnDelivered(() -> delivered.add(new String[] { key, id }));
+                    if (!enqueue(dataPoint, id, now)) {
+                        break;
+                    }
+                }
+                lastId = id;
+            }
+
+            if (!invalidIds.isEmpty()) {
+                acknowledge(connection, key, invalidIds);
+            }
+            if (lastId != null && readingPending) {
+                readId.setValue(lastId);
+            }
+        }
+    }
+
+    /**
+     * @return the entry's point, or null if the entry is invalid.
+     */
+    private DataPoint toDataPoint(String id, List<?> fields) {
+        receivedEntries.incrementAndGet();
+        if (fields == null) {
+            // Entry was trimmed from the stream while pending
+            invalidEntries.incrementAndGet();
+            return null;
+        }
+
+        try {
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                row.put((String) fields.get(i), (String) fields.get(i + 1));
+            }
+            return new DataPoint(row, config.getTagDictionary(), TagDictionary.UNKNOWN);
+        } catch (Exception e) {
+            invalidEntries.incrementAndGet();
+            logger.error("Error processing stream entry {}: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the source is stopping and the point was not queued.
+     */
+    private boolean enqueue(DataPoint dataPoint, String id, long now) throws InterruptedException {
+        while (!dataQueue.offer(dataPoint, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            if (!isRunning.get()) {
+                return false;
+            }
+        }
+
+        long latency = Math.max(0, now - Long.parseLong(id.substring(0, id.indexOf('-'))));
+        totalLatencyMs.addAndGet(latency);
+        maxLatencyMs.accumulateAndGet(latency, Math::max);
+        return true;
+    }
+
+    /**
+     * Acknowledges the entries whose points were delivered since the last call, per stream.
+     */
+    private void acknowledgeDelivered(RespConnection connection, ConcurrentLinkedQueue<String[]> delivered)
+            throws IOException {
+        Map<String, List<String>> idsByKey = new LinkedHashMap<>();
+        String[] keyAndId;
+        while ((keyAndId = delivered.poll()) != null) {
+            idsByKey.computeIfAbsent(keyAndId[0], k -> new ArrayList<>()).add(keyAndId[1]);
+        }
+        for (Map.Entry<String, List<String>> entry : idsByKey.entrySet()) {
+            acknowledge(connection, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void acknowledge(RespConnection connection, String key, List<String> ids) throws IOException {
+        List<String> command = new ArrayList<>(ids.size() + 3);
+        command.add("XACK");
+        command.add(key);
+        command.add(streamSettings.getGroup());
+        command.addAll(ids);
+        Object reply = connection.execute(command.toArray(new String[0]));
+        if (reply instanceof RespError) {
+            throw new IOException("XACK failed: " + ((RespError) reply).getMessage());
+        }
+        ackedEntries.addAndGet(reply instanceof Long ? (Long) reply : 0);
+        lastAckedIds.put(key, ids.get(ids.size() - 1));
+    }
+
+    private void logStats(String consumerName) {
+        long received = receivedEntries.get();
+        logger.info("Consumer {}: received {} entries, acked {}, invalid {}, avg latency {} ms, max latency {} ms, "
+                + "last acked ids {}",
+                consumerName, received, ackedEntries.get(), invalidEntries.get(),
+                received > 0 ? totalLatencyMs.get() / received : 0, maxLatencyMs.get(), lastAckedIds);
+    }
+
+    public long getReceivedEntries() {
+        return receivedEntries.get();
+    }
+
+    public long getAckedEntries() {
+        return ackedEntries.get();
+    }
+
+    public Map<String, String> getLastAckedIds() {
+        return lastAckedIds;
+    }
+
+    @Override
+    public boolean isPollInFlight() {
+        // Push mode never polls, backfill does not compete with a request
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (isRunning.compareAndSet(true, false)) {
+            consumerPool.shutdown();
+            try {
+                long waitMs = streamSettings.getBlockMs() + config.getProcessingConfig().getFetcher().getTimeoutMs();
+                if (!consumerPool.awaitTermination(waitMs, TimeUnit.MILLISECONDS)) {
+                    consumerPool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                consumerPool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            logger.info("RespStreamSource stopped, last acked ids {}", lastAckedIds);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.kreps.redistoiotdb.iotdb;
+
+import java.util.Arrays;
+
+/**
+ * Outcomes and latency of a node's recent requests in a sliding window of
+ * one-second buckets. Buckets older than the window are cleared as time moves on.
+ */
+final class HealthWindow {
+    private static final long BUCKET_MS = 1000;
+
+    private final long[] requests;
+    private final long[] failures;
+    private final long[] latencyNanos;
+    private final long[] bucketStarts;
+    private long lastRequestMs;
+
+    HealthWindow(int windowMs) {
+        int buckets = (int) Math.max(1, (windowMs + BUCKET_MS - 1) / BUCKET_MS);
+        this.requests = new long[buckets];
+        this.failures = new long[buckets];
+        this.latencyNanos = new long[buckets];
+        this.bucketStarts = new long[buckets];
+    }
+
+    synchronized void record(boolean success, long nanos, long nowMs) {
+        int bucket = bucket(nowMs);
+        requests[bucket]++;
+        if (!success) {
+            failures[bucket]++;
+        }
+        latencyNanos[bucket] += nanos;
+        lastRequestMs = nowMs;
+    }
+
+    private int bucket(long nowMs) {
+        long start = nowMs - nowMs % BUCKET_MS;
+        int bucket = (int) ((nowMs / BUCKET_MS) % requests.length);
+        if (bucketStarts[bucket] != start) {
+            bucketStarts[bucket] = start;
+            requests[bucket] = 0;
+            failures[bucket] = 0;
+            latencyNanos[bucket] = 0;
+        }
+        return bucket;
+    }
+
+    synchronized long getRequests(long nowMs) {
+        return sum(requests, nowMs);
+    }
+
+    synchronized double getErrorRate(long nowMs) {
+        long total = sum(requests, nowMs);
+        return total > 0 ? (double) sum(failures, nowMs) / total : 0;
+    }
+
+    synchronized double getAverageLatencyMs(long nowMs) {
+        long total = sum(requests, nowMs);
+        return total > 0 ? sum(latencyNanos, nowMs) / 1e6 / total : 0;
+    }
+
+    synchronized long getLastRequestMs() {
+        return lastRequestMs;
+    }
+
+    synchronized void reset() {
+        Arrays.fill(bucketStarts, 0);
+        Arrays.fill(requests, 0);
+        Arrays.fill(failures, 0);
+        Arrays.fill(latencyNanos, 0);
+    }
+
+    private long sum(long[] values, long nowMs) {
+        long oldest = nowMs - nowMs % BUCKET_MS - (requests.length - 1) * BUCKET_MS;
+        long total = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (bucketStarts[i] >= oldest) {
+                total += values[i];
+            }
+        }
+        return total;
+    }
+}
@@ -1,101 +1,439 @@
 package org.kreps.redistoiotdb.iotdb;
 
+import org.apache.iotdb.isession.SessionDataSet;
+import org.apache.iotdb.isession.pool.SessionDataSetWrapper;
+import org.apache.iotdb.session.Session;
 import org.apache.iotdb.session.pool.SessionPool;
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.write.record.Tablet;
 import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.HealthConfig;
 import org.kreps.redistoiotdb.config.IoTDBSettings;
-import org.kreps.redistoiotdb.utils.RetryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Sessions to IoTDB, one {@link SessionPool} of {@code session_pool_size}
+ * sessions per configured node.
+ * <p>
+ * Inserts go to the available nodes in turn, so writes are spread over the
+ * cluster. Each node's pool lists the other nodes after its own, so its
+ * sessions fail over to them when they reconnect. With
+ * {@code enable_redirection} each session sends a device's writes straight to
+ * the node that leads the device's data region.
+ * <p>
+ * Node health is judged passively from the outcome of real inserts over a
+ * sliding window: once enough of a node's recent requests failed with
+ * connection errors it is marked down at once and skipped. Only nodes that are
+ * down, or that have been idle for {@code idle_probe_ms}, are probed, with a
+ * single query over a session of their own outside the pools; a node that
+ * answers is marked up again with a fresh pool. A pool that reports itself
+ * closed or out of sessions is rebuilt without marking its node down.
+ * <p>
+ * Each node's pool sits behind an atomic reference. A replacement pool is built
+ * and warmed with a query before it is swapped in, so writers never wait for a
+ * reconnect or see a closed pool; the old pool is closed once the last insert
+ * or {@link Lease} that was already using it has returned.
+ */
 public class IoTDBSessionPool implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(IoTDBSessionPool.class);
 
-    private SessionPool sessionPool;
+    private final List<Node> nodes = new ArrayList<>();
+    private final AtomicInteger nextNode = new AtomicInteger();
 
-    private static final int CONNECTION_CHECK_INTERVAL_MS = 5000;
+    private static final int MONITOR_TICK_MS = 100;
+    private static final long HEALTH_LOG_INTERVAL_MS = 60000;
     private volatile boolean isAvailable = true;
+    private final HealthConfig healthConfig;
+    private long nextHealthLogMs = System.currentTimeMillis() + HEALTH_LOG_INTERVAL_MS;
     private final AtomicBoolean shutdownInitiated = new AtomicBoolean(false);
     private Thread connectionMonitorThread;
     private final AppConfig config;
 
+    private static final class Node {
+        private final String url;
+        // The node's own URL first, then the rest of the cluster
+        private final List<String> urls;
+        private final AtomicReference<PoolHandle> pool = new AtomicReference<>();
+        private volatile boolean available = true;
+        // Set when the current pool itself is broken while the node may be fine
+        private volatile boolean rebuildRequested;
+        private final HealthWindow health;
+        // Only used by the connection monitor thread
+        private Session monitorSession;
+        private long lastProbeMs;
+
+        private Node(String url, List<String> urls, HealthWindow health) {
+            this.url = url;
+            this.urls = urls;
+            this.health = health;
+        }
+    }
+
+    /**
+     * A session pool together with the number of inserts and leases currently using
+     * it, so that a pool that has been swapped out is closed only once they are done.
+     */
+    private static final class PoolHandle {
+        private final String nodeUrl;
+        private final SessionPool sessionPool;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
+
+        private PoolHandle(String nodeUrl, SessionPool sessionPool) {
+            this.nodeUrl = nodeUrl;
+            this.sessionPool = sessionPool;
+        }
+
+        private void release() {
+            // Pairs with retire(): whichever of the two sees the other's write closes the pool
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                closePool();
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            if (inFlight.get() == 0) {
+                closePool();
+            }
+        }
+
+        private void closePool() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                sessionPool.close();
+                logger.info("Old IoTDB SessionPool for node {} drained and closed", nodeUrl);
+            } catch (Exception e) {
+                logger.warn("Error while closing old session pool: {}", e.getMessage());
+            }
+        }
+    }
+
     public IoTDBSessionPool(AppConfig config) {
-        logger.info("Initializing IoTDB SessionPool with pool size: {}",
-                config.getDestinationConfig().getIotdbSettings().getSessionPoolSize());
+        IoTDBSettings settings = config.getDestinationConfig().getIotdbSettings();
+        List<String> nodeUrls = settings.getNodeUrls();
+        logger.info("Initializing IoTDB SessionPool with pool size {} per node for nodes {}",
+                settings.getSessionPoolSize(), nodeUrls);
         this.config = config;
-        initializeSessionPool(config.getDestinationConfig().getIotdbSettings());
+        this.healthConfig = settings.getHealth();
+        for (int i = 0; i < nodeUrls.size(); i++) {
+            List<String> urls = new ArrayList<>(nodeUrls);
+            Collections.rotate(urls, -i);
+            Node node = new Node(nodeUrls.get(i), urls, new HealthWindow(healthConfig.getWindowMs()));
+            node.pool.set(new PoolHandle(node.url, buildSessionPool(node, settings)));
+            logger.info("IoTDB SessionPool initialized successfully for node {}", node.url);
+            nodes.add(node);
+        }
         startConnectionMonitor();
     }
 
-    private void initializeSessionPool(IoTDBSettings settings) {
+    private SessionPool buildSessionPool(Node node, IoTDBSettings settings) {
         try {
-            this.sessionPool = new SessionPool.Builder()
-                    .host(settings.getHost())
-                    .port(settings.getPort())
+            return new SessionPool.Builder()
+                    .nodeUrls(node.urls)
                     .user(settings.getUsername())
                     .password(settings.getPassword())
                     .maxSize(settings.getSessionPoolSize())
+                    .enableRedirection(settings.isEnableRedirection())
                     .connectionTimeoutInMs(10000)
                     .build();
-            isAvailable = true;
-            logger.info("IoTDB SessionPool initialized successfully with host: {}, port: {}",
-                    settings.getHost(), settings.getPort());
         } catch (Exception e) {
-            isAvailable = false;
-            logger.error("Failed to initialize IoTDB SessionPool: {}", e.getMessage());
+            logger.error("Failed to initialize IoTDB SessionPool for node {}: {}", node.url, e.getMessage());
             throw new RuntimeException(e);
         }
     }
 
-    private synchronized void reinitializeSessionPool() {
-        logger.info("Reinitializing IoTDB SessionPool...");
-        if (sessionPool != null) {
-            try {
-                sessionPool.close();
-            } catch (Exception e) {
-                logger.warn("Error while closing old session pool: {}", e.getMessage());
+    /**
+     * Builds a new pool for the node and opens its first session, then swaps it in
+     * for the current one. Writers keep using the current pool meanwhile.
+     *
+     * @throws Exception if the new pool cannot reach IoTDB; the current pool is kept
+     */
+    private void replaceSessionPool(Node node) throws Exception {
+        logger.info("Reinitializing IoTDB SessionPool for node {}...", node.url);
+        SessionPool fresh = buildSessionPool(node, config.getDestinationConfig().getIotdbSettings());
+        try {
+            SessionDataSetWrapper result = fresh.executeQueryStatement("show version");
+            fresh.closeResultSet(result);
+        } catch (Exception e) {
+            logger.warn("New IoTDB SessionPool for node {} could not be warmed: {}", node.url, e.getMessage());
+            fresh.close();
+            throw e;
+        }
+        PoolHandle old = node.pool.getAndSet(new PoolHandle(node.url, fresh));
+        old.retire();
+        logger.info("IoTDB SessionPool for node {} replaced", node.url);
+    }
+
+    /**
+     * A session pool handed out for requests other than inserts, such as schema
+     * changes. The pool stays open until the lease is closed, even if it is swapped
+     * out in the meantime.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final PoolHandle handle;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(PoolHandle handle) {
+            this.handle = handle;
+        }
+
+        public SessionPool getSessionPool() {
+            return handle.sessionPool;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                handle.release();
             }
         }
+    }
 
-        IoTDBSettings settings = config.getDestinationConfig().getIotdbSettings();
-        initializeSessionPool(settings);
+    /**
+     * Leases the pool of the next available node, or of the next node if none is
+     * available. The lease must be closed once the request is done.
+     */
+    public Lease acquireSessionPool() {
+        return new Lease(acquire(nextNode()));
+    }
+
+    /**
+     * @return the node's current pool, counted as in use until it is released.
+     */
+    private PoolHandle acquire(Node node) {
+        while (true) {
+            PoolHandle handle = node.pool.get();
+            handle.inFlight.incrementAndGet();
+            // If the pool was swapped out in between it may already be closing, take the new one
+            if (node.pool.get() == handle) {
+                return handle;
+            }
+            handle.release();
+        }
+    }
+
+    private Node nextNode() {
+        int start = nextNode.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get((start + i) % nodes.size());
+            if (node.available) {
+                return node;
+            }
+        }
+        return nodes.get(start % nodes.size());
     }
 
-    public SessionPool getSessionPool() {
-        return sessionPool;
+    /**
+     * Inserts the tablet through the next available node and records the outcome in its health window.
+     */
+    public void insertTablet(Tablet tablet, boolean sorted)
+            throws IoTDBConnectionException, StatementExecutionException {
+        Node node = nextNode();
+        PoolHandle handle = acquire(node);
+        long start = System.nanoTime();
+        try {
+            handle.sessionPool.insertTablet(tablet, sorted);
+            recordResult(node, true, System.nanoTime() - start);
+        } catch (IoTDBConnectionException e) {
+            recordResult(node, false, System.nanoTime() - start);
+            requestRebuildIfBroken(node, handle, e);
+            throw e;
+        } catch (StatementExecutionException e) {
+            // The node answered, so it counts as healthy even though the statement failed
+            recordResult(node, true, System.nanoTime() - start);
+            throw e;
+        } finally {
+            handle.release();
+        }
     }
 
-    public boolean checkConnection() {
+    /**
+     * Inserts the records through the next available node and records the outcome in its health window.
+     */
+    public void insertRecords(List<String> deviceIds, List<Long> times, List<List<String>> measurementsList,
+            List<List<TSDataType>> typesList, List<List<Object>> valuesList)
+            throws IoTDBConnectionException, StatementExecutionException {
+        Node node = nextNode();
+        PoolHandle handle = acquire(node);
+        long start = System.nanoTime();
         try {
-            return RetryUtils.executeWithRetry(() -> {
+            handle.sessionPool.insertRecords(deviceIds, times, measurementsList, typesList, valuesList);
+            recordResult(node, true, System.nanoTime() - start);
+        } catch (IoTDBConnectionException e) {
+            recordResult(node, false, System.nanoTime() - start);
+            requestRebuildIfBroken(node, handle, e);
+            throw e;
+        } catch (StatementExecutionException e) {
+            recordResult(node, true, System.nanoTime() - start);
+            throw e;
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * Asks the connection monitor for a new pool if the current one is closed or has
+     * no session to hand out, which a reachable node does not fix by itself.
+     */
+    private void requestRebuildIfBroken(Node node, PoolHandle handle, Exception e) {
+        String message = e.getMessage();
+        if (message != null && (message.contains("Session pool is closed")
+                || message.contains("timeout to get a connection")) && node.pool.get() == handle
+                && !node.rebuildRequested) {
+            node.rebuildRequested = true;
+            logger.warn("Connection pool issue detected for node {}, rebuilding it: {}", node.url, message);
+        }
+    }
+
+    /**
+     * Records the outcome of a request made outside the pools, such as through a {@link WriterSession}.
+     *
+     * @param nodeUrl the node the request was sent to; ignored if it is not a configured node
+     */
+    public void recordResult(String nodeUrl, boolean success, long nanos) {
+        for (Node node : nodes) {
+            if (node.url.equals(nodeUrl)) {
+                recordResult(node, success, nanos);
+                return;
+            }
+        }
+    }
+
+    private void recordResult(Node node, boolean success, long nanos) {
+        long now = System.currentTimeMillis();
+        node.health.record(success, nanos, now);
+        if (!success && node.available && node.health.getRequests(now) >= healthConfig.getMinRequests()
+                && node.health.getErrorRate(now) >= healthConfig.getErrorRateThreshold()) {
+            markDown(node, String.format("%.0f%% of the last %d requests failed",
+                    node.health.getErrorRate(now) * 100, node.health.getRequests(now)));
+        }
+    }
+
+    private synchronized void markDown(Node node, String reason) {
+        if (!node.available) {
+            return;
+        }
+        node.available = false;
+        logger.error("IoTDB node {} marked down: {}", node.url, reason);
+        updateAvailability();
+    }
+
+    /**
+     * Only called by the connection monitor thread. The new pool is built and warmed
+     * outside the lock, so writers recording failures meanwhile are not held up.
+     */
+    private void markUp(Node node) throws Exception {
+        if (node.available) {
+            return;
+        }
+        // Sessions of the old pool were connected to the node while it was lost
+        replaceSessionPool(node);
+        node.health.reset();
+        synchronized (this) {
+            node.available = true;
+            logger.info("IoTDB node {} is available again", node.url);
+            updateAvailability();
+        }
+    }
+
+    private void updateAvailability() {
+        boolean anyAvailable = false;
+        for (Node node : nodes) {
+            anyAvailable |= node.available;
+        }
+        if (anyAvailable && !isAvailable) {
+            logger.info("IoTDB connection restored");
+        } else if (!anyAvailable && isAvailable) {
+            logger.error("IoTDB connection lost on all nodes");
+        }
+        isAvailable = anyAvailable;
+    }
+
+    /**
+     * Rebuilds the pools reported broken and probes the nodes that are marked down or have
+     * had no requests for {@code idle_probe_ms}. Nodes that are busy with inserts are judged
+     * by those alone.
+     */
+    private void probeNodes() {
+        for (Node node : nodes) {
+            if (node.rebuildRequested && node.available) {
+                node.rebuildRequested = false;
                 try {
-                    if (sessionPool == null) {
-                        logger.warn("Session pool is null, attempting to reinitialize...");
-                        reinitializeSessionPool();
-                        return false;
-                    }
-
-                    sessionPool.executeQueryStatement("show databases");
-                    if (!isAvailable) {
-                        logger.info("IoTDB connection restored");
-                        isAvailable = true;
-                    }
-                    return true;
+                    replaceSessionPool(node);
                 } catch (Exception e) {
-                    if (sessionPool != null && (e.getMessage().contains("Session pool is closed") ||
-                            e.getMessage().contains("timeout to get a connection"))) {
-                        logger.warn("Connection pool issue detected, attempting to reinitialize...");
-                        reinitializeSessionPool();
-                    }
-                    throw e; // Let retry mechanism handle it
+                    markDown(node, "pool rebuild failed: " + e.getMessage());
                 }
-            }, config.getRetryConfig(), "IoTDB connection check");
-        } catch (Exception e) {
-            if (isAvailable) {
-                logger.error("IoTDB connection lost: {}", e.getMessage());
-                isAvailable = false;
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            boolean due = node.available
+                    ? now - Math.max(node.health.getLastRequestMs(), node.lastProbeMs) >= healthConfig.getIdleProbeMs()
+                    : now - node.lastProbeMs >= healthConfig.getDownProbeMs();
+            if (!due) {
+                continue;
+            }
+            node.lastProbeMs = now;
+            try {
+                SessionDataSet result = monitorSession(node).executeQueryStatement("show databases");
+                result.closeOperationHandle();
+                markUp(node);
+            } catch (Exception e) {
+                closeMonitorSession(node);
+                markDown(node, "probe failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void logHealthIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextHealthLogMs) {
+            return;
+        }
+        nextHealthLogMs = now + HEALTH_LOG_INTERVAL_MS;
+        for (Node node : nodes) {
+            logger.info("IoTDB node {}: {}, {} requests in the last {} ms, {}% failed, avg latency {} ms", node.url,
+                    node.available ? "up" : "down", node.health.getRequests(now), healthConfig.getWindowMs(),
+                    String.format("%.1f", node.health.getErrorRate(now) * 100),
+                    String.format("%.2f", node.health.getAverageLatencyMs(now)));
+        }
+    }
+
+    private Session monitorSession(Node node) throws Exception {
+        if (node.monitorSession == null) {
+            IoTDBSettings settings = config.getDestinationConfig().getIotdbSettings();
+            Session session = new Session.Builder()
+                    .nodeUrls(Collections.singletonList(node.url))
+                    .username(settings.getUsername())
+                    .password(settings.getPassword())
+                    .build();
+            session.open(false, 10000);
+            node.monitorSession = session;
+        }
+        return node.monitorSession;
+    }
+
+    private void closeMonitorSession(Node node) {
+        if (node.monitorSession != null) {
+            try {
+                node.monitorSession.close();
+            } catch (Exception e) {
+                logger.debug("Error closing monitor session for node {}: {}", node.url, e.getMessage());
             }
-            return false;
+            node.monitorSession = null;
         }
     }
 
@@ -103,15 +441,28 @@ public class IoTDBSessionPool implements AutoCloseable {
         return isAvailable;
     }
 
+    /**
+     * @return the average latency of the inserts of all nodes within the health window, 0 if there were none.
+     */
+    public double getAverageLatencyMs() {
+        long now = System.currentTimeMillis();
+        long requests = 0;
+        double latencyMs = 0;
+        for (Node node : nodes) {
+            long nodeRequests = node.health.getRequests(now);
+            requests += nodeRequests;
+            latencyMs += node.health.getAverageLatencyMs(now) * nodeRequests;
+        }
+        return requests > 0 ? latencyMs / requests : 0;
+    }
+
     private void startConnectionMonitor() {
         connectionMonitorThread = new Thread(() -> {
             while (!shutdownInitiated.get()) {
                 try {
-                    if (!checkConnection()) {
-                        logger.error("IoTDB connection is not available, will retry in {} ms",
-                                CONNECTION_CHECK_INTERVAL_MS);
-                    }
-                    Thread.sleep(CONNECTION_CHECK_INTERVAL_MS);
+                    probeNodes();
+                    logHealthIfDue();
+                    Thread.sleep(MONITOR_TICK_MS);
                 } catch (InterruptedException e) {
                     logger.info("Connection monitor thread interrupted, shutting down");
                     Thread.currentThread().interrupt();
@@ -140,11 +491,12 @@ public class IoTDBSessionPool implements AutoCloseable {
                 }
             }
 
-            // Then close the session pool
-            if (sessionPool != null) {
+            // Then close the session pools
+            for (Node node : nodes) {
+                closeMonitorSession(node);
                 try {
-                    sessionPool.close();
-                    logger.info("IoTDB SessionPool closed successfully");
+                    node.pool.get().sessionPool.close();
+                    logger.info("IoTDB SessionPool for node {} closed successfully", node.url);
                 } catch (Exception e) {
                     logger.error("Error closing IoTDB SessionPool", e);
                 }
@@ -0,0 +1,132 @@
+package org.kreps.redistoiotdb.iotdb;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
+import org.apache.iotdb.session.Session;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.kreps.redistoiotdb.config.IoTDBSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A long-lived IoTDB session owned by a single writer thread, used instead of
+ * borrowing from the shared {@link IoTDBSessionPool} for every insert.
+ * <p>
+ * The session is opened on first use. A connection error closes it and the
+ * next insert opens a new one, trying the nodes in turn starting with the
+ * writer's own, so writers are spread over the cluster and reconnect by
+ * themselves. Each session is connected to a single node, so the outcome of
+ * every insert, and of every failed attempt to connect, is recorded against
+ * the node that was actually used. Not thread-safe.
+ */
+public class WriterSession implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriterSession.class);
+    private static final int CONNECTION_TIMEOUT_MS = 10000;
+
+    private final IoTDBSettings settings;
+    private final List<String> nodeUrls;
+    private final String name;
+    private final IoTDBSessionPool healthTracker;
+    private Session session;
+    private String sessionUrl;
+
+    /**
+     * @param index the writer's number, picks the node it connects to first
+     * @param healthTracker pool whose node health the outcome of every insert is recorded in
+     */
+    public WriterSession(IoTDBSettings settings, int index, String name, IoTDBSessionPool healthTracker) {
+        this.settings = settings;
+        this.healthTracker = healthTracker;
+        this.nodeUrls = new ArrayList<>(settings.getNodeUrls());
+        Collections.rotate(nodeUrls, -(index % nodeUrls.size()));
+        this.name = name;
+    }
+
+    private Session open() throws IoTDBConnectionException {
+        if (session != null) {
+            return session;
+        }
+        IoTDBConnectionException lastError = null;
+        for (String nodeUrl : nodeUrls) {
+            Session opened = new Session.Builder()
+                    .nodeUrls(Collections.singletonList(nodeUrl))
+                    .username(settings.getUsername())
+                    .password(settings.getPassword())
+                    .enableRedirection(settings.isEnableRedirection())
+                    .build();
+            long start = System.nanoTime();
+            try {
+                opened.open(false, CONNECTION_TIMEOUT_MS);
+            } catch (IoTDBConnectionException e) {
+                healthTracker.recordResult(nodeUrl, false, System.nanoTime() - start);
+                logger.debug("{} could not connect to node {}: {}", name, nodeUrl, e.getMessage());
+                lastError = e;
+                continue;
+            }
+            session = opened;
+            sessionUrl = nodeUrl;
+            logger.info("{} opened its IoTDB session on node {}, preferring node {}", name, nodeUrl, nodeUrls.get(0));
+            return session;
+        }
+        throw lastError;
+    }
+
+    public void insertTablet(Tablet tablet, boolean sorted)
+            throws IoTDBConnectionException, StatementExecutionException {
+        Session current = open();
+        long start = System.nanoTime();
+        try {
+            current.insertTablet(tablet, sorted);
+            healthTracker.recordResult(sessionUrl, true, System.nanoTime() - start);
+        } catch (IoTDBConnectionException e) {
+            healthTracker.recordResult(sessionUrl, false, System.nanoTime() - start);
+            discard(e);
+            throw e;
+        } catch (StatementExecutionException e) {
+            // The node answered, so it counts as healthy even though the statement failed
+            healthTracker.recordResult(sessionUrl, true, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    public void insertRecords(List<String> deviceIds, List<Long> times, List<List<String>> measurementsList,
+            List<List<TSDataType>> typesList, List<List<Object>> valuesList)
+            throws IoTDBConnectionException, StatementExecutionException {
+        Session current = open();
+        long start = System.nanoTime();
+        try {
+            current.insertRecords(deviceIds, times, measurementsList, typesList, valuesList);
+            healthTracker.recordResult(sessionUrl, true, System.nanoTime() - start);
+        } catch (IoTDBConnectionException e) {
+            healthTracker.recordResult(sessionUrl, false, System.nanoTime() - start);
+            discard(e);
+            throw e;
+        } catch (StatementExecutionException e) {
+            healthTracker.recordResult(sessionUrl, true, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private void discard(Exception cause) {
+        logger.warn("{} lost its IoTDB session, reconnecting on the next insert: {}", name, cause.getMessage());
+        close();
+    }
+
+    @Override
+    public void close() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (Exception e) {
+                logger.debug("{} error closing IoTDB session: {}", name, e.getMessage());
+            }
+            session = null;
+            sessionUrl = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.kreps.redistoiotdb.management;
+
+import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
+import org.kreps.redistoiotdb.threading.ThreadPoolManager;
+import org.kreps.redistoiotdb.utils.RetryUtils;
+import org.kreps.redistoiotdb.worker.WorkerManager;
+
+import java.util.concurrent.BlockingQueue;
+
+public class RuntimeStats implements RuntimeStatsMBean {
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final WorkerManager workerManager;
+    private final ThreadPoolManager threadPoolManager;
+    private final IoTDBSessionPool iotdbSessionPool;
+
+    public RuntimeStats(BlockingQueue<DataPoint> dataQueue, WorkerManager workerManager,
+            ThreadPoolManager threadPoolManager, IoTDBSessionPool iotdbSessionPool) {
+        this.dataQueue = dataQueue;
+        this.workerManager = workerManager;
+        this.threadPoolManager = threadPoolManager;
+        this.iotdbSessionPool = iotdbSessionPool;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return dataQueue.size();
+    }
+
+    @Override
+    public double getQueueFillRatio() {
+        return workerManager.getQueueFillRatio();
+    }
+
+    @Override
+    public int getWriterCount() {
+        return workerManager.getWriterCount();
+    }
+
+    /**
+     * Includes retired writers that are still writing what they hold.
+     */
+    @Override
+    public int getRunningWriters() {
+        return threadPoolManager.getRunningWriters();
+    }
+
+    @Override
+    public boolean isIoTDBAvailable() {
+        return iotdbSessionPool.isAvailable();
+    }
+
+    @Override
+    public double getAverageInsertLatencyMs() {
+        return iotdbSessionPool.getAverageLatencyMs();
+    }
+
+    @Override
+    public long getRetriesAttempted() {
+        return RetryUtils.getRetriesAttempted();
+    }
+
+    @Override
+    public long getRetriesDenied() {
+        return RetryUtils.getRetriesDenied();
+    }
+
+    @Override
+    public long getLiveThrottledMs() {
+        return workerManager.getWriteLimiter().getLiveThrottledMs();
+    }
+
+    @Override
+    public long getBacklogThrottledMs() {
+        return workerManager.getWriteLimiter().getBacklogThrottledMs();
+    }
+
+    @Override
+    public String getQueueOverflowStats() {
+        return dataQueue instanceof PriorityLaneQueue ? ((PriorityLaneQueue) dataQueue).getOverflowStats()
+                : "policy drop_newest";
+    }
+}
@@ -0,0 +1,30 @@
+package org.kreps.redistoiotdb.management;
+
+/**
+ * Read-only runtime statistics, for judging the effect of a change made through
+ * {@link TuningMBean}. Counters are totals since startup.
+ */
+public interface RuntimeStatsMBean {
+
+    int getQueueSize();
+
+    double getQueueFillRatio();
+
+    int getWriterCount();
+
+    int getRunningWriters();
+
+    boolean isIoTDBAvailable();
+
+    double getAverageInsertLatencyMs();
+
+    long getRetriesAttempted();
+
+    long getRetriesDenied();
+
+    long getLiveThrottledMs();
+
+    long getBacklogThrottledMs();
+
+    String getQueueOverflowStats();
+}
@@ -0,0 +1,204 @@
+package org.kreps.redistoiotdb.management;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.FetcherConfig;
+import org.kreps.redistoiotdb.config.QueueConfig;
+import org.kreps.redistoiotdb.config.RetryConfig;
+import org.kreps.redistoiotdb.config.WriterConfig;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
+import org.kreps.redistoiotdb.worker.WorkerManager;
+import org.kreps.redistoiotdb.writer.WriteLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Applies runtime changes to the loaded configuration and the components that
+ * copied a setting when they started. Values are checked like the configuration
+ * itself; an invalid one is rejected with an {@link IllegalArgumentException}.
+ */
+public class Tuning implements TuningMBean {
+    private static final Logger logger = LoggerFactory.getLogger(Tuning.class);
+
+    private final FetcherConfig fetcherConfig;
+    private final WriterConfig writerConfig;
+    private final RetryConfig retryConfig;
+    private final WorkerManager workerManager;
+    private final WriteLimiter writeLimiter;
+    private final BlockingQueue<DataPoint> dataQueue;
+
+    public Tuning(AppConfig config, WorkerManager workerManager, BlockingQueue<DataPoint> dataQueue) {
+        this.fetcherConfig = config.getProcessingConfig().getFetcher();
+        this.writerConfig = config.getProcessingConfig().getWriter();
+        this.retryConfig = config.getRetryConfig();
+        this.workerManager = workerManager;
+        this.writeLimiter = workerManager.getWriteLimiter();
+        this.dataQueue = dataQueue;
+    }
+
+    @Override
+    public int getFetchIntervalMs() {
+        return fetcherConfig.getIntervalMs();
+    }
+
+    @Override
+    public void setFetchIntervalMs(int intervalMs) {
+        require(intervalMs > 0, "'processing.fetcher.interval_ms' must be greater than 0");
+        changed("processing.fetcher.interval_ms", fetcherConfig.getIntervalMs(), intervalMs);
+        fetcherConfig.setIntervalMs(intervalMs);
+    }
+
+    @Override
+    public int getFetchTimeoutMs() {
+        return fetcherConfig.getTimeoutMs();
+    }
+
+    @Override
+    public void setFetchTimeoutMs(int timeoutMs) {
+        require(timeoutMs > 0, "'processing.fetcher.timeout_ms' must be greater than 0");
+        changed("processing.fetcher.timeout_ms", fetcherConfig.getTimeoutMs(), timeoutMs);
+        fetcherConfig.setTimeoutMs(timeoutMs);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return writerConfig.getBatchSize();
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        require(batchSize > 0, "'processing.writer.batch_size' must be greater than 0");
+        changed("processing.writer.batch_size", writerConfig.getBatchSize(), batchSize);
+        writerConfig.setBatchSize(batchSize);
+    }
+
+    @Override
+    public int getLingerMs() {
+        return writerConfig.getLingerMs();
+    }
+
+    @Override
+    public void setLingerMs(int lingerMs) {
+        require(lingerMs > 0, "'processing.writer.linger_ms' must be greater than 0");
+        changed("processing.writer.linger_ms", writerConfig.getLingerMs(), lingerMs);
+        writerConfig.setLingerMs(lingerMs);
+    }
+
+    @Override
+    public int getWriterCount() {
+        return workerManager.getWriterCount();
+    }
+
+    @Override
+    public void setWriterCount(int count) {
+        require(count > 0, "The writer count must be greater than 0");
+        require(count <= workerManager.getMaxWriters(),
+                "The writer count must not exceed " + workerManager.getMaxWriters() + ", the configured maximum");
+        int before = workerManager.getWriterCount();
+        changed("writer count", before, workerManager.setWriterCount(count));
+    }
+
+    @Override
+    public double getMaxPointsPerSecond() {
+        return writeLimiter.getMaxPointsPerSecond();
+    }
+
+    @Override
+    public void setMaxPointsPerSecond(double maxPointsPerSecond) {
+        require(maxPointsPerSecond >= 0, "'processing.writer.rate_limit.max_points_per_second' must not be negative");
+        changed("processing.writer.rate_limit.max_points_per_second", writeLimiter.getMaxPointsPerSecond(),
+                maxPointsPerSecond);
+        writeLimiter.setMaxPointsPerSecond(maxPointsPerSecond);
+    }
+
+    @Override
+    public double getMaxBytesPerSecond() {
+        return writeLimiter.getMaxBytesPerSecond();
+    }
+
+    @Override
+    public void setMaxBytesPerSecond(double maxBytesPerSecond) {
+        require(maxBytesPerSecond >= 0, "'processing.writer.rate_limit.max_bytes_per_second' must not be negative");
+        changed("processing.writer.rate_limit.max_bytes_per_second", writeLimiter.getMaxBytesPerSecond(),
+                maxBytesPerSecond);
+        writeLimiter.setMaxBytesPerSecond(maxBytesPerSecond);
+    }
+
+    @Override
+    public long getRetryInitialDelayMs() {
+        return retryConfig.getInitialDelayMs();
+    }
+
+    @Override
+    public void setRetryInitialDelayMs(long initialDelayMs) {
+        require(initialDelayMs > 0, "initial_delay_ms must be positive");
+        require(initialDelayMs <= retryConfig.getMaxDelayMs(),
+                "max_delay_ms must be greater than or equal to initial_delay_ms");
+        changed("retry.initial_delay_ms", retryConfig.getInitialDelayMs(), initialDelayMs);
+        retryConfig.setInitialDelayMs(initialDelayMs);
+    }
+
+    @Override
+    public long getRetryMaxDelayMs() {
+        return retryConfig.getMaxDelayMs();
+    }
+
+    @Override
+    public void setRetryMaxDelayMs(long maxDelayMs) {
+        require(maxDelayMs >= retryConfig.getInitialDelayMs(),
+                "max_delay_ms must be greater than or equal to initial_delay_ms");
+        changed("retry.max_delay_ms", retryConfig.getMaxDelayMs(), maxDelayMs);
+        retryConfig.setMaxDelayMs(maxDelayMs);
+    }
+
+    @Override
+    public int getRetryMaxAttempts() {
+        return retryConfig.getMaxAttempts();
+    }
+
+    @Override
+    public void setRetryMaxAttempts(int maxAttempts) {
+        require(maxAttempts > 0, "max_attempts must be positive");
+        changed("retry.max_attempts", retryConfig.getMaxAttempts(), maxAttempts);
+        retryConfig.setMaxAttempts(maxAttempts);
+    }
+
+    @Override
+    public double getRetryBackoffMultiplier() {
+        return retryConfig.getBackoffMultiplier();
+    }
+
+    @Override
+    public void setRetryBackoffMultiplier(double backoffMultiplier) {
+        require(backoffMultiplier > 1.0, "backoff_multiplier must be greater than 1.0");
+        changed("retry.backoff_multiplier", retryConfig.getBackoffMultiplier(), backoffMultiplier);
+        retryConfig.setBackoffMultiplier(backoffMultiplier);
+    }
+
+    @Override
+    public String getQueueOverflowPolicy() {
+        return dataQueue instanceof PriorityLaneQueue ? ((PriorityLaneQueue) dataQueue).getOverflowPolicy()
+                : QueueConfig.OVERFLOW_DROP_NEWEST;
+    }
+
+    @Override
+    public void setQueueOverflowPolicy(String policy) {
+        // The plain queue is only used for drop_newest without lanes or a memory budget
+        require(dataQueue instanceof PriorityLaneQueue,
+                "The overflow policy can only be changed if the queue was configured with one other than "
+                        + "drop_newest, lanes or a memory budget");
+        ((PriorityLaneQueue) dataQueue).setOverflowPolicy(policy);
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static void changed(String setting, Object from, Object to) {
+        logger.info("Changed {} from {} to {} over JMX", setting, from, to);
+    }
+}
@@ -0,0 +1,57 @@
+package org.kreps.redistoiotdb.management;
+
+/**
+ * Processing and retry settings that can be changed at runtime. Each change
+ * takes effect with the next poll, batch, insert or retry, and is lost on
+ * restart unless it is also made in {@code config.json}.
+ */
+public interface TuningMBean {
+
+    int getFetchIntervalMs();
+
+    void setFetchIntervalMs(int intervalMs);
+
+    int getFetchTimeoutMs();
+
+    void setFetchTimeoutMs(int timeoutMs);
+
+    int getBatchSize();
+
+    void setBatchSize(int batchSize);
+
+    int getLingerMs();
+
+    void setLingerMs(int lingerMs);
+
+    int getWriterCount();
+
+    void setWriterCount(int count);
+
+    double getMaxPointsPerSecond();
+
+    void setMaxPointsPerSecond(double maxPointsPerSecond);
+
+    double getMaxBytesPerSecond();
+
+    void setMaxBytesPerSecond(double maxBytesPerSecond);
+
+    long getRetryInitialDelayMs();
+
+    void setRetryInitialDelayMs(long initialDelayMs);
+
+    long getRetryMaxDelayMs();
+
+    void setRetryMaxDelayMs(long maxDelayMs);
+
+    int getRetryMaxAttempts();
+
+    void setRetryMaxAttempts(int maxAttempts);
+
+    double getRetryBackoffMultiplier();
+
+    void setRetryBackoffMultiplier(double backoffMultiplier);
+
+    String getQueueOverflowPolicy();
+
+    void setQueueOverflowPolicy(String policy);
+}
@@ -2,6 +2,7 @@ package org.kreps.redistoiotdb.model;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,6 +14,11 @@ public class DataPoint {
     private final String orgTag;
     private final LocalDateTime oriTime;
     private final Map<String, Object> measurements;
+    private final int tagId;
+    private final String timeseriesPath;
+    private long estimatedBytes;
+    // Set by sources that acknowledge points once they are delivered; cleared when run
+    private Runnable onDelivered;
 
     // Static poison pill instance
     public static final DataPoint POISON_PILL = new DataPoint(1);
@@ -27,9 +33,19 @@ public class DataPoint {
         this.orgTag = null;
         this.oriTime = null;
         this.measurements = null;
+        this.tagId = TagDictionary.UNKNOWN;
+        this.timeseriesPath = null;
     }
 
     public DataPoint(Map<String, String> druidData) {
+        this(druidData, null, TagDictionary.UNKNOWN);
+    }
+
+    /**
+     * @param dictionary dictionary to resolve the tag and its device path with, or null
+     * @param tagId the tag ID if the caller already resolved it, otherwise {@link TagDictionary#UNKNOWN}
+     */
+    public DataPoint(Map<String, String> druidData, TagDictionary dictionary, int tagId) {
         this.plantCode = druidData.get("PlantCode");
         this.orgTag = druidData.get("org_tag");
         this.oriTime = LocalDateTime.parse(druidData.get("OriTime"), DATE_FORMAT);
@@ -41,10 +57,35 @@ public class DataPoint {
         measurements.put("std_tag", druidData.get("std_tag"));
         measurements.put("SensorType", druidData.get("SensorType"));
         measurements.put("Val", druidData.get("Val"));
+
+        if (dictionary != null && tagId == TagDictionary.UNKNOWN) {
+            tagId = dictionary.idOf(orgTag);
+        }
+        this.tagId = tagId;
+        this.timeseriesPath = tagId != TagDictionary.UNKNOWN ? dictionary.devicePath(tagId, plantCode) : null;
+    }
+
+    public static String formatTimeseriesPath(String plantCode, String tag) {
+        return String.format("%s.`%s`.`%s`", PREFIX, plantCode, tag);
+    }
+
+    /**
+     * Parses an {@code OriTime} value into epoch milliseconds in the system time zone.
+     */
+    public static long parseTimestamp(String oriTime) {
+        return LocalDateTime.parse(oriTime, DATE_FORMAT).atZone(java.time.ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
     }
 
     public String getTimeseriesPath() {
-        return String.format("%s.`%s`.`%s`", PREFIX, plantCode, orgTag.trim());
+        return timeseriesPath != null ? timeseriesPath : formatTimeseriesPath(plantCode, orgTag.trim());
+    }
+
+    /**
+     * @return the tag's ID in the {@link TagDictionary}, or {@link TagDictionary#UNKNOWN}.
+     */
+    public int getTagId() {
+        return tagId;
     }
 
     public long getTimestamp() {
@@ -55,6 +96,61 @@ public class DataPoint {
         return measurements;
     }
 
+    /**
+     * Rough heap size of this point: the object itself, its time, the measurement map
+     * and the strings it holds. The measurement names are shared constants and not counted.
+     */
+    public long getEstimatedBytes() {
+        if (measurements == null) {
+            return 0;
+        }
+        long bytes = estimatedBytes;
+        if (bytes == 0) {
+            bytes = 32 + 72 + 64 + stringBytes(plantCode) + stringBytes(orgTag);
+            for (Object value : measurements.values()) {
+                bytes += 32 + stringBytes(value);
+            }
+            estimatedBytes = bytes;
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(Object value) {
+        return value == null ? 0 : 40 + 2L * value.toString().length();
+    }
+
+    /**
+     * Sets what to run once the point has been written to IoTDB or to the failed payload log,
+     * for sources that acknowledge their input only then. Set before the point is queued.
+     */
+    public void setOnDelivered(Runnable onDelivered) {
+        this.onDelivered = onDelivered;
+    }
+
+    /**
+     * Runs the delivery callback, if any, at most once. Called by the thread that owns the point.
+     */
+    public void markDelivered() {
+        Runnable callback = onDelivered;
+        if (callback != null) {
+            onDelivered = null;
+            callback.run();
+        }
+    }
+
+    /**
+     * Whether the source still waits for this point to be delivered, so it must not be silently dropped.
+     */
+    public boolean awaitsDelivery() {
+        return onDelivered != null;
+    }
+
+    public static void markDelivered(Collection<DataPoint> points) {
+        for (DataPoint point : points) {
+            point.markDelivered();
+        }
+    }
+
     public String getPlantCode() {
         return plantCode;
     }
@@ -0,0 +1,105 @@
+package org.kreps.redistoiotdb.model;
+
+import org.apache.iotdb.tsfile.file.metadata.enums.CompressionType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.redistoiotdb.utils.TimestampOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full column-oriented payload of one device's rows that could not be written,
+ * kept so that the rows can be re-inserted later.
+ */
+public class FailedPayload {
+    private final String devicePath;
+    private final long failedAt;
+    private final String reason;
+    private final long[] timestamps;
+    private final List<String> measurements;
+    // columns[measurement][row], null marks a missing value
+    private final String[][] columns;
+
+    public FailedPayload(String devicePath, long failedAt, String reason, long[] timestamps,
+            List<String> measurements, String[][] columns) {
+        this.devicePath = devicePath;
+        this.failedAt = failedAt;
+        this.reason = reason;
+        this.timestamps = timestamps;
+        this.measurements = measurements;
+        this.columns = columns;
+    }
+
+    public static FailedPayload fromDataPoints(String devicePath, List<DataPoint> points,
+            List<String> measurements, String reason) {
+        long[] timestamps = new long[points.size()];
+        String[][] columns = new String[measurements.size()][points.size()];
+
+        for (int row = 0; row < points.size(); row++) {
+            DataPoint point = points.get(row);
+            timestamps[row] = point.getTimestamp();
+            for (int col = 0; col < measurements.size(); col++) {
+                Object value = point.getMeasurements().get(measurements.get(col));
+                columns[col][row] = value != null ? value.toString() : null;
+            }
+        }
+
+        return new FailedPayload(devicePath, System.currentTimeMillis(), reason, timestamps, measurements, columns);
+    }
+
+    /**
+     * @return a tablet with strictly ascending timestamps, see {@link TimestampOrder}.
+     */
+    public Tablet toTablet() {
+        List<MeasurementSchema> schemas = new ArrayList<>(measurements.size());
+        for (String measurement : measurements) {
+            schemas.add(new MeasurementSchema(measurement, TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY));
+        }
+
+        int[] order = TimestampOrder.of(timestamps, timestamps.length);
+        int rows = order != null ? order.length : timestamps.length;
+        Tablet tablet = new Tablet(devicePath, schemas, rows);
+        for (int i = 0; i < rows; i++) {
+            int row = order != null ? order[i] : i;
+            tablet.addTimestamp(i, timestamps[row]);
+            for (int col = 0; col < measurements.size(); col++) {
+                if (columns[col][row] != null) {
+                    tablet.addValue(measurements.get(col), i, columns[col][row]);
+                }
+            }
+        }
+        tablet.rowSize = rows;
+        return tablet;
+    }
+
+    public String getDevicePath() {
+        return devicePath;
+    }
+
+    public long getFailedAt() {
+        return failedAt;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public List<String> getMeasurements() {
+        return measurements;
+    }
+
+    public String[][] getColumns() {
+        return columns;
+    }
+
+    public int getRowCount() {
+        return timestamps.length;
+    }
+}
@@ -27,6 +27,26 @@ public class FailedRequest {
         this.includeFullMessage = includeFullMessage;
     }
 
+    public String getTag() {
+        return tag;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
     @Override
     public String toString() {
         if (includeFullMessage) {
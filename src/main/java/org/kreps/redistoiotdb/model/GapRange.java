@@ -0,0 +1,39 @@
+package org.kreps.redistoiotdb.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A time range that is missing for a group of tags and has to be re-fetched.
+ */
+public class GapRange {
+    private final long startTime;
+    private final long endTime;
+    private final List<String> tags = new ArrayList<>();
+
+    public GapRange(long startTime, long endTime) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void addTag(String tag) {
+        tags.add(tag);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GapRange{start=%d, end=%d, tags=%d}", startTime, endTime, tags.size());
+    }
+}
@@ -0,0 +1,183 @@
+package org.kreps.redistoiotdb.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dense integer IDs for the tags from the tags CSV, assigned in file order at load time.
+ * <p>
+ * Tag names are looked up straight from the parser's character buffer, so an
+ * incoming row is resolved to its ID and canonical name without creating a
+ * String. Every tag also keeps a canonical device path per plant code, built
+ * once when the tag is first seen with that plant code, and the repeated attribute values
+ * (plant code, std_tag, SensorType) are shared through a fixed-size interning
+ * table instead of being decoded again for every row.
+ * <p>
+ * All lookups are lock-free and safe to use from several parser threads.
+ */
+public final class TagDictionary {
+    public static final int UNKNOWN = -1;
+    private static final int ATTRIBUTE_SLOTS = 8192;
+    private static final int MAX_PROBES = 16;
+
+    private final String[] names;
+    private final int[] slots;
+    private final int slotMask;
+    // Devices of every tag, one per plant code it was seen with
+    private final AtomicReferenceArray<Device[]> devices;
+    private final AtomicReferenceArray<String> attributes = new AtomicReferenceArray<>(ATTRIBUTE_SLOTS);
+
+    private static final class Device {
+        private final String plantCode;
+        private final String path;
+
+        private Device(String plantCode, String path) {
+            this.plantCode = plantCode;
+            this.path = path;
+        }
+    }
+
+    /**
+     * @param tags the tags in file order; repeated tags keep the ID of their first occurrence
+     */
+    public TagDictionary(List<String> tags) {
+        this.names = new ArrayList<>(new LinkedHashSet<>(tags)).toArray(new String[0]);
+        int capacity = Integer.highestOneBit(Math.max(4, names.length * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        this.slotMask = capacity - 1;
+        Arrays.fill(slots, UNKNOWN);
+        for (int id = 0; id < names.length; id++) {
+            int slot = names[id].hashCode() & slotMask;
+            while (slots[slot] != UNKNOWN) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = id;
+        }
+        this.devices = new AtomicReferenceArray<>(names.length);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Resolves a tag name held in a character buffer, ignoring surrounding whitespace.
+     *
+     * @return the tag ID, or {@link #UNKNOWN} if the tag is not in the tags CSV.
+     */
+    public int lookup(char[] chars, int offset, int length) {
+        int end = offset + length;
+        while (offset < end && chars[offset] <= ' ') {
+            offset++;
+        }
+        while (end > offset && chars[end - 1] <= ' ') {
+            end--;
+        }
+        int slot = hash(chars, offset, end) & slotMask;
+        int id;
+        while ((id = slots[slot]) != UNKNOWN) {
+            if (matches(names[id], chars, offset, end)) {
+                return id;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the tag ID, or {@link #UNKNOWN} if the tag is not in the tags CSV.
+     */
+    public int idOf(String tag) {
+        if (tag == null) {
+            return UNKNOWN;
+        }
+        String trimmed = tag.trim();
+        int slot = trimmed.hashCode() & slotMask;
+        int id;
+        while ((id = slots[slot]) != UNKNOWN) {
+            if (names[id].equals(trimmed)) {
+                return id;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the canonical device path of the tag for the plant, building it only the
+     * first time the tag is seen with that plant code. The same tag and plant code always
+     * return the same String, so callers can compare paths by reference.
+     */
+    public String devicePath(int id, String plantCode) {
+        while (true) {
+            Device[] known = devices.get(id);
+            if (known != null) {
+                for (Device device : known) {
+                    if (Objects.equals(device.plantCode, plantCode)) {
+                        return device.path;
+                    }
+                }
+            }
+            Device[] grown = known != null ? Arrays.copyOf(known, known.length + 1) : new Device[1];
+            grown[grown.length - 1] = new Device(plantCode, DataPoint.formatTimeseriesPath(plantCode, names[id]));
+            if (devices.compareAndSet(id, known, grown)) {
+                return grown[grown.length - 1].path;
+            }
+        }
+    }
+
+    /**
+     * Returns a shared String with the content of the character range. Values not seen
+     * before are added to the table while it has room; after that they are returned as new Strings.
+     */
+    public String intern(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int slot = hash(chars, offset, end) & (ATTRIBUTE_SLOTS - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            String value = attributes.get(slot);
+            if (value == null) {
+                String created = new String(chars, offset, length);
+                if (attributes.compareAndSet(slot, null, created)) {
+                    return created;
+                }
+                value = attributes.get(slot);
+            }
+            if (matches(value, chars, offset, end)) {
+                return value;
+            }
+            slot = (slot + 1) & (ATTRIBUTE_SLOTS - 1);
+        }
+        return new String(chars, offset, length);
+    }
+
+    /**
+     * Same hash as {@link String#hashCode()} over the range.
+     */
+    private static int hash(char[] chars, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h;
+    }
+
+    private static boolean matches(String value, char[] chars, int from, int to) {
+        if (value.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != chars[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
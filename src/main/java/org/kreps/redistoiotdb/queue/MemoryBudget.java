@@ -0,0 +1,132 @@
+package org.kreps.redistoiotdb.queue;
+
+import org.kreps.redistoiotdb.config.MemoryConfig;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One heap budget, in estimated bytes, shared by every stage that holds data
+ * points: the data queue, the batches the writers have taken from it and the
+ * tablets built from those batches.
+ * <p>
+ * Only the queue is refused once the budget is used up, which makes the
+ * sources wait; the writer stages always get their bytes so that they can keep
+ * draining, and every release wakes the waiting sources.
+ */
+public class MemoryBudget {
+
+    public enum Stage {
+        QUEUE, BATCH, TABLET
+    }
+
+    private final long limitBytes;
+    private final int backpressureTimeoutMs;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong[] stageBytes = new AtomicLong[Stage.values().length];
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong backpressureTimeouts = new AtomicLong();
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+
+    public MemoryBudget(MemoryConfig config) {
+        this.limitBytes = config.getBudgetBytes();
+        this.backpressureTimeoutMs = config.getBackpressureTimeoutMs();
+        for (int i = 0; i < stageBytes.length; i++) {
+            stageBytes[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Reserves the bytes if they fit. A single reservation larger than the whole
+     * budget is allowed once nothing else is reserved, so it cannot block forever.
+     */
+    public boolean tryReserve(Stage stage, long bytes) {
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + bytes > limitBytes && used > 0) {
+                return false;
+            }
+        } while (!usedBytes.compareAndSet(used, used + bytes));
+        stageBytes[stage.ordinal()].addAndGet(bytes);
+        return true;
+    }
+
+    /**
+     * Reserves the bytes even if that exceeds the budget.
+     */
+    public void forceReserve(Stage stage, long bytes) {
+        usedBytes.addAndGet(bytes);
+        stageBytes[stage.ordinal()].addAndGet(bytes);
+    }
+
+    /**
+     * Moves reserved bytes to the next stage without releasing them.
+     */
+    public void transfer(Stage from, Stage to, long bytes) {
+        stageBytes[from.ordinal()].addAndGet(-bytes);
+        stageBytes[to.ordinal()].addAndGet(bytes);
+    }
+
+    public void release(Stage stage, long bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        stageBytes[stage.ordinal()].addAndGet(-bytes);
+        usedBytes.addAndGet(-bytes);
+        for (Runnable listener : releaseListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers a callback run after every release, e.g. to wake producers waiting for room.
+     */
+    public void addReleaseListener(Runnable listener) {
+        releaseListeners.add(listener);
+    }
+
+    void recordBackpressure(boolean timedOut) {
+        backpressureWaits.incrementAndGet();
+        if (timedOut) {
+            backpressureTimeouts.incrementAndGet();
+        }
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * @return how long a source waits for room in the budget before the overflow policy applies.
+     */
+    public int getBackpressureTimeoutMs() {
+        return backpressureTimeoutMs;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getUsedBytes(Stage stage) {
+        return stageBytes[stage.ordinal()].get();
+    }
+
+    public long getBackpressureWaits() {
+        return backpressureWaits.get();
+    }
+
+    public long getBackpressureTimeouts() {
+        return backpressureTimeouts.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d KB used (queue %d KB, batches %d KB, tablets %d KB), "
+                + "%d producer waits, %d timed out",
+                getUsedBytes() / 1024, limitBytes / 1024, getUsedBytes(Stage.QUEUE) / 1024,
+                getUsedBytes(Stage.BATCH) / 1024, getUsedBytes(Stage.TABLET) / 1024,
+                getBackpressureWaits(), getBackpressureTimeouts());
+    }
+}
@@ -0,0 +1,852 @@
+package org.kreps.redistoiotdb.queue;
+
+import org.kreps.redistoiotdb.config.LaneConfig;
+import org.kreps.redistoiotdb.config.QueueConfig;
+import org.kreps.redistoiotdb.config.TagDefinition;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.FailedPayload;
+import org.kreps.redistoiotdb.model.TagDictionary;
+import org.kreps.redistoiotdb.utils.AsyncFileAppender;
+import org.kreps.redistoiotdb.utils.FailedPayloadCodec;
+import org.kreps.redistoiotdb.utils.FailedPayloadLogger;
+import org.kreps.redistoiotdb.writer.IoTDBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded data queue with one FIFO lane per priority class.
+ * <p>
+ * Each data point goes to the lane with the highest {@code min_priority} not
+ * above its tag's priority from the tags CSV; tags below every lane go to the
+ * lowest lane. Writers drain the non-empty lanes by smooth weighted round
+ * robin, so a backed-up routine lane delays a critical one by at most its
+ * weight share. All lanes share {@code capacity}; with {@code lowest_first}
+ * shedding a full queue makes room for a point by dropping the oldest point of
+ * the lowest sheddable lane below it instead of rejecting it. Points that
+ * {@linkplain DataPoint#awaitsDelivery() await delivery} are never shed or
+ * evicted, since their source would otherwise keep them pending forever.
+ * <p>
+ * When no lanes are configured the queue is a single FIFO lane.
+ * <p>
+ * A point that still does not fit is handled by the {@code overflow_policy},
+ * which applies to {@link #offer(DataPoint)} and {@link #offerAll(List)} used
+ * by the sources: {@code drop_newest} rejects it, {@code block_timeout} waits
+ * for room up to {@code block_timeout_ms} per call, {@code drop_oldest} evicts the oldest
+ * point of its lane, {@code conflate} overwrites the newest pending point of
+ * the same device in place, or drops the point if the pending one is newer,
+ * and {@code spill} writes it to
+ * {@code spill_directory} in the failed payload format for a later replay.
+ * {@code conflate} and {@code drop_oldest} fall back to rejecting the point if
+ * there is nothing to overwrite or evict.
+ * <p>
+ * With a {@link MemoryBudget} every queued point also reserves its estimated
+ * size. Under {@code block_timeout} a source that finds the budget used up
+ * waits for the writers to free some of it, up to the backpressure timeout,
+ * before waiting for room; the other policies apply at once. Dequeued points
+ * stay charged to the writer that took them.
+ * <p>
+ * Poison pills bypass the lanes and are only handed out once every lane is
+ * empty, so shutdown still drains the queued data first.
+ */
+public class PriorityLaneQueue extends AbstractQueue<DataPoint> implements BlockingQueue<DataPoint>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PriorityLaneQueue.class);
+    private static final long STATS_INTERVAL_MS = 60000;
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Map<String, Lane> lanesByTag = new HashMap<>();
+    private final Lane[] laneByTagId;
+    private final TagDictionary dictionary;
+    private final int capacity;
+    private final boolean shedLowestFirst;
+    // Guarded by lock
+    private String overflowPolicy;
+    private final long blockTimeoutNanos;
+    // Newest pending point per tag ID for the plant that holds the slot, and per device for points
+    // without an ID or of another plant; conflate policy only
+    private final Entry[] pendingByTagId;
+    private final Map<String, Entry> pendingByDevice;
+    private final AsyncFileAppender spillAppender;
+    private final MemoryBudget memoryBudget;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int count;
+    private int poisonPills;
+    private long blocked;
+    private long timedOut;
+    private long droppedOldest;
+    private long conflated;
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong lastStatsTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param dictionary dictionary the data points' tag IDs come from, or null
+     * @param memoryBudget budget shared with the writers, or null to limit the queue by count only
+     */
+    public PriorityLaneQueue(QueueConfig config, List<TagDefinition> tags, TagDictionary dictionary,
+            MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.capacity = config.getCapacity();
+        this.shedLowestFirst = QueueConfig.SHEDDING_LOWEST_FIRST.equals(config.getShedding());
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getBlockTimeoutMs());
+        boolean conflate = QueueConfig.OVERFLOW_CONFLATE.equals(overflowPolicy);
+        this.pendingByDevice = conflate ? new HashMap<>() : null;
+        this.pendingByTagId = conflate ? new Entry[dictionary != null ? dictionary.size() : 0] : null;
+        this.spillAppender = QueueConfig.OVERFLOW_SPILL.equals(overflowPolicy)
+                ? new AsyncFileAppender(config.getSpillDirectory(), "spill", FailedPayloadLogger.FILE_EXTENSION)
+                : null;
+        List<LaneConfig> laneConfigs = new ArrayList<>(config.getLanes());
+        if (laneConfigs.isEmpty()) {
+            laneConfigs.add(new LaneConfig("default"));
+        }
+        laneConfigs.sort(Comparator.comparingInt(LaneConfig::getMinPriority).reversed());
+        for (LaneConfig laneConfig : laneConfigs) {
+            lanes.add(new Lane(laneConfig));
+        }
+        this.dictionary = dictionary;
+        this.laneByTagId = new Lane[dictionary != null ? dictionary.size() : 0];
+        assignLanes(tags);
+        if (memoryBudget != null) {
+            memoryBudget.addReleaseListener(this::signalNotFull);
+        }
+    }
+
+    private void signalNotFull() {
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void assignLanes(List<TagDefinition> tags) {
+        for (TagDefinition tag : tags) {
+            Lane lane = laneForPriority(tag.getPriority());
+            lanesByTag.put(tag.getName(), lane);
+            int tagId = dictionary != null ? dictionary.idOf(tag.getName()) : TagDictionary.UNKNOWN;
+            if (tagId != TagDictionary.UNKNOWN) {
+                laneByTagId[tagId] = lane;
+            }
+        }
+    }
+
+    /**
+     * Assigns the tags of a reloaded tags file to the lanes of their priority; points
+     * already queued stay in their lane. Tags that were removed keep their lane, in
+     * case points of theirs are still on the way.
+     */
+    public void updateTags(List<TagDefinition> tags) {
+        lock.lock();
+        try {
+            assignLanes(tags);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lane laneForPriority(int priority) {
+        for (Lane lane : lanes) {
+            if (priority >= lane.config.getMinPriority()) {
+                return lane;
+            }
+        }
+        return lanes.get(lanes.size() - 1);
+    }
+
+    private Lane laneFor(DataPoint dataPoint) {
+        int tagId = dataPoint.getTagId();
+        if (tagId >= 0 && tagId < laneByTagId.length && laneByTagId[tagId] != null) {
+            return laneByTagId[tagId];
+        }
+        Lane lane = dataPoint.getOrgTag() != null ? lanesByTag.get(dataPoint.getOrgTag().trim()) : null;
+        return lane != null ? lane : lanes.get(lanes.size() - 1);
+    }
+
+    /**
+     * Queues a point from a source, applying the overflow policy if the queue is full.
+     *
+     * @return false if the point was dropped.
+     */
+    @Override
+    public boolean offer(DataPoint dataPoint) {
+        return offerAll(Collections.singletonList(dataPoint)) == 1;
+    }
+
+    /**
+     * Queues the points of one response, applying the overflow policy to those that do
+     * not fit. Under {@code block_timeout} all waits of the call, for room or for
+     * budget, share one deadline each, so a full queue holds up a response for at
+     * most {@code block_timeout_ms} and the backpressure timeout rather than that long
+     * per point. Points that are spilled are written as one record per device.
+     *
+     * @return the number of points queued or spilled; the others were dropped.
+     */
+    public int offerAll(List<DataPoint> dataPoints) {
+        long now = System.nanoTime();
+        long roomDeadline = now + blockTimeoutNanos;
+        long budgetDeadline = memoryBudget != null
+                ? now + TimeUnit.MILLISECONDS.toNanos(memoryBudget.getBackpressureTimeoutMs())
+                : now;
+        int accepted = 0;
+        List<DataPoint> overflow = null;
+        for (DataPoint dataPoint : dataPoints) {
+            boolean toSpill = false;
+            lock.lock();
+            try {
+                if (place(dataPoint, roomDeadline, budgetDeadline)) {
+                    accepted++;
+                } else if (spillAppender != null) {
+                    toSpill = true;
+                } else {
+                    laneFor(dataPoint).rejected++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (toSpill) {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(dataPoint);
+            }
+        }
+        if (overflow != null) {
+            accepted += spill(overflow);
+        }
+        return accepted;
+    }
+
+    /**
+     * Queues the points of one response on a data queue, through {@link #offerAll(List)}
+     * if it is a lane queue and point by point otherwise.
+     *
+     * @return the number of points the queue accepted.
+     */
+    public static int offerAll(BlockingQueue<DataPoint> queue, List<DataPoint> dataPoints) {
+        if (queue instanceof PriorityLaneQueue) {
+            return ((PriorityLaneQueue) queue).offerAll(dataPoints);
+        }
+        int accepted = 0;
+        for (DataPoint dataPoint : dataPoints) {
+            if (queue.offer(dataPoint)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Queues the point, waiting no later than the deadlines, or applies the overflow
+     * policy. Must be called with the lock held.
+     *
+     * @return false if the point was not queued; it is then rejected or spilled.
+     */
+    private boolean place(DataPoint dataPoint, long roomDeadline, long budgetDeadline) {
+        if (tryEnqueue(dataPoint)) {
+            return true;
+        }
+        boolean blockTimeout = QueueConfig.OVERFLOW_BLOCK_TIMEOUT.equals(overflowPolicy);
+        if (blockTimeout && memoryBudget != null && count < capacity && awaitBudget(dataPoint, budgetDeadline)) {
+            return true;
+        }
+        Lane lane = laneFor(dataPoint);
+        switch (overflowPolicy) {
+            case QueueConfig.OVERFLOW_BLOCK_TIMEOUT:
+                return awaitRoom(dataPoint, roomDeadline);
+            case QueueConfig.OVERFLOW_DROP_OLDEST:
+                // Under a memory budget one eviction may not free enough bytes
+                Entry evicted;
+                while ((evicted = removeEvictable(lane)) != null) {
+                    releaseBytes(evicted);
+                    droppedOldest++;
+                    if (tryEnqueue(dataPoint)) {
+                        return true;
+                    }
+                }
+                return false;
+            case QueueConfig.OVERFLOW_CONFLATE:
+                Entry pending = pendingEntry(dataPoint);
+                if (pending == null) {
+                    return false;
+                }
+                conflated++;
+                if (dataPoint.getTimestamp() < pending.dataPoint.getTimestamp()) {
+                    // Older than what is pending, such as a backfilled or re-read point, so it is the
+                    // superseded one
+                    dataPoint.markDelivered();
+                    return true;
+                }
+                long replacedBytes = pending.bytes;
+                // Superseded by design, so its source need not deliver it again
+                pending.dataPoint.markDelivered();
+                pending.dataPoint = dataPoint;
+                pending.bytes = dataPoint.getEstimatedBytes();
+                if (memoryBudget != null) {
+                    memoryBudget.forceReserve(MemoryBudget.Stage.QUEUE, pending.bytes);
+                    memoryBudget.release(MemoryBudget.Stage.QUEUE, replacedBytes);
+                }
+                return true;
+            default:
+                // Spilled by the caller outside the lock
+                return false;
+        }
+    }
+
+    /**
+     * Waits until the deadline for room; once it has passed the point is not waited
+     * for at all. Must be called with the lock held.
+     */
+    private boolean awaitRoom(DataPoint dataPoint, long deadline) {
+        long nanos = deadline - System.nanoTime();
+        if (nanos > 0) {
+            blocked++;
+        }
+        try {
+            while (nanos > 0) {
+                notFull.awaitNanos(nanos);
+                if (tryEnqueue(dataPoint)) {
+                    return true;
+                }
+                nanos = deadline - System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timedOut++;
+        return false;
+    }
+
+    /**
+     * Waits until the deadline for the writers to free budget. Must be called with the lock held.
+     */
+    private boolean awaitBudget(DataPoint dataPoint, long deadline) {
+        long nanos = deadline - System.nanoTime();
+        try {
+            while (nanos > 0) {
+                notFull.awaitNanos(nanos);
+                if (tryEnqueue(dataPoint)) {
+                    memoryBudget.recordBackpressure(false);
+                    return true;
+                }
+                nanos = deadline - System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        memoryBudget.recordBackpressure(true);
+        return false;
+    }
+
+    /**
+     * Writes the points to the spill file as one record per device, appended together.
+     *
+     * @return the number of points spilled; the others were rejected.
+     */
+    private int spill(List<DataPoint> dataPoints) {
+        Map<String, List<DataPoint>> byDevice = new LinkedHashMap<>();
+        for (DataPoint dataPoint : dataPoints) {
+            byDevice.computeIfAbsent(dataPoint.getTimeseriesPath(), path -> new ArrayList<>()).add(dataPoint);
+        }
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (Map.Entry<String, List<DataPoint>> device : byDevice.entrySet()) {
+                records.write(FailedPayloadCodec.encode(FailedPayload.fromDataPoints(device.getKey(),
+                        device.getValue(), IoTDBWriter.MEASUREMENT_NAMES, "Queue overflow")));
+            }
+            if (spillAppender.append(records.toByteArray())) {
+                spilled.addAndGet(dataPoints.size());
+                DataPoint.markDelivered(dataPoints);
+                return dataPoints.size();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to spill {} data points of {} devices: {}", dataPoints.size(), byDevice.size(),
+                    e.getMessage());
+        }
+        lock.lock();
+        try {
+            for (DataPoint dataPoint : dataPoints) {
+                laneFor(dataPoint).rejected++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean offer(DataPoint dataPoint, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!tryEnqueue(dataPoint)) {
+                if (nanos <= 0) {
+                    laneFor(dataPoint).rejected++;
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(DataPoint dataPoint) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!tryEnqueue(dataPoint)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the point if there is room, shedding a lower lane if needed. Must be called with the lock held.
+     */
+    private boolean tryEnqueue(DataPoint dataPoint) {
+        if (dataPoint.isPoisonPill()) {
+            poisonPills++;
+            notEmpty.signal();
+            return true;
+        }
+        Lane lane = laneFor(dataPoint);
+        if (count >= capacity && !shedBelow(lane)) {
+            return false;
+        }
+        if (memoryBudget != null) {
+            while (!memoryBudget.tryReserve(MemoryBudget.Stage.QUEUE, dataPoint.getEstimatedBytes())) {
+                if (!shedBelow(lane)) {
+                    return false;
+                }
+            }
+        }
+        enqueue(lane, dataPoint);
+        return true;
+    }
+
+    /**
+     * Adds the point to its lane; any budget must already be reserved.
+     */
+    private void enqueue(Lane lane, DataPoint dataPoint) {
+        Entry entry = new Entry(dataPoint);
+        lane.entries.addLast(entry);
+        lane.enqueued++;
+        count++;
+        if (pendingByDevice != null) {
+            if (hasTagSlot(dataPoint) && (pendingByTagId[dataPoint.getTagId()] == null
+                    || samePlant(pendingByTagId[dataPoint.getTagId()], dataPoint))) {
+                pendingByTagId[dataPoint.getTagId()] = entry;
+                entry.inTagSlot = true;
+            } else {
+                pendingByDevice.put(deviceKey(dataPoint), entry);
+            }
+        }
+        notEmpty.signal();
+    }
+
+    private Entry removeFirst(Lane lane) {
+        Entry entry = lane.entries.pollFirst();
+        unindex(entry);
+        return entry;
+    }
+
+    /**
+     * Removes the oldest point of the lane that may be dropped, skipping points that await delivery.
+     *
+     * @return the removed entry, or null if every point of the lane awaits delivery.
+     */
+    private Entry removeEvictable(Lane lane) {
+        Iterator<Entry> it = lane.entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.dataPoint.awaitsDelivery()) {
+                it.remove();
+                unindex(entry);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void unindex(Entry entry) {
+        count--;
+        if (pendingByDevice != null) {
+            // Only the device's newest pending point is indexed
+            if (entry.inTagSlot) {
+                if (pendingByTagId[entry.dataPoint.getTagId()] == entry) {
+                    pendingByTagId[entry.dataPoint.getTagId()] = null;
+                }
+            } else {
+                pendingByDevice.remove(deviceKey(entry.dataPoint), entry);
+            }
+        }
+    }
+
+    private void releaseBytes(Entry entry) {
+        if (memoryBudget != null) {
+            memoryBudget.release(MemoryBudget.Stage.QUEUE, entry.bytes);
+        }
+    }
+
+    private Entry pendingEntry(DataPoint dataPoint) {
+        if (hasTagSlot(dataPoint)) {
+            Entry entry = pendingByTagId[dataPoint.getTagId()];
+            if (entry != null && samePlant(entry, dataPoint)) {
+                return entry;
+            }
+        }
+        return pendingByDevice.get(deviceKey(dataPoint));
+    }
+
+    private static boolean samePlant(Entry entry, DataPoint dataPoint) {
+        return Objects.equals(entry.dataPoint.getPlantCode(), dataPoint.getPlantCode());
+    }
+
+    private boolean hasTagSlot(DataPoint dataPoint) {
+        return dataPoint.getTagId() >= 0 && dataPoint.getTagId() < pendingByTagId.length;
+    }
+
+    private static String deviceKey(DataPoint dataPoint) {
+        return dataPoint.getPlantCode() + '/' + dataPoint.getOrgTag();
+    }
+
+    private boolean shedBelow(Lane incoming) {
+        if (!shedLowestFirst) {
+            return false;
+        }
+        for (int i = lanes.size() - 1; i > lanes.indexOf(incoming); i--) {
+            Lane lane = lanes.get(i);
+            Entry shed = lane.config.isSheddable() ? removeEvictable(lane) : null;
+            if (shed != null) {
+                releaseBytes(shed);
+                lane.shed++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public DataPoint poll() {
+        DataPoint dataPoint;
+        lock.lock();
+        try {
+            dataPoint = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        logStatsIfDue();
+        return dataPoint;
+    }
+
+    @Override
+    public DataPoint poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        DataPoint dataPoint;
+        lock.lockInterruptibly();
+        try {
+            while ((dataPoint = dequeue()) == null) {
+                if (nanos <= 0) {
+                    break;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        logStatsIfDue();
+        return dataPoint;
+    }
+
+    @Override
+    public DataPoint take() throws InterruptedException {
+        DataPoint dataPoint;
+        lock.lockInterruptibly();
+        try {
+            while ((dataPoint = dequeue()) == null) {
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        logStatsIfDue();
+        return dataPoint;
+    }
+
+    /**
+     * Picks the lane by smooth weighted round robin over the non-empty lanes. Must be called with the lock held.
+     */
+    private DataPoint dequeue() {
+        if (count == 0) {
+            if (poisonPills > 0) {
+                poisonPills--;
+                return DataPoint.POISON_PILL;
+            }
+            return null;
+        }
+        Lane selected = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes) {
+            if (lane.entries.isEmpty()) {
+                continue;
+            }
+            lane.currentWeight += lane.config.getWeight();
+            totalWeight += lane.config.getWeight();
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        selected.currentWeight -= totalWeight;
+
+        Entry entry = removeFirst(selected);
+        if (memoryBudget != null) {
+            // The writer releases the bytes once it is done with the batch
+            memoryBudget.transfer(MemoryBudget.Stage.QUEUE, MemoryBudget.Stage.BATCH, entry.bytes);
+        }
+        selected.dequeued++;
+        long lagMs = (System.nanoTime() - entry.enqueuedNanos) / 1000000;
+        selected.lagSumMs += lagMs;
+        selected.maxLagMs = Math.max(selected.maxLagMs, lagMs);
+        selected.intervalDequeued++;
+        notFull.signal();
+        return entry.dataPoint;
+    }
+
+    @Override
+    public DataPoint peek() {
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                if (!lane.entries.isEmpty()) {
+                    return lane.entries.peekFirst().dataPoint;
+                }
+            }
+            return poisonPills > 0 ? DataPoint.POISON_PILL : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count + poisonPills;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super DataPoint> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super DataPoint> c, int maxElements) {
+        int drained = 0;
+        lock.lock();
+        try {
+            DataPoint dataPoint;
+            while (drained < maxElements && (dataPoint = dequeue()) != null) {
+                c.add(dataPoint);
+                drained++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return drained;
+    }
+
+    /**
+     * @return a snapshot of the queued data points, highest lane first.
+     */
+    @Override
+    public Iterator<DataPoint> iterator() {
+        List<DataPoint> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                for (Entry entry : lane.entries) {
+                    snapshot.add(entry.dataPoint);
+                }
+            }
+            for (int i = 0; i < poisonPills; i++) {
+                snapshot.add(DataPoint.POISON_PILL);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    private void logStatsIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastStatsTime.get();
+        if (now - last < STATS_INTERVAL_MS || !lastStatsTime.compareAndSet(last, now)) {
+            return;
+        }
+        for (String line : laneStats(true)) {
+            logger.info("Queue lane {}", line);
+        }
+        logger.info("Queue overflow: {}", getOverflowStats());
+        if (memoryBudget != null) {
+            logger.info("Memory budget: {}", memoryBudget);
+        }
+    }
+
+    public String getOverflowPolicy() {
+        lock.lock();
+        try {
+            return overflowPolicy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Switches the overflow policy for points offered from now on. {@code conflate} and
+     * {@code spill} need state set up when the queue is created, so the queue can only
+     * switch to them if it was created with them.
+     *
+     * @throws IllegalArgumentException if the queue cannot switch to the policy
+     */
+    public void setOverflowPolicy(String policy) {
+        boolean available = QueueConfig.OVERFLOW_CONFLATE.equals(policy) ? pendingByDevice != null
+                : QueueConfig.OVERFLOW_SPILL.equals(policy) ? spillAppender != null
+                : QueueConfig.OVERFLOW_BLOCK_TIMEOUT.equals(policy) || QueueConfig.OVERFLOW_DROP_OLDEST.equals(policy)
+                        || QueueConfig.OVERFLOW_DROP_NEWEST.equals(policy);
+        if (!available) {
+            throw new IllegalArgumentException("The queue cannot switch to overflow policy '" + policy + "'");
+        }
+        lock.lock();
+        try {
+            logger.info("Queue overflow policy changed from {} to {}", overflowPolicy, policy);
+            overflowPolicy = policy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the overflow policy and how often it blocked, timed out, evicted, conflated or spilled.
+     */
+    public String getOverflowStats() {
+        lock.lock();
+        try {
+            return String.format("policy %s, %d blocked, %d timed out, %d dropped oldest, %d conflated, "
+                    + "%d spilled%s", overflowPolicy, blocked, timedOut, droppedOldest, conflated, spilled.get(),
+                    spillAppender != null ? " (" + spillAppender.getDroppedRecords() + " lost by the spill file)"
+                            : "");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the spill file, if any.
+     */
+    @Override
+    public void close() {
+        if (spillAppender != null) {
+            spillAppender.close();
+        }
+    }
+
+    /**
+     * @return one line per lane with its size, counters and lag; the lag of dequeued
+     *         points covers the period since the previous stats log.
+     */
+    public List<String> getLaneStats() {
+        return laneStats(false);
+    }
+
+    private List<String> laneStats(boolean resetInterval) {
+        List<String> lines = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (Lane lane : lanes) {
+                Entry head = lane.entries.peekFirst();
+                lines.add(String.format("%s: %d queued, %d enqueued, %d dequeued, %d shed, %d rejected, "
+                        + "lag avg %d ms max %d ms, oldest %d ms",
+                        lane.config.getName(), lane.entries.size(), lane.enqueued, lane.dequeued, lane.shed,
+                        lane.rejected, lane.intervalDequeued > 0 ? lane.lagSumMs / lane.intervalDequeued : 0,
+                        lane.maxLagMs, head != null ? (now - head.enqueuedNanos) / 1000000 : 0));
+                if (resetInterval) {
+                    lane.intervalDequeued = 0;
+                    lane.lagSumMs = 0;
+                    lane.maxLagMs = 0;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return lines;
+    }
+
+    private static final class Lane {
+        private final LaneConfig config;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private int currentWeight;
+        private long enqueued;
+        private long dequeued;
+        private long shed;
+        private long rejected;
+        private long intervalDequeued;
+        private long lagSumMs;
+        private long maxLagMs;
+
+        private Lane(LaneConfig config) {
+            this.config = config;
+        }
+    }
+
+    private static final class Entry {
+        private DataPoint dataPoint;
+        private long bytes;
+        private final long enqueuedNanos = System.nanoTime();
+        // Indexed in pendingByTagId rather than pendingByDevice
+        private boolean inTagSlot;
+
+        private Entry(DataPoint dataPoint) {
+            this.dataPoint = dataPoint;
+            this.bytes = dataPoint.getEstimatedBytes();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.kreps.redistoiotdb.replay;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.ReplayConfig;
+import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.model.FailedPayload;
+import org.kreps.redistoiotdb.utils.AsyncFileAppender;
+import org.kreps.redistoiotdb.utils.FailedPayloadCodec;
+import org.kreps.redistoiotdb.utils.FailedPayloadLogger;
+import org.kreps.redistoiotdb.utils.RateLimiter;
+import org.kreps.redistoiotdb.utils.RetryUtils;
+import org.kreps.redistoiotdb.validator.SchemaValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-inserts payloads captured by {@link FailedPayloadLogger}.
+ * <p>
+ * Files are replayed one after another. Within a file, records are read
+ * sequentially and inserted in parallel on a bounded pool, while the progress
+ * offset only advances over records whose inserts have completed, in file
+ * order. Records that still fail are written to a separate file so they can be
+ * replayed again later. A corrupt record is skipped by scanning forward to the
+ * next record magic, so it does not cost the rest of the file.
+ */
+public class FailedPayloadReplayer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(FailedPayloadReplayer.class);
+    private static final String FAILED_REPLAYS_DIR = "failed_replays";
+    private static final String SUMMARY_FILE = "replay_summary.txt";
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    private static final int PROGRESS_SAVE_INTERVAL = 100;
+
+    private final AppConfig config;
+    private final ReplayConfig replayConfig;
+    private final IoTDBSessionPool iotdbSessionPool;
+    private final SchemaValidator schemaValidator;
+    private final ExecutorService insertPool;
+    private final RateLimiter rateLimiter;
+    private final AsyncFileAppender failedReplays;
+
+    public FailedPayloadReplayer(AppConfig config, IoTDBSessionPool iotdbSessionPool) {
+        this.config = config;
+        this.replayConfig = config.getReplayConfig();
+        this.iotdbSessionPool = iotdbSessionPool;
+        this.schemaValidator = new SchemaValidator(iotdbSessionPool, config.getRetryConfig());
+        this.insertPool = Executors.newFixedThreadPool(replayConfig.getThreads());
+        this.rateLimiter = new RateLimiter(replayConfig.getMaxPointsPerSecond());
+        this.failedReplays = new AsyncFileAppender(
+                FAILED_REPLAYS_DIR, "failed_replays", FailedPayloadLogger.FILE_EXTENSION);
+    }
+
+    public void replayAll(String directory) throws IOException, InterruptedException {
+        Path dirPath = Paths.get(directory);
+        if (!Files.isDirectory(dirPath)) {
+            throw new IOException("Replay directory not found: " + directory);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath,
+                "*." + FailedPayloadLogger.FILE_EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+
+        logger.info("Replaying {} payload files from {} with {} threads, rate limit {} points/s",
+                files.size(), dirPath, replayConfig.getThreads(),
+                rateLimiter.isUnlimited() ? "none" : replayConfig.getMaxPointsPerSecond());
+
+        FileSummary total = new FileSummary("total", 0);
+        for (Path file : files) {
+            try {
+                FileSummary summary = replayFile(file);
+                total.add(summary);
+                writeSummary(dirPath, summary);
+            } catch (IOException e) {
+                logger.error("Stopped replaying {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+        logger.info("Replay finished: {}", total);
+    }
+
+    private FileSummary replayFile(Path file) throws IOException, InterruptedException {
+        ReplayProgress progress = ReplayProgress.load(file);
+        long size = Files.size(file);
+        FileSummary summary = new FileSummary(file.getFileName().toString(), progress.getCommittedOffset());
+
+        if (progress.getCommittedOffset() >= size) {
+            logger.info("Skipping {}, already replayed", file.getFileName());
+            return summary.finish();
+        }
+        if (progress.getCommittedOffset() > 0) {
+            logger.info("Resuming {} from offset {} of {}", file.getFileName(), progress.getCommittedOffset(), size);
+        }
+
+        Deque<PendingRecord> inFlight = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(progress.getCommittedOffset());
+            DataInputStream in = openAt(channel);
+            long readOffset = progress.getCommittedOffset();
+
+            while (true) {
+                byte[] body = null;
+                FailedPayload payload = null;
+                String corruption = null;
+                try {
+                    body = FailedPayloadCodec.readRecord(in, size - readOffset);
+                } catch (EOFException e) {
+                    logger.warn("{} ends with an incomplete record at offset {}, stopping there",
+                            file.getFileName(), readOffset);
+                    break;
+                } catch (IOException e) {
+                    corruption = e.getMessage();
+                }
+                if (corruption == null) {
+                    if (body == null) {
+                        break;
+                    }
+                    try {
+                        payload = FailedPayloadCodec.decodeBody(body);
+                    } catch (IOException | RuntimeException e) {
+                        corruption = "undecodable record body: " + e.getMessage();
+                    }
+                }
+                if (corruption != null) {
+                    // A torn or damaged record, resume at the next record magic after it
+                    long next = FailedPayloadCodec.findNextRecord(channel, readOffset + 1);
+                    if (next < 0) {
+                        logger.warn("{} has a corrupt record at offset {} and none after it, stopping there: {}",
+                                file.getFileName(), readOffset, corruption);
+                        break;
+                    }
+                    logger.warn("Skipping {} corrupt bytes of {} at offset {}: {}",
+                            next - readOffset, file.getFileName(), readOffset, corruption);
+                    summary.skippedBytes += next - readOffset;
+                    readOffset = next;
+                    channel.position(next);
+                    in = openAt(channel);
+                    continue;
+                }
+                readOffset += FailedPayloadCodec.HEADER_SIZE + body.length;
+
+                FailedPayload record = payload;
+                summary.throttledNanos += rateLimiter.acquire(record.getRowCount());
+                Future<Boolean> result = insertPool.submit(() -> insert(record));
+                inFlight.addLast(new PendingRecord(result, readOffset, record.getRowCount()));
+
+                while (inFlight.size() >= replayConfig.getMaxInFlight()) {
+                    commitHead(inFlight, progress, summary);
+                }
+            }
+        } finally {
+            while (!inFlight.isEmpty()) {
+                commitHead(inFlight, progress, summary);
+            }
+            progress.save();
+        }
+
+        return summary.finish();
+    }
+
+    private static DataInputStream openAt(FileChannel channel) {
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE));
+    }
+
+    private void commitHead(Deque<PendingRecord> inFlight, ReplayProgress progress, FileSummary summary)
+            throws IOException, InterruptedException {
+        PendingRecord head = inFlight.removeFirst();
+        boolean inserted;
+        try {
+            inserted = head.result.get();
+        } catch (ExecutionException e) {
+            inserted = false;
+        }
+
+        summary.records++;
+        if (inserted) {
+            summary.points += head.rowCount;
+        } else {
+            summary.failed++;
+        }
+
+        progress.setCommittedOffset(head.endOffset);
+        if (summary.records % PROGRESS_SAVE_INTERVAL == 0) {
+            progress.save();
+        }
+    }
+
+    private boolean insert(FailedPayload payload) {
+        try {
+            schemaValidator.validateDevicePaths(Collections.singleton(payload.getDevicePath()));
+            RetryUtils.executeWithRetry(() -> {
+                iotdbSessionPool.insertTablet(payload.toTablet(), true);
+                return null;
+            }, config.getRetryConfig(), "Replay tablet for " + payload.getDevicePath());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Replay failed for {} ({} rows): {}",
+                    payload.getDevicePath(), payload.getRowCount(), e.getMessage());
+        }
+
+        try {
+            failedReplays.append(FailedPayloadCodec.encode(payload));
+        } catch (IOException e) {
+            logger.error("Failed to keep unreplayed payload for {}: {}", payload.getDevicePath(), e.getMessage());
+        }
+        return false;
+    }
+
+    private void writeSummary(Path dirPath, FileSummary summary) {
+        logger.info("Replayed {}", summary);
+        try {
+            Files.write(dirPath.resolve(SUMMARY_FILE),
+                    (summary + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Failed to write replay summary: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        insertPool.shutdown();
+        try {
+            if (!insertPool.awaitTermination(30, TimeUnit.SECONDS)) {
+                insertPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            insertPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        failedReplays.close();
+    }
+
+    private static class PendingRecord {
+        private final Future<Boolean> result;
+        private final long endOffset;
+        private final int rowCount;
+
+        private PendingRecord(Future<Boolean> result, long endOffset, int rowCount) {
+            this.result = result;
+            this.endOffset = endOffset;
+            this.rowCount = rowCount;
+        }
+    }
+
+    private static class FileSummary {
+        private final String name;
+        private final long startOffset;
+        private final long startNanos = System.nanoTime();
+        private long records;
+        private long points;
+        private long failed;
+        private long skippedBytes;
+        private long throttledNanos;
+        private long elapsedMs;
+
+        private FileSummary(String name, long startOffset) {
+            this.name = name;
+            this.startOffset = startOffset;
+        }
+
+        private FileSummary finish() {
+            elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            return this;
+        }
+
+        private void add(FileSummary other) {
+            records += other.records;
+            points += other.points;
+            failed += other.failed;
+            skippedBytes += other.skippedBytes;
+            throttledNanos += other.throttledNanos;
+            elapsedMs += other.elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            long pointsPerSecond = elapsedMs > 0 ? points * 1000 / elapsedMs : points;
+            return String.format("%s|resumed_at=%d|records=%d|points=%d|failed=%d|skipped_bytes=%d|elapsed_ms=%d|throttled_ms=%d|points_per_s=%d",
+                    name, startOffset, records, points, failed, skippedBytes, elapsedMs,
+                    TimeUnit.NANOSECONDS.toMillis(throttledNanos), pointsPerSecond);
+        }
+    }
+}
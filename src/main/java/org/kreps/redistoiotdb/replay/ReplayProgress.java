@@ -0,0 +1,52 @@
+package org.kreps.redistoiotdb.replay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Byte offset up to which a payload file has been replayed, persisted next to
+ * the file as {@code <file>.progress} so that an interrupted replay resumes
+ * where it stopped.
+ */
+public class ReplayProgress {
+    private static final String SUFFIX = ".progress";
+
+    private final Path progressFile;
+    private long committedOffset;
+
+    private ReplayProgress(Path progressFile, long committedOffset) {
+        this.progressFile = progressFile;
+        this.committedOffset = committedOffset;
+    }
+
+    public static ReplayProgress load(Path payloadFile) throws IOException {
+        Path progressFile = payloadFile.resolveSibling(payloadFile.getFileName() + SUFFIX);
+        long offset = 0;
+        if (Files.exists(progressFile)) {
+            String content = new String(Files.readAllBytes(progressFile), StandardCharsets.UTF_8).trim();
+            try {
+                offset = Long.parseLong(content);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt progress file " + progressFile + ": " + content);
+            }
+        }
+        return new ReplayProgress(progressFile, offset);
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public void setCommittedOffset(long committedOffset) {
+        this.committedOffset = committedOffset;
+    }
+
+    public void save() throws IOException {
+        Path tempFile = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+        Files.write(tempFile, Long.toString(committedOffset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -4,42 +4,77 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs the writers, one thread each. Writers can be added while running, so
+ * rather than a latch sized up front the running writers are counted as they
+ * start and finish, and {@link #waitForWriters()} waits for the count to reach zero.
+ */
 public class ThreadPoolManager implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(ThreadPoolManager.class);
     private static final int SHUTDOWN_TIMEOUT_SECONDS = 30;
 
     private final ExecutorService writerPool;
-    private final CountDownLatch writerCompletionLatch;
+    private final AtomicInteger runningWriters = new AtomicInteger();
+    private final AtomicInteger nextThreadId = new AtomicInteger(1);
     private volatile boolean isShutdown = false;
 
-    public ThreadPoolManager(int writerPoolSize) {
-        if (writerPoolSize <= 0) {
-            throw new IllegalArgumentException("Writer pool size must be positive");
-        }
-        this.writerPool = Executors.newFixedThreadPool(writerPoolSize);
-        this.writerCompletionLatch = new CountDownLatch(writerPoolSize);
-        logger.info("ThreadPoolManager initialized with {} writers", writerPoolSize);
+    /**
+     * The pool itself is unbounded; {@code WorkerManager} keeps the writer count within {@code max_writers}.
+     */
+    public ThreadPoolManager() {
+        this.writerPool = Executors.newCachedThreadPool(
+                r -> new Thread(r, "IoTDB-Writer-" + nextThreadId.getAndIncrement()));
+        logger.info("ThreadPoolManager initialized");
     }
 
-    public ExecutorService getWriterPool() {
+    /**
+     * Starts a writer. It counts as running from now until its {@code run} returns.
+     */
+    public void submitWriter(Runnable writer) {
         if (isShutdown) {
             throw new IllegalStateException("ThreadPoolManager is shut down");
         }
-        return writerPool;
+        runningWriters.incrementAndGet();
+        try {
+            writerPool.execute(() -> {
+                try {
+                    writer.run();
+                } finally {
+                    writerFinished();
+                }
+            });
+        } catch (RuntimeException e) {
+            writerFinished();
+            throw e;
+        }
+    }
+
+    private void writerFinished() {
+        if (runningWriters.decrementAndGet() == 0) {
+            synchronized (runningWriters) {
+                runningWriters.notifyAll();
+            }
+        }
     }
 
-    public CountDownLatch getWriterLatch() {
-        return writerCompletionLatch;
+    public int getRunningWriters() {
+        return runningWriters.get();
     }
 
     public void waitForWriters() throws InterruptedException {
         logger.info("Waiting for writers to complete...");
-        boolean completed = writerCompletionLatch.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-        if (!completed) {
-            logger.warn("Timeout waiting for writers to complete");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        synchronized (runningWriters) {
+            long remaining;
+            while (runningWriters.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(runningWriters, remaining);
+            }
+        }
+        if (runningWriters.get() > 0) {
+            logger.warn("Timeout waiting for writers to complete, {} still running", runningWriters.get());
         } else {
             logger.info("All writers completed");
         }
@@ -0,0 +1,232 @@
+package org.kreps.redistoiotdb.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends records to a daily rolled file from a single background I/O thread.
+ * <p>
+ * Callers hand records over through a bounded queue and return immediately. The
+ * I/O thread drains the queue in batches and writes them through one long-lived
+ * {@link FileChannel}, which is reopened when the date changes. Records that do
+ * not fit into the queue are dropped and counted instead of blocking the caller.
+ */
+public class AsyncFileAppender implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncFileAppender.class);
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int DEFAULT_CAPACITY = 65536;
+    private static final int MAX_DRAIN_BATCH = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long POLL_TIMEOUT_MS = 500;
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+
+    private final Path directory;
+    private final String filePrefix;
+    private final String fileExtension;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread ioThread;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    // Only touched by the I/O thread
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private LocalDate channelDate;
+
+    public AsyncFileAppender(String directory, String filePrefix, String fileExtension) {
+        this(directory, filePrefix, fileExtension, DEFAULT_CAPACITY);
+    }
+
+    public AsyncFileAppender(String directory, String filePrefix, String fileExtension, int capacity) {
+        this.directory = Paths.get(directory);
+        this.filePrefix = filePrefix;
+        this.fileExtension = fileExtension;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.ioThread = new Thread(this::runLoop, "Appender-" + filePrefix);
+        // Never keeps the JVM alive by itself; close() waits a bounded time for it to write what is queued
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Queues a text line for writing. Never blocks.
+     *
+     * @return false if the record was dropped because the queue is full or the appender is closed.
+     */
+    public boolean appendLine(String line) {
+        return append((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queues a raw record for writing. Never blocks.
+     *
+     * @return false if the record was dropped because the queue is full or the appender is closed.
+     */
+    public boolean append(byte[] record) {
+        if (!running.get() || !queue.offer(record)) {
+            long dropped = droppedRecords.incrementAndGet();
+            if (dropped == 1 || dropped % 10000 == 0) {
+                logger.warn("{} appender queue is full or closed, dropped {} records so far", filePrefix, dropped);
+            }
+            return false;
+        }
+        appendedRecords.incrementAndGet();
+        return true;
+    }
+
+    public long getAppendedRecords() {
+        return appendedRecords.get();
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public int getPendingRecords() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_DRAIN_BATCH);
+        while (running.get() || !queue.isEmpty()) {
+            try {
+                byte[] first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_DRAIN_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // close() never interrupts, so treat it as a request to stop
+                running.set(false);
+            } catch (IOException e) {
+                logger.error("Failed to write {} {} records: {}", batch.size(), filePrefix, e.getMessage());
+                closeChannel();
+            } finally {
+                batch.clear();
+            }
+        }
+        closeChannel();
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException {
+        FileChannel target = currentChannel();
+        long start = target.size();
+        try {
+            for (byte[] record : batch) {
+                if (record.length > buffer.remaining()) {
+                    flushBuffer(target);
+                }
+                if (record.length > buffer.capacity()) {
+                    writeFully(target, ByteBuffer.wrap(record));
+                } else {
+                    buffer.put(record);
+                }
+            }
+            flushBuffer(target);
+        } catch (IOException e) {
+            // Cut off whatever part of the batch did reach the file, so it never ends in a torn record
+            try {
+                long torn = target.size() - start;
+                target.truncate(start);
+                writtenBytes.addAndGet(-torn);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    private void flushBuffer(FileChannel target) throws IOException {
+        buffer.flip();
+        try {
+            writeFully(target, buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(FileChannel target, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            writtenBytes.addAndGet(target.write(source));
+        }
+    }
+
+    private FileChannel currentChannel() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (channel != null && today.equals(channelDate)) {
+            return channel;
+        }
+        closeChannel();
+
+        Files.createDirectories(directory);
+        Path filePath = directory.resolve(String.format("%s_%s.%s",
+                filePrefix, today.format(FILE_DATE_FORMAT), fileExtension));
+        channel = FileChannel.open(filePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channelDate = today;
+        logger.debug("Opened {} for appending", filePath);
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Error while closing {} file: {}", filePrefix, e.getMessage());
+        } finally {
+            channel = null;
+            channelDate = null;
+        }
+    }
+
+    /**
+     * Stops accepting records, writes everything still queued and closes the file.
+     */
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            try {
+                ioThread.join(CLOSE_TIMEOUT_MS);
+                if (ioThread.isAlive()) {
+                    logger.warn("{} appender did not flush within {} ms, {} records pending",
+                            filePrefix, CLOSE_TIMEOUT_MS, queue.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while flushing {} appender", filePrefix);
+            }
+            logger.info("{} appender closed: {} records appended, {} dropped",
+                    filePrefix, appendedRecords.get(), droppedRecords.get());
+        }
+    }
+}
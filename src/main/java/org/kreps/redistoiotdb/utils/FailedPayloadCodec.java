@@ -0,0 +1,191 @@
+package org.kreps.redistoiotdb.utils;
+
+import org.kreps.redistoiotdb.model.FailedPayload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of {@link FailedPayload} records.
+ * <p>
+ * Each record is self-delimiting so that records can be appended to one file
+ * and skipped without decoding:
+ *
+ * <pre>
+ * int    magic ("FWP1")
+ * int    body length in bytes
+ * long   failed-at epoch millis
+ * string device path
+ * string reason
+ * int    row count
+ * long[] timestamps
+ * short  column count
+ * per column:
+ *   string measurement name
+ *   int    column length in bytes
+ *   per row: int value length (-1 for null) followed by UTF-8 bytes
+ * </pre>
+ *
+ * Strings are written as an int length followed by UTF-8 bytes.
+ */
+public class FailedPayloadCodec {
+    public static final int MAGIC = 0x46575031;
+    public static final int HEADER_SIZE = 8;
+    private static final int NULL_LENGTH = -1;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    public static byte[] encode(FailedPayload payload) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(256 + payload.getRowCount() * 64);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeLong(payload.getFailedAt());
+        writeString(body, payload.getDevicePath());
+        writeString(body, payload.getReason());
+        body.writeInt(payload.getRowCount());
+        for (long timestamp : payload.getTimestamps()) {
+            body.writeLong(timestamp);
+        }
+
+        List<String> measurements = payload.getMeasurements();
+        String[][] columns = payload.getColumns();
+        body.writeShort(measurements.size());
+        ByteArrayOutputStream columnBytes = new ByteArrayOutputStream();
+        DataOutputStream column = new DataOutputStream(columnBytes);
+        for (int col = 0; col < measurements.size(); col++) {
+            columnBytes.reset();
+            for (String value : columns[col]) {
+                writeString(column, value);
+            }
+            column.flush();
+            writeString(body, measurements.get(col));
+            body.writeInt(columnBytes.size());
+            columnBytes.writeTo(body);
+        }
+        body.flush();
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(HEADER_SIZE + bodyBytes.size());
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(MAGIC);
+        out.writeInt(bodyBytes.size());
+        bodyBytes.writeTo(out);
+        out.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * Reads the body of the next record without decoding it. The encoded size of
+     * the record is {@link #HEADER_SIZE} plus the length of the returned array.
+     *
+     * @param available bytes left in the stream, so a corrupt length is rejected
+     *                  instead of allocated.
+     * @return the record body, or null on a clean end of stream.
+     * @throws EOFException if the stream ends inside a record (e.g. a torn write).
+     * @throws IOException  if the record header is corrupt.
+     */
+    public static byte[] readRecord(DataInputStream in, long available) throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (magic != MAGIC) {
+            throw new IOException(String.format("Invalid record magic 0x%08x", magic));
+        }
+        int bodyLength = in.readInt();
+        if (bodyLength < 0 || bodyLength > available - HEADER_SIZE) {
+            throw new IOException("Invalid record length " + bodyLength);
+        }
+        byte[] body = new byte[bodyLength];
+        in.readFully(body);
+        return body;
+    }
+
+    /**
+     * Scans the file forward from {@code position} for the next record magic, so
+     * reading can resume after a corrupt record.
+     *
+     * @return the offset of the next magic, or -1 if there is none.
+     */
+    public static long findNextRecord(FileChannel channel, long position) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position;
+        int last = 0;
+        long seen = 0;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, offset);
+            if (read <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < read; i++) {
+                last = (last << 8) | (window.get(i) & 0xff);
+                if (++seen >= 4 && last == MAGIC) {
+                    return offset + i - 3;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    public static FailedPayload decodeBody(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+
+        long failedAt = in.readLong();
+        String devicePath = readString(in);
+        String reason = readString(in);
+        int rowCount = in.readInt();
+        long[] timestamps = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            timestamps[row] = in.readLong();
+        }
+
+        int columnCount = in.readShort();
+        List<String> measurements = new ArrayList<>(columnCount);
+        String[][] columns = new String[columnCount][rowCount];
+        for (int col = 0; col < columnCount; col++) {
+            measurements.add(readString(in));
+            in.readInt(); // column length, only needed to skip columns
+            for (int row = 0; row < rowCount; row++) {
+                columns[col][row] = readString(in);
+            }
+        }
+
+        if (in.available() > 0) {
+            throw new IOException(in.available() + " trailing bytes after the last column");
+        }
+        return new FailedPayload(devicePath, failedAt, reason, timestamps, measurements, columns);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
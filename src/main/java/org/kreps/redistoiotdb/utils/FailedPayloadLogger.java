@@ -0,0 +1,34 @@
+package org.kreps.redistoiotdb.utils;
+
+import org.kreps.redistoiotdb.model.FailedPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+public class FailedPayloadLogger {
+    private static final Logger logger = LoggerFactory.getLogger(FailedPayloadLogger.class);
+    public static final String FAILED_PAYLOADS_DIR = "failed_payloads";
+    public static final String FILE_EXTENSION = "bin";
+    private static final AsyncFileAppender appender = new AsyncFileAppender(
+            FAILED_PAYLOADS_DIR, "failed_payloads", FILE_EXTENSION);
+
+    public static void logFailedPayload(FailedPayload payload) {
+        try {
+            appender.append(FailedPayloadCodec.encode(payload));
+        } catch (IOException e) {
+            logger.error("Failed to encode payload for {}: {}", payload.getDevicePath(), e.getMessage());
+        }
+    }
+
+    public static long getDroppedCount() {
+        return appender.getDroppedRecords();
+    }
+
+    /**
+     * Flushes pending records and closes the current file. Called once on shutdown.
+     */
+    public static void close() {
+        appender.close();
+    }
+}
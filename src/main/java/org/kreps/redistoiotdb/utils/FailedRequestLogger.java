@@ -1,42 +1,24 @@
 package org.kreps.redistoiotdb.utils;
 
 import org.kreps.redistoiotdb.model.FailedRequest;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class FailedRequestLogger {
-    private static final Logger logger = LoggerFactory.getLogger(FailedRequestLogger.class);
     private static final String FAILED_REQUESTS_DIR = "failed_requests";
-    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final AsyncFileAppender appender = new AsyncFileAppender(
+            FAILED_REQUESTS_DIR, "failed_requests", "txt");
 
     public static void logFailedRequest(FailedRequest failedRequest) {
-        try {
-            // Create directory if it doesn't exist
-            Path dirPath = Paths.get(FAILED_REQUESTS_DIR);
-            if (!Files.exists(dirPath)) {
-                Files.createDirectories(dirPath);
-            }
+        appender.appendLine(failedRequest.toString());
+    }
 
-            // Create file name with current date
-            String fileName = String.format("failed_requests_%s.txt",
-                    LocalDateTime.now().format(FILE_DATE_FORMAT));
-            Path filePath = dirPath.resolve(fileName);
+    public static long getDroppedCount() {
+        return appender.getDroppedRecords();
+    }
 
-            // Append failed request to file
-            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath.toString(), true))) {
-                writer.println(failedRequest.toString());
-            }
-        } catch (IOException e) {
-            logger.error("Failed to log failed request: {}", e.getMessage());
-        }
+    /**
+     * Flushes pending records and closes the current file. Called once on shutdown.
+     */
+    public static void close() {
+        appender.close();
     }
 }
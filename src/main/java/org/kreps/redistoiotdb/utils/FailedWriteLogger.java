@@ -1,39 +1,24 @@
 package org.kreps.redistoiotdb.utils;
 
 import org.kreps.redistoiotdb.model.FailedWrite;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class FailedWriteLogger {
-    private static final Logger logger = LoggerFactory.getLogger(FailedWriteLogger.class);
     private static final String FAILED_WRITES_DIR = "failed_writes";
-    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final AsyncFileAppender appender = new AsyncFileAppender(
+            FAILED_WRITES_DIR, "failed_writes", "txt");
 
     public static void logFailedWrite(FailedWrite failedWrite) {
-        try {
-            Path dirPath = Paths.get(FAILED_WRITES_DIR);
-            if (!Files.exists(dirPath)) {
-                Files.createDirectories(dirPath);
-            }
+        appender.appendLine(failedWrite.toString());
+    }
 
-            String fileName = String.format("failed_writes_%s.txt",
-                    LocalDateTime.now().format(FILE_DATE_FORMAT));
-            Path filePath = dirPath.resolve(fileName);
+    public static long getDroppedCount() {
+        return appender.getDroppedRecords();
+    }
 
-            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath.toString(), true))) {
-                writer.println(failedWrite.toString());
-            }
-        } catch (IOException e) {
-            logger.error("Failed to log failed write: {}", e.getMessage());
-        }
+    /**
+     * Flushes pending records and closes the current file. Called once on shutdown.
+     */
+    public static void close() {
+        appender.close();
     }
 }
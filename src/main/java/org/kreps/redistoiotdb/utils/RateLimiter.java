@@ -0,0 +1,77 @@
+package org.kreps.redistoiotdb.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe rate limiter that spaces out permits evenly and allows at most one
+ * second worth of unused permits to accumulate as a burst. A rate of zero or less
+ * disables limiting.
+ */
+public class RateLimiter {
+    private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile double permitsPerSecond;
+    private long nextFreeNanos;
+
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return permitsPerSecond <= 0;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Changes the rate for permits requested from now on; zero or less disables limiting.
+     */
+    public synchronized void setPermitsPerSecond(double permitsPerSecond) {
+        if (this.permitsPerSecond <= 0) {
+            // Limiting starts now rather than with the reservations of the unlimited period
+            nextFreeNanos = System.nanoTime();
+        }
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /**
+     * Blocks until the given number of permits is available.
+     *
+     * @return the time spent waiting, in nanoseconds.
+     */
+    public long acquire(int permits) throws InterruptedException {
+        if (isUnlimited() || permits <= 0) {
+            return 0;
+        }
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * @return true if permits could be taken right now without waiting.
+     */
+    public synchronized boolean isFree() {
+        return isUnlimited() || nextFreeNanos - System.nanoTime() <= 0;
+    }
+
+    private synchronized long reserve(int permits) {
+        if (isUnlimited()) {
+            // The rate was just switched off
+            return 0;
+        }
+        long now = System.nanoTime();
+        long burstFloor = now - MAX_BURST_NANOS;
+        if (nextFreeNanos - burstFloor < 0) {
+            nextFreeNanos = burstFloor;
+        }
+        long waitNanos = Math.max(0, nextFreeNanos - now);
+        nextFreeNanos += (long) (permits * 1_000_000_000d / permitsPerSecond);
+        return waitNanos;
+    }
+}
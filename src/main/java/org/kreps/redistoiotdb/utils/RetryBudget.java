@@ -0,0 +1,51 @@
+package org.kreps.redistoiotdb.utils;
+
+import org.kreps.redistoiotdb.config.RetryBudgetConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that every retry has to take a token from, shared by all threads
+ * retrying under the same configuration. A full bucket allows a burst of
+ * {@code max_tokens} retries; after that retries are earned back at
+ * {@code tokens_per_second}, so a long outage costs a bounded number of retries
+ * instead of every caller retrying at full strength.
+ */
+public class RetryBudget {
+    private final double maxTokens;
+    private final double tokensPerNano;
+
+    // Guarded by this
+    private double tokens;
+    private long refilledAt;
+
+    public RetryBudget(RetryBudgetConfig config) {
+        this.maxTokens = config.getMaxTokens();
+        this.tokensPerNano = config.getTokensPerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = maxTokens;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * @return true if a token was taken and the retry may go ahead.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxTokens, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -6,8 +6,27 @@ import org.kreps.redistoiotdb.exceptions.ServerErrorException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries failed operations with decorrelated jitter: each delay is drawn at
+ * random between {@code initial_delay_ms} and {@code backoff_multiplier} times the
+ * previous delay, capped at {@code max_delay_ms}, so callers that failed together
+ * do not retry together. Every retry also needs a token from the
+ * {@link RetryBudget} shared by all callers of the same {@link RetryConfig}; once
+ * it is empty operations fail after their first attempt until tokens are earned back.
+ */
 public class RetryUtils {
     private static final Logger logger = LoggerFactory.getLogger(RetryUtils.class);
+    private static final long STATS_INTERVAL_MS = 60000;
+
+    private static final Map<RetryConfig, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private static final AtomicLong retriesAttempted = new AtomicLong();
+    private static final AtomicLong retriesDenied = new AtomicLong();
+    private static final AtomicLong nextStatsAt = new AtomicLong(System.currentTimeMillis() + STATS_INTERVAL_MS);
 
     @FunctionalInterface
     public interface ThrowingSupplier<T> {
@@ -16,6 +35,7 @@ public class RetryUtils {
 
     public static <T> T executeWithRetry(ThrowingSupplier<T> operation, RetryConfig config, String operationName)
             throws Exception {
+        RetryBudget budget = budgets.computeIfAbsent(config, c -> new RetryBudget(c.getBudget()));
         long delay = config.getInitialDelayMs();
         int attempts = 0;
 
@@ -37,6 +57,14 @@ public class RetryUtils {
                     throw new InterruptedException("Operation interrupted between retries");
                 }
 
+                if (!isLastAttempt && !budget.tryAcquire()) {
+                    retriesDenied.incrementAndGet();
+                    logStatsIfDue(budget);
+                    logger.warn("{} failed (attempt {}/{}), not retrying as the retry budget is exhausted",
+                            operationName, attempts, config.getMaxAttempts());
+                    isLastAttempt = true;
+                }
+
                 if (isLastAttempt && isCriticalError(e)) {
                     logger.error(
                             "Critical error during {}: {}. Maximum retry attempts reached, treating as server error.",
@@ -50,8 +78,11 @@ public class RetryUtils {
                     throw e;
                 }
 
-                logger.warn("{} failed (attempt {}/{}). Error: {}",
-                        operationName, attempts, config.getMaxAttempts(), e.getMessage());
+                delay = nextDelay(delay, config);
+                retriesAttempted.incrementAndGet();
+                logStatsIfDue(budget);
+                logger.warn("{} failed (attempt {}/{}), retrying in {} ms. Error: {}",
+                        operationName, attempts, config.getMaxAttempts(), delay, e.getMessage());
 
                 try {
                     Thread.sleep(delay);
@@ -59,14 +90,42 @@ public class RetryUtils {
                     Thread.currentThread().interrupt();
                     throw ie;
                 }
-
-                delay *= 2; // Exponential backoff
             }
         }
 
         throw new Exception("Retry operation failed: max attempts reached");
     }
 
+    /**
+     * Decorrelated jitter: a random delay between the initial delay and
+     * {@code backoff_multiplier} times the previous one, capped at {@code max_delay_ms}.
+     */
+    private static long nextDelay(long previous, RetryConfig config) {
+        long base = config.getInitialDelayMs();
+        long upper = Math.min(config.getMaxDelayMs(), (long) (previous * config.getBackoffMultiplier()));
+        if (upper <= base) {
+            return base;
+        }
+        return ThreadLocalRandom.current().nextLong(base, upper + 1);
+    }
+
+    private static void logStatsIfDue(RetryBudget budget) {
+        long now = System.currentTimeMillis();
+        long due = nextStatsAt.get();
+        if (now >= due && nextStatsAt.compareAndSet(due, now + STATS_INTERVAL_MS)) {
+            logger.info("Retries: {} attempted, {} denied by the retry budget, {} tokens left",
+                    retriesAttempted.get(), retriesDenied.get(), String.format("%.1f", budget.getAvailableTokens()));
+        }
+    }
+
+    public static long getRetriesAttempted() {
+        return retriesAttempted.get();
+    }
+
+    public static long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+
     private static boolean isCriticalError(Exception e) {
         return e.getMessage().contains("Connection refused")
                 || e instanceof ServerErrorException
@@ -0,0 +1,80 @@
+package org.kreps.redistoiotdb.utils;
+
+/**
+ * Row order for tablets whose timestamps must be strictly ascending, so that
+ * they can be inserted with the sorted flag and IoTDB skips its own check and sort.
+ * <p>
+ * Rows that already arrive in order, the usual case, cost a single pass. Other
+ * rows are ordered by a stable merge sort of their indices, without boxing. Of
+ * several rows with the same timestamp the one that arrived last is kept, which
+ * matches what IoTDB itself keeps when the same point is written twice.
+ */
+public final class TimestampOrder {
+
+    private TimestampOrder() {
+    }
+
+    /**
+     * @return the indices of the rows to keep in ascending timestamp order, or null if the
+     *         rows are already strictly ascending and can be used as they are.
+     */
+    public static int[] of(long[] timestamps, int rows) {
+        int first = 1;
+        while (first < rows && timestamps[first - 1] < timestamps[first]) {
+            first++;
+        }
+        if (first >= rows) {
+            return null;
+        }
+
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+        // The first rows are already in order; only the rest has to be sorted and merged in
+        int[] buffer = new int[rows];
+        sort(timestamps, order, buffer, first, rows);
+        merge(timestamps, order, buffer, 0, first, rows);
+
+        // Stable, so the last of each run of equal timestamps is the row that arrived last
+        int kept = 0;
+        for (int i = 0; i < rows; i++) {
+            if (i + 1 < rows && timestamps[order[i]] == timestamps[order[i + 1]]) {
+                continue;
+            }
+            order[kept++] = order[i];
+        }
+        if (kept == rows) {
+            return order;
+        }
+        int[] unique = new int[kept];
+        System.arraycopy(order, 0, unique, 0, kept);
+        return unique;
+    }
+
+    private static void sort(long[] timestamps, int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(timestamps, order, buffer, from, middle);
+        sort(timestamps, order, buffer, middle, to);
+        merge(timestamps, order, buffer, from, middle, to);
+    }
+
+    private static void merge(long[] timestamps, int[] order, int[] buffer, int from, int middle, int to) {
+        if (from == middle || timestamps[order[middle - 1]] <= timestamps[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && timestamps[buffer[left]] <= timestamps[buffer[right]])) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+}
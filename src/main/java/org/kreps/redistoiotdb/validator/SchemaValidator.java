@@ -3,17 +3,18 @@ package org.kreps.redistoiotdb.validator;
 import org.apache.iotdb.isession.template.Template;
 import org.apache.iotdb.rpc.IoTDBConnectionException;
 import org.apache.iotdb.rpc.StatementExecutionException;
-import org.apache.iotdb.session.pool.SessionPool;
 import org.apache.iotdb.session.template.MeasurementNode;
 import org.apache.iotdb.tsfile.file.metadata.enums.CompressionType;
 import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
 import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
 import org.kreps.redistoiotdb.config.RetryConfig;
 import org.kreps.redistoiotdb.exceptions.IoTDBInitializationException;
+import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
 import org.kreps.redistoiotdb.model.DataPoint;
 import org.kreps.redistoiotdb.utils.RetryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.Collection;
 import java.util.List;
 import java.io.IOException;
 import java.util.Set;
@@ -21,17 +22,27 @@ import java.util.stream.Collectors;
 import java.util.HashSet;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class SchemaValidator {
     private static final Logger logger = LoggerFactory.getLogger(SchemaValidator.class);
-    private final SessionPool sessionPool;
+    private final IoTDBSessionPool sessionPool;
     private static final String TEMPLATE_NAME = "druid_t";
     private static final String ROOT_DATABASE = "root.cepco";
     private final RetryConfig retryConfig;
-    // Cache of validated device paths
-    private final Set<String> validatedDevices = Collections.synchronizedSet(new HashSet<>());
+    // Cache of validated device paths, shared by all validators since they set up the same IoTDB
+    private static final Set<String> validatedDevices = Collections.synchronizedSet(new HashSet<>());
+    // Plant codes of the validated devices, for activating newly added tags
+    private static final Set<String> plantCodes = Collections.synchronizedSet(new HashSet<>());
+    // Validated canonical device paths per tag ID, one per plant code, compared by reference
+    // before the path cache is consulted
+    private String[][] validatedPathsByTagId = new String[0][];
 
-    public SchemaValidator(SessionPool sessionPool, RetryConfig retryConfig) {
+    /**
+     * @param sessionPool leased from on every call, so that a replaced or failed-over pool is picked up
+     *                    and is not closed while a call is using it
+     */
+    public SchemaValidator(IoTDBSessionPool sessionPool, RetryConfig retryConfig) {
         this.sessionPool = sessionPool;
         this.retryConfig = retryConfig;
     }
@@ -43,8 +54,8 @@ public class SchemaValidator {
 
     private void createTemplateIfNotExists() throws IoTDBInitializationException {
         logger.info("Checking if template exists: {}", TEMPLATE_NAME);
-        try {
-            List<String> templates = sessionPool.showAllTemplates();
+        try (IoTDBSessionPool.Lease lease = sessionPool.acquireSessionPool()) {
+            List<String> templates = lease.getSessionPool().showAllTemplates();
             if (!templates.contains(TEMPLATE_NAME)) {
                 createTemplate();
                 logger.info("Created template: {}", TEMPLATE_NAME);
@@ -99,14 +110,14 @@ public class SchemaValidator {
                 TSEncoding.PLAIN,
                 CompressionType.SNAPPY);
 
-        try {
+        try (IoTDBSessionPool.Lease lease = sessionPool.acquireSessionPool()) {
             template.addToTemplate(qualNode);
             template.addToTemplate(colTimeNode);
             template.addToTemplate(stdTagNode);
             template.addToTemplate(sensorTypeNode);
             template.addToTemplate(valNode);
 
-            sessionPool.createSchemaTemplate(template);
+            lease.getSessionPool().createSchemaTemplate(template);
             logger.info("Successfully created template: {}", TEMPLATE_NAME);
         } catch (StatementExecutionException e) {
             throw new IoTDBInitializationException(
@@ -125,8 +136,8 @@ public class SchemaValidator {
 
     private void createRootDatabaseIfNotExists() throws IoTDBInitializationException {
         logger.info("Ensuring root database exists: {}", ROOT_DATABASE);
-        try {
-            sessionPool.createDatabase(ROOT_DATABASE);
+        try (IoTDBSessionPool.Lease lease = sessionPool.acquireSessionPool()) {
+            lease.getSessionPool().createDatabase(ROOT_DATABASE);
             logger.info("Successfully created database: {}", ROOT_DATABASE);
         } catch (StatementExecutionException e) {
             if (e.getMessage().contains(ROOT_DATABASE)) {
@@ -141,19 +152,61 @@ public class SchemaValidator {
         }
     }
 
-    private SessionPool getValidSessionPool() throws Exception {
-        if (sessionPool == null) {
-            throw new IoTDBConnectionException("Session pool is null");
+    public void validateDataPoints(List<DataPoint> dataPoints) throws Exception {
+        Set<String> paths = new HashSet<>();
+        List<DataPoint> newTagPoints = new ArrayList<>();
+        synchronized (this) {
+            for (DataPoint point : dataPoints) {
+                int tagId = point.getTagId();
+                if (tagId < 0) {
+                    paths.add(point.getTimeseriesPath());
+                } else if (!isValidated(tagId, point.getTimeseriesPath())) {
+                    paths.add(point.getTimeseriesPath());
+                    newTagPoints.add(point);
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            return;
+        }
+        validateDevicePaths(paths);
+        // Only reached once every path has been validated
+        synchronized (this) {
+            for (DataPoint point : newTagPoints) {
+                int tagId = point.getTagId();
+                if (isValidated(tagId, point.getTimeseriesPath())) {
+                    continue;
+                }
+                if (tagId >= validatedPathsByTagId.length) {
+                    validatedPathsByTagId = Arrays.copyOf(validatedPathsByTagId,
+                            Math.max(tagId + 1, validatedPathsByTagId.length * 2));
+                }
+                String[] known = validatedPathsByTagId[tagId];
+                String[] grown = known != null ? Arrays.copyOf(known, known.length + 1) : new String[1];
+                grown[grown.length - 1] = point.getTimeseriesPath();
+                validatedPathsByTagId[tagId] = grown;
+            }
         }
-        return sessionPool;
     }
 
-    public void validateDataPoints(List<DataPoint> dataPoints) throws Exception {
+    // Guarded by this
+    private boolean isValidated(int tagId, String path) {
+        if (tagId >= validatedPathsByTagId.length || validatedPathsByTagId[tagId] == null) {
+            return false;
+        }
+        for (String validated : validatedPathsByTagId[tagId]) {
+            if (validated == path) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void validateDevicePaths(Collection<String> paths) throws Exception {
         long startTime = System.currentTimeMillis();
 
         try {
-            Set<String> devicePaths = dataPoints.stream()
-                    .map(DataPoint::getTimeseriesPath)
+            Set<String> devicePaths = paths.stream()
                     .filter(path -> !validatedDevices.contains(path))
                     .collect(Collectors.toSet());
 
@@ -166,16 +219,17 @@ public class SchemaValidator {
             for (List<String> batch : createBatches(devicePaths, 100)) {
                 try {
                     RetryUtils.executeWithRetry(() -> {
-                        SessionPool pool = getValidSessionPool();
-                        for (String path : batch) {
-                            try {
-                                pool.setSchemaTemplate(TEMPLATE_NAME, path);
-                                validatedDevices.add(path);
-                            } catch (StatementExecutionException e) {
-                                if (e.getMessage().contains("already exists")) {
-                                    validatedDevices.add(path);
-                                } else {
-                                    throw e;
+                        try (IoTDBSessionPool.Lease lease = sessionPool.acquireSessionPool()) {
+                            for (String path : batch) {
+                                try {
+                                    lease.getSessionPool().setSchemaTemplate(TEMPLATE_NAME, path);
+                                    markValidated(path);
+                                } catch (StatementExecutionException e) {
+                                    if (e.getMessage().contains("already exists")) {
+                                        markValidated(path);
+                                    } else {
+                                        throw e;
+                                    }
                                 }
                             }
                         }
@@ -208,6 +262,38 @@ public class SchemaValidator {
         }
     }
 
+    /**
+     * Sets up the devices of newly added tags for every plant code seen so far, so that
+     * their first points find the schema in place. Tags of a plant that has not been
+     * written yet are set up on their first write as usual.
+     *
+     * @return the number of devices set up.
+     */
+    public int activateTags(Collection<String> tags) throws Exception {
+        List<String> plants;
+        synchronized (plantCodes) {
+            plants = new ArrayList<>(plantCodes);
+        }
+        List<String> paths = new ArrayList<>(tags.size() * plants.size());
+        for (String tag : tags) {
+            for (String plantCode : plants) {
+                paths.add(DataPoint.formatTimeseriesPath(plantCode, tag));
+            }
+        }
+        validateDevicePaths(paths);
+        return paths.size();
+    }
+
+    private static void markValidated(String path) {
+        validatedDevices.add(path);
+        // Device paths are root.cepco.`plant`.`tag`
+        String prefix = ROOT_DATABASE + ".`";
+        int end = path.indexOf('`', prefix.length());
+        if (path.startsWith(prefix) && end > 0) {
+            plantCodes.add(path.substring(prefix.length(), end));
+        }
+    }
+
     private List<List<String>> createBatches(Set<String> items, int batchSize) {
         List<List<String>> batches = new ArrayList<>();
         List<String> currentBatch = new ArrayList<>();
@@ -0,0 +1,139 @@
+package org.kreps.redistoiotdb.worker;
+
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.ConfigValidationException;
+import org.kreps.redistoiotdb.config.TagCsvParser;
+import org.kreps.redistoiotdb.config.TagDefinition;
+import org.kreps.redistoiotdb.fetcher.DataSource;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.queue.PriorityLaneQueue;
+import org.kreps.redistoiotdb.validator.SchemaValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the tags file every {@code tags_reload_ms} and applies a changed file
+ * without a restart. A change is only read once the file has stayed the same
+ * for one check, so a file that is still being written is not picked up half
+ * way.
+ * <p>
+ * The devices of added tags are set up in IoTDB first, for every plant code
+ * written so far, and only then is the new tag set swapped into the config and
+ * handed to the source and the queue, so the added tags are first polled with
+ * their schema in place. A file that cannot be parsed, or that names a tier
+ * that is not configured, is logged and ignored; the previous tags stay in use.
+ * <p>
+ * Tags added at runtime are not in the {@link org.kreps.redistoiotdb.model.TagDictionary}
+ * built at startup, and are handled by their path like any other unknown tag.
+ */
+public class TagReloader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TagReloader.class);
+
+    private final AppConfig config;
+    private final File tagsFile;
+    private final long intervalMs;
+    private final DataSource source;
+    private final BlockingQueue<DataPoint> dataQueue;
+    private final SchemaValidator schemaValidator;
+    private final ScheduledExecutorService scheduler;
+    // Only used on the scheduler thread
+    private String appliedVersion;
+    private String seenVersion;
+
+    public TagReloader(AppConfig config, DataSource source, BlockingQueue<DataPoint> dataQueue,
+            SchemaValidator schemaValidator) {
+        this.config = config;
+        this.tagsFile = new File(config.getSourceConfig().getTagsFile());
+        this.intervalMs = config.getSourceConfig().getTagsReloadMs();
+        this.source = source;
+        this.dataQueue = dataQueue;
+        this.schemaValidator = schemaValidator;
+        this.appliedVersion = version();
+        this.seenVersion = appliedVersion;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Tag-Reloader"));
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::check, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Checking {} for changes every {} ms", tagsFile, intervalMs);
+    }
+
+    private String version() {
+        return tagsFile.lastModified() + ":" + tagsFile.length();
+    }
+
+    private void check() {
+        try {
+            String version = version();
+            boolean settled = version.equals(seenVersion);
+            seenVersion = version;
+            if (settled && !version.equals(appliedVersion)) {
+                appliedVersion = version;
+                reload();
+            }
+        } catch (Exception e) {
+            logger.error("Reloading the tags file failed: {}", e.getMessage());
+        }
+    }
+
+    private void reload() {
+        List<TagDefinition> definitions;
+        List<String> tags;
+        try {
+            TagCsvParser parser = new TagCsvParser(tagsFile.getPath());
+            definitions = parser.getTagDefinitions();
+            tags = parser.getTags();
+            config.validateTagTiers(definitions);
+        } catch (IOException | ConfigValidationException e) {
+            logger.error("Ignoring the changed tags file, keeping the {} current tags: {}", config.getTags().size(),
+                    e.getMessage());
+            return;
+        }
+
+        Set<String> current = new HashSet<>(config.getTags());
+        List<String> added = new ArrayList<>();
+        for (String tag : tags) {
+            if (!current.contains(tag)) {
+                added.add(tag);
+            }
+        }
+        if (!added.isEmpty()) {
+            long startTime = System.currentTimeMillis();
+            try {
+                int devices = schemaValidator.activateTags(added);
+                logger.info("Set up {} devices for {} added tags in {} ms", devices, added.size(),
+                        System.currentTimeMillis() - startTime);
+            } catch (Exception e) {
+                logger.warn("Could not set up the devices of {} added tags, they are set up on their first write: {}",
+                        added.size(), e.getMessage());
+            }
+        }
+
+        config.replaceTags(tags, definitions);
+        if (dataQueue instanceof PriorityLaneQueue) {
+            ((PriorityLaneQueue) dataQueue).updateTags(definitions);
+        }
+        source.onTagsReloaded(definitions);
+        logger.info("Reloaded {} tags from {}, {} of them added", tags.size(), tagsFile, added.size());
+    }
+
+    /**
+     * Stops checking the file. A reload in progress is interrupted; the tags stay as they
+     * were if it had not swapped them yet.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,11 +1,20 @@
 package org.kreps.redistoiotdb.worker;
 
+import org.kreps.redistoiotdb.columnar.ColumnarStore;
 import org.kreps.redistoiotdb.config.AppConfig;
 import org.kreps.redistoiotdb.model.DataPoint;
-import org.kreps.redistoiotdb.fetcher.DataFetcher;
+import org.kreps.redistoiotdb.fetcher.BackfillWorker;
+import org.kreps.redistoiotdb.fetcher.DataSource;
+import org.kreps.redistoiotdb.fetcher.DataSourceFactory;
+import org.kreps.redistoiotdb.fetcher.GapIndex;
+import org.kreps.redistoiotdb.fetcher.ParserPool;
 import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.queue.MemoryBudget;
 import org.kreps.redistoiotdb.writer.IoTDBWriter;
+import org.kreps.redistoiotdb.writer.TabletAccumulator;
+import org.kreps.redistoiotdb.writer.WriteLimiter;
 import org.kreps.redistoiotdb.threading.ThreadPoolManager;
+import org.kreps.redistoiotdb.validator.SchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
@@ -19,16 +28,42 @@ public class WorkerManager {
     private final BlockingQueue<DataPoint> dataQueue;
     private final ThreadPoolManager threadPoolManager;
     private final IoTDBSessionPool iotdbSessionPool;
+    private final MemoryBudget memoryBudget;
     private final List<IoTDBWriter> writers = new ArrayList<>();
-    private DataFetcher fetcher;
+    private final GapIndex gapIndex = new GapIndex();
+    private final ColumnarStore columnarStore;
+    private final WriteLimiter writeLimiter;
+    private final TabletAccumulator accumulator;
+    private final int maxWriters;
+    private ParserPool parserPool;
+    private DataSource fetcher;
+    private BackfillWorker backfillWorker;
+    private WriterAutoscaler autoscaler;
+    private TagReloader tagReloader;
+    // Guarded by this
+    private int nextWriterId = 1;
     private volatile boolean shutdownInProgress = false;
 
     public WorkerManager(AppConfig config, BlockingQueue<DataPoint> dataQueue,
-            ThreadPoolManager threadPoolManager, IoTDBSessionPool iotdbSessionPool) {
+            ThreadPoolManager threadPoolManager, IoTDBSessionPool iotdbSessionPool, MemoryBudget memoryBudget) {
         this.config = config;
         this.dataQueue = dataQueue;
         this.threadPoolManager = threadPoolManager;
         this.iotdbSessionPool = iotdbSessionPool;
+        this.memoryBudget = memoryBudget;
+        this.columnarStore = config.getProcessingConfig().getColumnar().isEnabled()
+                ? new ColumnarStore(config.getProcessingConfig().getColumnar(), config.getTagDictionary(),
+                        IoTDBWriter.MEASUREMENT_NAMES)
+                : null;
+        this.writeLimiter = new WriteLimiter(config.getProcessingConfig().getWriter().getRateLimit());
+        this.accumulator = config.getProcessingConfig().getWriter().getAccumulation().isEnabled()
+                ? new TabletAccumulator(config.getProcessingConfig().getWriter().getAccumulation())
+                : null;
+        this.maxWriters = config.getProcessingConfig().getWriter().getMaxWriters();
+    }
+
+    public WriteLimiter getWriteLimiter() {
+        return writeLimiter;
     }
 
     public void startWorkers() {
@@ -45,24 +80,115 @@ public class WorkerManager {
         logger.info("Starting {} writer threads...", writerPoolSize);
 
         for (int i = 0; i < writerPoolSize; i++) {
-            IoTDBWriter writer = new IoTDBWriter(
-                    config,
-                    dataQueue,
-                    iotdbSessionPool,
-                    threadPoolManager.getWriterLatch(),
-                    this,
-                    i + 1);
-            writers.add(writer);
-            threadPoolManager.getWriterPool().submit(writer);
+            addWriter();
         }
         logger.info("All writer threads started");
+
+        if (config.getProcessingConfig().getWriter().getAutoscale().isEnabled()) {
+            autoscaler = new WriterAutoscaler(config.getProcessingConfig().getWriter(), this, iotdbSessionPool);
+            autoscaler.start();
+        }
+    }
+
+    /**
+     * Starts one more writer, unless shutdown has begun or {@link #getMaxWriters()} already run.
+     *
+     * @return the number of writers now.
+     */
+    public synchronized int addWriter() {
+        if (shutdownInProgress || writers.size() >= maxWriters) {
+            return writers.size();
+        }
+        IoTDBWriter writer = new IoTDBWriter(
+                config,
+                dataQueue,
+                iotdbSessionPool,
+                this,
+                nextWriterId++,
+                memoryBudget,
+                columnarStore,
+                writeLimiter,
+                accumulator);
+        writers.add(writer);
+        threadPoolManager.submitWriter(writer);
+        return writers.size();
+    }
+
+    /**
+     * Retires the most recently started writer, which stops once it has written what it
+     * holds. The last writer is never retired, nor are writers retired during shutdown,
+     * when they stop on the poison pills or the drained columnar store instead.
+     *
+     * @return the number of writers now.
+     */
+    public synchronized int removeWriter() {
+        if (shutdownInProgress || writers.size() <= 1) {
+            return writers.size();
+        }
+        writers.remove(writers.size() - 1).retire();
+        return writers.size();
+    }
+
+    /**
+     * Starts or retires writers until {@code count} are running, unless shutdown has begun.
+     * A count above {@link #getMaxWriters()} is capped at it. With autoscaling the autoscaler
+     * goes on adjusting from the new count.
+     *
+     * @return the number of writers now.
+     */
+    public synchronized int setWriterCount(int count) {
+        count = Math.min(count, maxWriters);
+        while (!shutdownInProgress && writers.size() < count) {
+            addWriter();
+        }
+        while (!shutdownInProgress && writers.size() > Math.max(1, count)) {
+            removeWriter();
+        }
+        return writers.size();
+    }
+
+    public synchronized int getWriterCount() {
+        return writers.size();
+    }
+
+    /**
+     * @return the most writers that may run at once: {@code pool_size}, or the autoscaling maximum.
+     */
+    public int getMaxWriters() {
+        return maxWriters;
+    }
+
+    /**
+     * @return how full the queue the writers take from is, between 0 and 1.
+     */
+    public double getQueueFillRatio() {
+        if (columnarStore != null) {
+            return columnarStore.getReadyRatio();
+        }
+        int size = dataQueue.size();
+        int capacity = size + dataQueue.remainingCapacity();
+        return capacity == 0 ? 0 : (double) size / capacity;
     }
 
     private void startFetcher() {
         logger.info("Starting data fetcher...");
-        fetcher = new DataFetcher(config, dataQueue);
+        parserPool = new ParserPool(config.getProcessingConfig().getParser(), config.getTagDictionary(),
+                columnarStore);
+        fetcher = DataSourceFactory.create(config, dataQueue, gapIndex, parserPool);
         fetcher.start();
         logger.info("Data fetcher started");
+
+        if (config.getSourceConfig().getTagsReloadMs() > 0) {
+            tagReloader = new TagReloader(config, fetcher, dataQueue,
+                    new SchemaValidator(iotdbSessionPool, config.getRetryConfig()));
+            tagReloader.start();
+        }
+
+        if (config.getProcessingConfig().getBackfill().isEnabled()) {
+            backfillWorker = new BackfillWorker(config, dataQueue, gapIndex, fetcher::isPollInFlight, parserPool);
+            backfillWorker.start();
+            logger.info("Backfill worker started");
+        }
     }
 
     public synchronized void initiateShutdown() {
@@ -74,12 +200,33 @@ public class WorkerManager {
         shutdownInProgress = true;
         logger.info("Initiating graceful shutdown...");
 
-        // First stop the fetcher to prevent new data from being added
+        if (autoscaler != null) {
+            autoscaler.close();
+        }
+        if (tagReloader != null) {
+            tagReloader.close();
+        }
+
+        // First stop the fetcher and backfill to prevent new data from being added
+        if (backfillWorker != null) {
+            logger.info("Stopping backfill worker...");
+            backfillWorker.close();
+        }
         if (fetcher != null) {
             logger.info("Stopping data fetcher...");
             fetcher.close();
             logger.info("Data fetcher stopped");
         }
+        if (parserPool != null) {
+            // Lets responses that are still being parsed reach the queue before the poison pills
+            parserPool.close();
+        }
+
+        if (columnarStore != null) {
+            // Hands the partly filled buffers to the writers, which stop once all are written
+            columnarStore.close();
+            return;
+        }
 
         // Then send poison pills to writers
         sendPoisonPills();
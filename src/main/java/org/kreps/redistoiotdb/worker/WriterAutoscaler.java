@@ -0,0 +1,81 @@
+package org.kreps.redistoiotdb.worker;
+
+import org.kreps.redistoiotdb.config.AutoscaleConfig;
+import org.kreps.redistoiotdb.config.WriterConfig;
+import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the number of writers between {@code min_writers} and
+ * {@code max_writers}, by at most one every {@code interval_ms}.
+ * <p>
+ * A writer is added while the queue is at least {@code scale_up_queue_ratio}
+ * full, and removed while it is at most {@code scale_down_queue_ratio} full.
+ * More writers only help while IoTDB keeps up: none are added while IoTDB is
+ * unavailable, and one is removed whenever the average insert latency is above
+ * {@code max_insert_latency_ms}.
+ */
+public class WriterAutoscaler implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriterAutoscaler.class);
+
+    private final AutoscaleConfig config;
+    private final int minWriters;
+    private final int maxWriters;
+    private final WorkerManager workerManager;
+    private final IoTDBSessionPool iotdbSessionPool;
+    private final ScheduledExecutorService scheduler;
+
+    public WriterAutoscaler(WriterConfig writerConfig, WorkerManager workerManager,
+            IoTDBSessionPool iotdbSessionPool) {
+        this.config = writerConfig.getAutoscale();
+        this.minWriters = config.getMinWriters();
+        this.maxWriters = writerConfig.getMaxWriters();
+        this.workerManager = workerManager;
+        this.iotdbSessionPool = iotdbSessionPool;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Writer-Autoscaler"));
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::adjust, config.getIntervalMs(), config.getIntervalMs(),
+                TimeUnit.MILLISECONDS);
+        logger.info("Writer autoscaling between {} and {} writers every {} ms", minWriters, maxWriters,
+                config.getIntervalMs());
+    }
+
+    private void adjust() {
+        try {
+            int writers = workerManager.getWriterCount();
+            double fill = workerManager.getQueueFillRatio();
+            double latencyMs = iotdbSessionPool.getAverageLatencyMs();
+
+            if (writers > minWriters && latencyMs > config.getMaxInsertLatencyMs()) {
+                int now = workerManager.removeWriter();
+                logger.info("Removed a writer, {} running: insert latency {} ms is above {} ms", now,
+                        String.format("%.1f", latencyMs), config.getMaxInsertLatencyMs());
+            } else if (writers < maxWriters && fill >= config.getScaleUpQueueRatio()
+                    && latencyMs <= config.getMaxInsertLatencyMs() && iotdbSessionPool.isAvailable()) {
+                int now = workerManager.addWriter();
+                logger.info("Added a writer, {} running: queue {}% full", now, String.format("%.0f", fill * 100));
+            } else if (writers > minWriters && fill <= config.getScaleDownQueueRatio()) {
+                int now = workerManager.removeWriter();
+                logger.info("Removed a writer, {} running: queue {}% full", now, String.format("%.0f", fill * 100));
+            }
+        } catch (Exception e) {
+            logger.error("Writer autoscaling failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops further adjustments. Does not wait for one in progress, which does nothing
+     * once the shutdown has begun.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
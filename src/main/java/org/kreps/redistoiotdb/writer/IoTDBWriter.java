@@ -6,19 +6,26 @@ import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
 import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
 import org.apache.iotdb.tsfile.write.record.Tablet;
 import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.redistoiotdb.columnar.ColumnarStore;
+import org.kreps.redistoiotdb.columnar.DeviceBuffer;
 import org.kreps.redistoiotdb.config.AppConfig;
 import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.iotdb.WriterSession;
 import org.kreps.redistoiotdb.model.DataPoint;
+import org.kreps.redistoiotdb.model.FailedPayload;
 import org.kreps.redistoiotdb.model.FailedWrite;
+import org.kreps.redistoiotdb.queue.MemoryBudget;
+import org.kreps.redistoiotdb.utils.FailedPayloadLogger;
 import org.kreps.redistoiotdb.utils.FailedWriteLogger;
 import org.kreps.redistoiotdb.validator.SchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.kreps.redistoiotdb.utils.RetryUtils;
+import org.kreps.redistoiotdb.utils.TimestampOrder;
 import org.kreps.redistoiotdb.worker.WorkerManager;
 
 public class IoTDBWriter implements Runnable {
@@ -29,12 +36,24 @@ public class IoTDBWriter implements Runnable {
     private final BlockingQueue<DataPoint> dataQueue;
     private final IoTDBSessionPool iotdbSessionPool;
     private final SchemaValidator schemaValidator;
-    private final CountDownLatch writerCompletionLatch;
     private final WorkerManager workerManager;
+    private final MemoryBudget memoryBudget;
+    private final ColumnarStore columnarStore;
+    private final TabletAccumulator accumulator;
+    // Limiter shared by all writers, or null
+    private final WriteLimiter writeLimiter;
+    // Session owned by this writer, or null to borrow from the pool for every insert
+    private final WriterSession writerSession;
+    // Group index per tag ID while grouping a batch, -1 otherwise
+    private final int[] groupByTagId;
 
     private volatile boolean running = true;
+    // Set when the writer is no longer needed; it finishes its current batch and stops
+    private volatile boolean retiring;
     private volatile Thread writerThread;
 
+    private static final TabletStats TABLET_STATS = new TabletStats();
+
     // Measurement schemas for tablet creation
     private static final List<MeasurementSchema> MEASUREMENT_SCHEMAS = Arrays.asList(
             new MeasurementSchema("Qual", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
@@ -43,17 +62,51 @@ public class IoTDBWriter implements Runnable {
             new MeasurementSchema("SensorType", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
             new MeasurementSchema("Val", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY));
 
+    public static final List<String> MEASUREMENT_NAMES = MEASUREMENT_SCHEMAS.stream()
+            .map(MeasurementSchema::getMeasurementId)
+            .collect(Collectors.toList());
+
+    public IoTDBWriter(AppConfig config, BlockingQueue<DataPoint> dataQueue, IoTDBSessionPool iotdbSessionPool,
+            WorkerManager workerManager, int writerId,
+            MemoryBudget memoryBudget) {
+        this(config, dataQueue, iotdbSessionPool, workerManager, writerId, memoryBudget, null);
+    }
+
+    /**
+     * @param columnarStore store to take device buffers from instead of the data queue, or null
+     */
+    public IoTDBWriter(AppConfig config, BlockingQueue<DataPoint> dataQueue, IoTDBSessionPool iotdbSessionPool,
+            WorkerManager workerManager, int writerId,
+            MemoryBudget memoryBudget, ColumnarStore columnarStore) {
+        this(config, dataQueue, iotdbSessionPool, workerManager, writerId, memoryBudget, columnarStore, null, null);
+    }
+
+    /**
+     * @param writeLimiter limiter shared by all writers that every insert takes permits from, or null
+     * @param accumulator accumulator shared by all writers that holds rows across batches, or null
+     */
     public IoTDBWriter(AppConfig config, BlockingQueue<DataPoint> dataQueue, IoTDBSessionPool iotdbSessionPool,
-            CountDownLatch writerCompletionLatch, WorkerManager workerManager, int writerId) {
+            WorkerManager workerManager, int writerId,
+            MemoryBudget memoryBudget, ColumnarStore columnarStore, WriteLimiter writeLimiter,
+            TabletAccumulator accumulator) {
         this.config = config;
         this.dataQueue = dataQueue;
         this.iotdbSessionPool = iotdbSessionPool;
         this.schemaValidator = new SchemaValidator(
-                iotdbSessionPool.getSessionPool(),
+                iotdbSessionPool,
                 config.getRetryConfig());
-        this.writerCompletionLatch = writerCompletionLatch;
         this.workerManager = workerManager;
+        this.memoryBudget = memoryBudget;
+        this.columnarStore = columnarStore;
+        this.writeLimiter = writeLimiter;
+        this.accumulator = accumulator;
+        this.groupByTagId = new int[config.getTagDictionary() != null ? config.getTagDictionary().size() : 0];
+        Arrays.fill(groupByTagId, -1);
         this.logPrefix = String.format("Writer-%d", writerId);
+        this.writerSession = config.getDestinationConfig().getIotdbSettings().isDedicatedWriterSessions()
+                ? new WriterSession(config.getDestinationConfig().getIotdbSettings(), writerId - 1, logPrefix,
+                        iotdbSessionPool)
+                : null;
     }
 
     @Override
@@ -61,9 +114,15 @@ public class IoTDBWriter implements Runnable {
         writerThread = Thread.currentThread();
         try {
             logger.info("{} started", logPrefix);
-            processData();
+            if (columnarStore != null) {
+                processColumnar();
+            } else {
+                processData();
+            }
         } finally {
-            writerCompletionLatch.countDown();
+            if (writerSession != null) {
+                writerSession.close();
+            }
             logger.info("{} stopped", logPrefix);
         }
     }
@@ -74,23 +133,42 @@ public class IoTDBWriter implements Runnable {
         if (thread != null) {
             thread.interrupt();
         }
-        writerCompletionLatch.countDown();
-        logger.info("{} stopped", logPrefix);
+    }
+
+    /**
+     * Asks the writer to stop once it has written what it holds. Unlike a poison pill
+     * this reaches exactly this writer, whatever the others take from the queue.
+     */
+    public void retire() {
+        retiring = true;
     }
 
     private void processData() {
         while (running) {
+            long tabletBytes = 0;
+            // Filled in place so that points dequeued before an interrupt are still released
+            List<DataPoint> batch = new ArrayList<>();
             try {
-                List<DataPoint> batch = collectBatch();
-                if (batch.isEmpty()) {
-                    continue;
-                }
-
+                collectBatch(batch);
                 if (batch.stream().anyMatch(DataPoint::isPoisonPill)) {
                     logger.info("{} received poison pill, stopping", logPrefix);
+                    if (accumulator != null) {
+                        writeDue(accumulator.drain(System.nanoTime(), true));
+                    }
                     dataQueue.put(DataPoint.POISON_PILL);
                     break;
                 }
+                if (batch.isEmpty()) {
+                    if (accumulator != null) {
+                        // The accumulator is shared, the remaining writers write what is not due yet
+                        writeDue(accumulator.drain(System.nanoTime(), false));
+                    }
+                    if (retiring) {
+                        logger.info("{} retired", logPrefix);
+                        break;
+                    }
+                    continue;
+                }
 
                 // Validate schema before processing
                 try {
@@ -111,10 +189,23 @@ public class IoTDBWriter implements Runnable {
                 }
 
                 Map<String, List<DataPoint>> deviceGroups = groupByDevice(batch);
-                Map<String, Tablet> tablets = createTablets(deviceGroups);
-                writeTablets(tablets, deviceGroups);
-                logger.info("{} Successfully inserted {} tablets with {} total points",
-                        logPrefix, tablets.size(), batch.size());
+                if (accumulator != null) {
+                    long now = System.nanoTime();
+                    accumulator.add(deviceGroups, now);
+                    // The accumulator owns the points now and releases them once written
+                    batch = Collections.emptyList();
+                    writeDue(accumulator.drain(now, false));
+                } else {
+                    tabletBytes = reserveTabletBytes(batch);
+                    Map<String, Tablet> tablets = createTablets(deviceGroups);
+                    writeTablets(tablets, deviceGroups);
+                    logger.info("{} Successfully inserted {} tablets with {} total points",
+                            logPrefix, tablets.size(), batch.size());
+                }
+                if (retiring) {
+                    logger.info("{} retired", logPrefix);
+                    break;
+                }
 
             } catch (InterruptedException e) {
                 logger.info("{} interrupted, stopping gracefully", logPrefix);
@@ -125,22 +216,241 @@ public class IoTDBWriter implements Runnable {
                     handleCriticalError(e);
                     break;
                 }
+            } finally {
+                releaseBatch(batch, tabletBytes);
+            }
+        }
+    }
+
+    /**
+     * Columnar mode: every device buffer taken from the store is inserted as one tablet.
+     * Runs until the store is closed and every buffer has been written.
+     */
+    private void processColumnar() {
+        while (running && !retiring) {
+            try {
+                DeviceBuffer buffer = columnarStore.take(1, TimeUnit.SECONDS);
+                if (buffer == null) {
+                    if (columnarStore.isDrained()) {
+                        logger.info("{} columnar store drained, stopping", logPrefix);
+                        break;
+                    }
+                    continue;
+                }
+                if (!writeBuffer(buffer)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                logger.info("{} interrupted, stopping gracefully", logPrefix);
+                break;
+            } catch (Exception e) {
+                logger.error("{} Error processing device buffer: {}", logPrefix, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return false if a connection error started the shutdown.
+     */
+    private boolean writeBuffer(DeviceBuffer buffer) throws InterruptedException {
+        String devicePath = buffer.getDevicePath();
+        try {
+            schemaValidator.validateDevicePaths(Collections.singletonList(devicePath));
+        } catch (Exception e) {
+            logger.error("{} Schema validation failed: {}", logPrefix, e.getMessage());
+            logFailedBuffer(buffer, "Schema validation failed: " + e.getMessage());
+            if (e instanceof IoTDBConnectionException) {
+                handleCriticalError(e);
+                return false;
+            }
+            return true;
+        }
+
+        int[] order = buffer.rowOrder();
+        Tablet tablet = buffer.toTablet(MEASUREMENT_SCHEMAS, order);
+        TABLET_STATS.recordOrder(order != null, buffer.getRowCount() - tablet.rowSize);
+        if (writeLimiter != null) {
+            writeLimiter.acquire(tablet);
+        }
+        try {
+            RetryUtils.executeWithRetry(() -> {
+                if (!iotdbSessionPool.isAvailable()) {
+                    throw new IoTDBConnectionException("IoTDB connection is not available");
+                }
+                insertTablet(tablet);
+                return null;
+            }, config.getRetryConfig(), "Insert tablet for " + devicePath);
+        } catch (Exception e) {
+            logFailedBuffer(buffer, e.getMessage());
+            if (e instanceof IoTDBConnectionException || e.getCause() instanceof IoTDBConnectionException) {
+                handleCriticalError(e);
+                return false;
+            }
+            return true;
+        }
+        TABLET_STATS.recordTablet(tablet.rowSize);
+        logger.debug("{} Inserted {} rows for {}", logPrefix, buffer.getRowCount(), devicePath);
+        return true;
+    }
+
+    private void insertTablet(Tablet tablet) throws Exception {
+        if (writerSession != null) {
+            writerSession.insertTablet(tablet, true);
+        } else {
+            iotdbSessionPool.insertTablet(tablet, true);
+        }
+    }
+
+    private void logFailedBuffer(DeviceBuffer buffer, String errorMessage) {
+        FailedPayloadLogger.logFailedPayload(buffer.toFailedPayload(MEASUREMENT_NAMES, errorMessage));
+    }
+
+    /**
+     * Writes the devices the accumulator found due and releases their points from the memory budget.
+     */
+    private void writeDue(TabletAccumulator.Due due) throws Exception {
+        if (due.isEmpty()) {
+            return;
+        }
+        try {
+            writeDuePoints(due);
+        } finally {
+            accumulator.done(due);
+        }
+    }
+
+    private void writeDuePoints(TabletAccumulator.Due due) throws Exception {
+        List<DataPoint> points = due.allPoints();
+        long tabletBytes = 0;
+        try {
+            if (!due.tablets.isEmpty()) {
+                tabletBytes = reserveTabletBytes(points);
+                writeTablets(createTablets(due.tablets), due.tablets);
+            }
+            if (!due.records.isEmpty()) {
+                writeRecords(due.records);
+            }
+            logger.info("{} Successfully inserted {} tablets and {} devices as records with {} total points",
+                    logPrefix, due.tablets.size(), due.records.size(), points.size());
+        } finally {
+            releaseBatch(points, tabletBytes);
+        }
+    }
+
+    /**
+     * Writes the rows of several devices in one records insert, for devices with too few
+     * rows to be worth a tablet each.
+     */
+    private void writeRecords(Map<String, List<DataPoint>> deviceGroups) throws InterruptedException {
+        List<String> deviceIds = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        List<List<String>> measurementsList = new ArrayList<>();
+        List<List<TSDataType>> typesList = new ArrayList<>();
+        List<List<Object>> valuesList = new ArrayList<>();
+        int rows = 0;
+        long bytes = 0;
+        long newest = Long.MIN_VALUE;
+        for (Map.Entry<String, List<DataPoint>> entry : deviceGroups.entrySet()) {
+            for (DataPoint point : entry.getValue()) {
+                List<String> measurements = new ArrayList<>(MEASUREMENT_NAMES.size());
+                List<TSDataType> types = new ArrayList<>(MEASUREMENT_NAMES.size());
+                List<Object> values = new ArrayList<>(MEASUREMENT_NAMES.size());
+                for (String measurement : MEASUREMENT_NAMES) {
+                    Object value = point.getMeasurements().get(measurement);
+                    if (value != null) {
+                        measurements.add(measurement);
+                        types.add(TSDataType.TEXT);
+                        values.add(value.toString());
+                        bytes += value.toString().length();
+                    }
+                }
+                bytes += 8;
+                newest = Math.max(newest, point.getTimestamp());
+                deviceIds.add(entry.getKey());
+                times.add(point.getTimestamp());
+                measurementsList.add(measurements);
+                typesList.add(types);
+                valuesList.add(values);
+                rows++;
             }
         }
+
+        if (writeLimiter != null) {
+            writeLimiter.acquire(rows, bytes, writeLimiter.isBacklog(newest));
+        }
+        try {
+            RetryUtils.executeWithRetry(() -> {
+                if (!iotdbSessionPool.isAvailable()) {
+                    throw new IoTDBConnectionException("IoTDB connection is not available");
+                }
+                if (writerSession != null) {
+                    writerSession.insertRecords(deviceIds, times, measurementsList, typesList, valuesList);
+                } else {
+                    iotdbSessionPool.insertRecords(deviceIds, times, measurementsList, typesList, valuesList);
+                }
+                return null;
+            }, config.getRetryConfig(), "Insert records for " + deviceGroups.size() + " devices");
+            TABLET_STATS.recordRecords(deviceGroups.size(), rows);
+            deviceGroups.values().forEach(DataPoint::markDelivered);
+        } catch (Exception e) {
+            deviceGroups.forEach((devicePath, points) -> logFailedWrite(devicePath, points, e.getMessage()));
+            if (e instanceof IoTDBConnectionException || e.getCause() instanceof IoTDBConnectionException) {
+                handleCriticalError(e);
+            }
+        }
+    }
+
+    /**
+     * Charges the tablets about to be built to the memory budget. Writers never wait for
+     * the budget, since they are what frees it.
+     */
+    private long reserveTabletBytes(List<DataPoint> batch) {
+        if (memoryBudget == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (DataPoint point : batch) {
+            // Timestamp plus a Binary copy of every text value
+            bytes += 8;
+            for (Object value : point.getMeasurements().values()) {
+                bytes += value != null ? 24 + value.toString().length() : 0;
+            }
+        }
+        memoryBudget.forceReserve(MemoryBudget.Stage.TABLET, bytes);
+        return bytes;
+    }
+
+    private void releaseBatch(List<DataPoint> batch, long tabletBytes) {
+        if (memoryBudget == null) {
+            return;
+        }
+        long batchBytes = 0;
+        for (DataPoint point : batch) {
+            batchBytes += point.getEstimatedBytes();
+        }
+        memoryBudget.release(MemoryBudget.Stage.TABLET, tabletBytes);
+        memoryBudget.release(MemoryBudget.Stage.BATCH, batchBytes);
     }
 
-    private List<DataPoint> collectBatch() throws InterruptedException {
-        List<DataPoint> batch = new ArrayList<>();
+    /**
+     * Adds the next batch of points to {@code batch}, which is empty if none arrived in time.
+     */
+    private void collectBatch(List<DataPoint> batch) throws InterruptedException {
         int batchSize = config.getProcessingConfig().getWriter().getBatchSize();
 
-        DataPoint point = dataQueue.poll(5, TimeUnit.SECONDS);
+        long firstPollNanos = TimeUnit.SECONDS.toNanos(5);
+        if (accumulator != null) {
+            // Wake up in time to write devices whose rows reach the age limit
+            firstPollNanos = Math.min(firstPollNanos, Math.max(1000000, accumulator.nanosUntilDue(System.nanoTime())));
+        }
+        DataPoint point = dataQueue.poll(firstPollNanos, TimeUnit.NANOSECONDS);
         if (point == null) {
-            return batch;
+            return;
         }
 
         batch.add(point);
         while (batch.size() < batchSize && running) {
-            point = dataQueue.poll(100, TimeUnit.MILLISECONDS);
+            point = dataQueue.poll(config.getProcessingConfig().getWriter().getLingerMs(), TimeUnit.MILLISECONDS);
             if (point == null)
                 break;
             if (point.isPoisonPill()) {
@@ -149,24 +459,28 @@ public class IoTDBWriter implements Runnable {
             }
             batch.add(point);
         }
-
-        return batch;
     }
 
-    private void writeTablets(Map<String, Tablet> tablets, Map<String, List<DataPoint>> deviceGroups) {
+    private void writeTablets(Map<String, Tablet> tablets, Map<String, List<DataPoint>> deviceGroups)
+            throws InterruptedException {
         for (Map.Entry<String, Tablet> entry : tablets.entrySet()) {
             String devicePath = entry.getKey();
             Tablet tablet = entry.getValue();
             List<DataPoint> points = deviceGroups.get(devicePath);
 
+            if (writeLimiter != null) {
+                writeLimiter.acquire(tablet);
+            }
             try {
                 RetryUtils.executeWithRetry(() -> {
                     if (!iotdbSessionPool.isAvailable()) {
                         throw new IoTDBConnectionException("IoTDB connection is not available");
                     }
-                    iotdbSessionPool.getSessionPool().insertTablet(tablet);
+                    insertTablet(tablet);
                     return null;
                 }, config.getRetryConfig(), "Insert tablet for " + devicePath);
+                TABLET_STATS.recordTablet(tablet.rowSize);
+                DataPoint.markDelivered(points);
             } catch (Exception e) {
                 handleWriteError(devicePath, points, e);
                 if (e instanceof IoTDBConnectionException ||
@@ -196,14 +510,50 @@ public class IoTDBWriter implements Runnable {
         String tag = devicePath.substring(devicePath.lastIndexOf('.') + 1).replace("`", "");
         FailedWrite failedWrite = new FailedWrite(tag, devicePath, points, errorMessage);
         FailedWriteLogger.logFailedWrite(failedWrite);
+        FailedPayloadLogger.logFailedPayload(
+                FailedPayload.fromDataPoints(devicePath, points, MEASUREMENT_NAMES, errorMessage));
+        // Replayable from the failed payload log, so the source may let go of them
+        DataPoint.markDelivered(points);
     }
 
+    /**
+     * Groups the batch by device. Points with a tag ID are grouped through an array indexed
+     * by ID, so only the devices themselves go through a hash map. The array holds the
+     * device of the first plant code seen for the tag in the batch; points of the same tag
+     * under another plant code are grouped by their path instead.
+     */
     private Map<String, List<DataPoint>> groupByDevice(List<DataPoint> batch) {
         Map<String, List<DataPoint>> deviceGroups = new HashMap<>();
+        List<List<DataPoint>> groups = new ArrayList<>();
+        List<Integer> groupedIds = new ArrayList<>();
 
         for (DataPoint point : batch) {
-            String devicePath = point.getTimeseriesPath();
-            deviceGroups.computeIfAbsent(devicePath, k -> new ArrayList<>()).add(point);
+            int tagId = point.getTagId();
+            if (tagId < 0 || tagId >= groupByTagId.length) {
+                deviceGroups.computeIfAbsent(point.getTimeseriesPath(), k -> new ArrayList<>()).add(point);
+                continue;
+            }
+            int group = groupByTagId[tagId];
+            if (group < 0) {
+                group = groups.size();
+                groupByTagId[tagId] = group;
+                groupedIds.add(tagId);
+                groups.add(new ArrayList<>());
+            } else {
+                // Device paths are canonical per tag and plant, a different reference means another plant
+                String groupPath = groups.get(group).get(0).getTimeseriesPath();
+                if (point.getTimeseriesPath() != groupPath) {
+                    deviceGroups.computeIfAbsent(point.getTimeseriesPath(), k -> new ArrayList<>()).add(point);
+                    continue;
+                }
+            }
+            groups.get(group).add(point);
+        }
+
+        for (int i = 0; i < groups.size(); i++) {
+            List<DataPoint> points = groups.get(i);
+            deviceGroups.computeIfAbsent(points.get(0).getTimeseriesPath(), k -> new ArrayList<>()).addAll(points);
+            groupByTagId[groupedIds.get(i)] = -1;
         }
 
         return deviceGroups;
@@ -223,6 +573,7 @@ public class IoTDBWriter implements Runnable {
                     tablets.put(devicePath, tablet);
                 } else {
                     logger.warn("{} Skipping empty tablet for device {}", logPrefix, devicePath);
+                    DataPoint.markDelivered(points);
                 }
             } catch (Exception e) {
                 String error = String.format("Failed to create tablet for device %s: %s",
@@ -241,13 +592,26 @@ public class IoTDBWriter implements Runnable {
         return tablets;
     }
 
+    /**
+     * Builds the device's tablet with strictly ascending timestamps, so it can be inserted
+     * as sorted; of points with the same timestamp the last one in the batch is kept.
+     */
     private Tablet createTablet(String devicePath, List<DataPoint> points) throws Exception {
-        Tablet tablet = new Tablet(devicePath, MEASUREMENT_SCHEMAS, points.size());
+        long[] timestamps = new long[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            timestamps[i] = points.get(i).getTimestamp();
+        }
+        int[] order = TimestampOrder.of(timestamps, timestamps.length);
+        int rows = order != null ? order.length : points.size();
+        TABLET_STATS.recordOrder(order != null, points.size() - rows);
+
+        Tablet tablet = new Tablet(devicePath, MEASUREMENT_SCHEMAS, rows);
         List<Exception> errors = new ArrayList<>();
 
-        for (int i = 0; i < points.size(); i++) {
-            DataPoint point = points.get(i);
-            tablet.addTimestamp(i, point.getTimestamp());
+        for (int i = 0; i < rows; i++) {
+            int row = order != null ? order[i] : i;
+            DataPoint point = points.get(row);
+            tablet.addTimestamp(i, timestamps[row]);
 
             for (MeasurementSchema schema : MEASUREMENT_SCHEMAS) {
                 String measurementName = schema.getMeasurementId();
@@ -274,7 +638,7 @@ public class IoTDBWriter implements Runnable {
             throw new RuntimeException("Failed to create tablet values", firstError);
         }
 
-        tablet.rowSize = points.size();
+        tablet.rowSize = rows;
         return tablet;
     }
 }
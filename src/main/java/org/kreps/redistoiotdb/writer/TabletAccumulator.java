@@ -0,0 +1,157 @@
+package org.kreps.redistoiotdb.writer;
+
+import org.kreps.redistoiotdb.config.AccumulationConfig;
+import org.kreps.redistoiotdb.model.DataPoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the rows of all writers per device across batches so that tablets
+ * carry several polls' worth of rows instead of one.
+ * <p>
+ * A device is written once it holds {@code max_rows} rows, or once its oldest
+ * row has waited {@code max_age_ms}. Devices that reach the age limit with
+ * fewer than {@code min_tablet_rows} rows are not worth a tablet each and are
+ * returned for a single multi-device records insert instead.
+ * <p>
+ * Shared by all writers, so a device's rows are gathered in one place however
+ * the queue hands them out. A device drained by one writer is not drained by
+ * another until the first one calls {@link #done(Due)}, so no device is
+ * inserted by two writers at once; rows that arrive meanwhile wait for the next
+ * drain.
+ */
+public final class TabletAccumulator {
+    private final int maxRows;
+    private final long maxAgeNanos;
+    private final int minTabletRows;
+    // In order of each device's oldest pending row
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final List<String> full = new ArrayList<>();
+    // Devices drained and not yet written
+    private final Set<String> inFlight = new HashSet<>();
+    private int pendingRows;
+
+    private static final class Pending {
+        private final List<DataPoint> points = new ArrayList<>();
+        private final long firstNanos;
+
+        private Pending(long firstNanos) {
+            this.firstNanos = firstNanos;
+        }
+    }
+
+    /**
+     * Devices to write, split into those written as tablets and those written as records.
+     */
+    static final class Due {
+        final Map<String, List<DataPoint>> tablets = new LinkedHashMap<>();
+        final Map<String, List<DataPoint>> records = new LinkedHashMap<>();
+
+        boolean isEmpty() {
+            return tablets.isEmpty() && records.isEmpty();
+        }
+
+        List<DataPoint> allPoints() {
+            List<DataPoint> points = new ArrayList<>();
+            tablets.values().forEach(points::addAll);
+            records.values().forEach(points::addAll);
+            return points;
+        }
+    }
+
+    public TabletAccumulator(AccumulationConfig config) {
+        this.maxRows = config.getMaxRows();
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxAgeMs());
+        this.minTabletRows = config.getMinTabletRows();
+    }
+
+    synchronized void add(Map<String, List<DataPoint>> deviceGroups, long now) {
+        for (Map.Entry<String, List<DataPoint>> entry : deviceGroups.entrySet()) {
+            Pending device = pending.get(entry.getKey());
+            if (device == null) {
+                device = new Pending(now);
+                pending.put(entry.getKey(), device);
+            }
+            int before = device.points.size();
+            device.points.addAll(entry.getValue());
+            pendingRows += entry.getValue().size();
+            if (before < maxRows && device.points.size() >= maxRows) {
+                full.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the devices that are due: full ones, aged ones, or all of them.
+     * Devices another writer is still writing are left for a later drain. Call
+     * {@link #done(Due)} once the returned devices are written.
+     */
+    synchronized Due drain(long now, boolean all) {
+        Due due = new Due();
+        Iterator<String> fullDevices = full.iterator();
+        while (fullDevices.hasNext()) {
+            String devicePath = fullDevices.next();
+            if (inFlight.contains(devicePath)) {
+                continue;
+            }
+            fullDevices.remove();
+            Pending device = pending.remove(devicePath);
+            if (device != null) {
+                due.tablets.put(devicePath, device.points);
+                pendingRows -= device.points.size();
+            }
+        }
+
+        Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Pending> entry = iterator.next();
+            Pending device = entry.getValue();
+            if (!all && now - device.firstNanos < maxAgeNanos) {
+                break;
+            }
+            if (inFlight.contains(entry.getKey())) {
+                continue;
+            }
+            iterator.remove();
+            pendingRows -= device.points.size();
+            if (device.points.size() >= minTabletRows) {
+                due.tablets.put(entry.getKey(), device.points);
+            } else {
+                due.records.put(entry.getKey(), device.points);
+            }
+        }
+        inFlight.addAll(due.tablets.keySet());
+        inFlight.addAll(due.records.keySet());
+        return due;
+    }
+
+    /**
+     * Lets the devices of a drain be drained again, once they are written or logged as failed.
+     */
+    synchronized void done(Due due) {
+        inFlight.removeAll(due.tablets.keySet());
+        inFlight.removeAll(due.records.keySet());
+    }
+
+    /**
+     * @return nanoseconds until the oldest pending device is due, or {@link Long#MAX_VALUE} if nothing is pending.
+     */
+    synchronized long nanosUntilDue(long now) {
+        if (pending.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        Pending oldest = pending.values().iterator().next();
+        return Math.max(0, oldest.firstNanos + maxAgeNanos - now);
+    }
+
+    synchronized int getPendingRows() {
+        return pendingRows;
+    }
+}
@@ -0,0 +1,86 @@
+package org.kreps.redistoiotdb.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rows per insert across all writers: a power-of-two histogram of tablet row
+ * counts, how many tablets had to be sorted, and the number and size of
+ * records inserts, logged every minute.
+ */
+final class TabletStats {
+    private static final Logger logger = LoggerFactory.getLogger(TabletStats.class);
+    private static final long LOG_INTERVAL_MS = 60000;
+    // Bucket i counts tablets with 2^i to 2^(i+1)-1 rows; the last bucket is open-ended
+    private static final int BUCKETS = 12;
+
+    private final AtomicLongArray tabletsByRows = new AtomicLongArray(BUCKETS);
+    private final AtomicLong tabletRows = new AtomicLong();
+    private final AtomicLong reorderedTablets = new AtomicLong();
+    private final AtomicLong duplicateRows = new AtomicLong();
+    private final AtomicLong recordInserts = new AtomicLong();
+    private final AtomicLong recordRows = new AtomicLong();
+    private final AtomicLong recordDevices = new AtomicLong();
+    private final AtomicLong nextLogAt = new AtomicLong(System.currentTimeMillis() + LOG_INTERVAL_MS);
+
+    void recordTablet(int rows) {
+        if (rows <= 0) {
+            return;
+        }
+        int bucket = Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(rows));
+        tabletsByRows.incrementAndGet(bucket);
+        tabletRows.addAndGet(rows);
+        logIfDue();
+    }
+
+    /**
+     * @param reordered whether the rows had to be sorted by timestamp
+     * @param duplicates rows dropped because a later row had the same timestamp
+     */
+    void recordOrder(boolean reordered, int duplicates) {
+        if (reordered) {
+            reorderedTablets.incrementAndGet();
+        }
+        duplicateRows.addAndGet(duplicates);
+    }
+
+    void recordRecords(int devices, int rows) {
+        recordInserts.incrementAndGet();
+        recordDevices.addAndGet(devices);
+        recordRows.addAndGet(rows);
+        logIfDue();
+    }
+
+    private void logIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextLogAt.get();
+        if (now >= due && nextLogAt.compareAndSet(due, now + LOG_INTERVAL_MS)) {
+            logger.info("Tablet rows: {}", this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        long tablets = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = tabletsByRows.get(i);
+            tablets += count;
+            if (count > 0) {
+                if (histogram.length() > 0) {
+                    histogram.append(", ");
+                }
+                int from = 1 << i;
+                histogram.append(i == BUCKETS - 1 ? from + "+" : from == (2 << i) - 1 ? String.valueOf(from)
+                        : from + "-" + ((2 << i) - 1)).append(": ").append(count);
+            }
+        }
+        return String.format("%d tablets (avg %.1f rows) [%s], %d reordered, %d duplicate rows dropped, "
+                + "%d records inserts with %d rows of %d devices", tablets,
+                tablets > 0 ? (double) tabletRows.get() / tablets : 0, histogram, reorderedTablets.get(),
+                duplicateRows.get(), recordInserts.get(), recordRows.get(), recordDevices.get());
+    }
+}
@@ -0,0 +1,162 @@
+package org.kreps.redistoiotdb.writer;
+
+import org.apache.iotdb.tsfile.utils.Binary;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.kreps.redistoiotdb.config.RateLimitConfig;
+import org.kreps.redistoiotdb.utils.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the points and payload bytes all writers together insert per second,
+ * so that catching up after an outage does not push IoTDB into memory or
+ * compaction pressure.
+ * <p>
+ * Inserts whose newest point is older than {@code backlog_age_ms}, such as
+ * backfilled ranges or polls that fell behind, count as backlog. Backlog only
+ * takes permits while no live insert is waiting and permits are free right
+ * away, so it never queues ahead of live data and only uses what live data
+ * leaves over.
+ */
+public class WriteLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(WriteLimiter.class);
+    private static final long STATS_INTERVAL_MS = 60000;
+    private static final long BACKLOG_POLL_MS = 5;
+
+    private final RateLimiter pointLimiter;
+    private final RateLimiter byteLimiter;
+    private final long backlogAgeMs;
+    private final AtomicInteger liveWaiting = new AtomicInteger();
+
+    private final AtomicLong livePoints = new AtomicLong();
+    private final AtomicLong backlogPoints = new AtomicLong();
+    private final AtomicLong liveThrottledNanos = new AtomicLong();
+    private final AtomicLong backlogThrottledNanos = new AtomicLong();
+    private final AtomicLong nextStatsAt = new AtomicLong(System.currentTimeMillis() + STATS_INTERVAL_MS);
+
+    public WriteLimiter(RateLimitConfig config) {
+        this.pointLimiter = new RateLimiter(config.getMaxPointsPerSecond());
+        this.byteLimiter = new RateLimiter(config.getMaxBytesPerSecond());
+        this.backlogAgeMs = config.getBacklogAgeMs();
+    }
+
+    public boolean isUnlimited() {
+        return pointLimiter.isUnlimited() && byteLimiter.isUnlimited();
+    }
+
+    /**
+     * @param newestTimestamp the newest point of an insert, in epoch milliseconds
+     * @return true if the insert counts as backlog rather than live data.
+     */
+    public boolean isBacklog(long newestTimestamp) {
+        return System.currentTimeMillis() - newestTimestamp > backlogAgeMs;
+    }
+
+    /**
+     * Blocks until the insert may go ahead within the limits.
+     */
+    public void acquire(int points, long bytes, boolean backlog) throws InterruptedException {
+        if (isUnlimited()) {
+            (backlog ? backlogPoints : livePoints).addAndGet(points);
+            return;
+        }
+        int bytePermits = (int) Math.min(Integer.MAX_VALUE, bytes);
+        long start = System.nanoTime();
+        if (backlog) {
+            while (liveWaiting.get() > 0 || !pointLimiter.isFree() || !byteLimiter.isFree()) {
+                TimeUnit.MILLISECONDS.sleep(BACKLOG_POLL_MS);
+            }
+            pointLimiter.acquire(points);
+            byteLimiter.acquire(bytePermits);
+            backlogPoints.addAndGet(points);
+            backlogThrottledNanos.addAndGet(System.nanoTime() - start);
+        } else {
+            liveWaiting.incrementAndGet();
+            try {
+                pointLimiter.acquire(points);
+                byteLimiter.acquire(bytePermits);
+            } finally {
+                liveWaiting.decrementAndGet();
+            }
+            livePoints.addAndGet(points);
+            liveThrottledNanos.addAndGet(System.nanoTime() - start);
+        }
+        logStatsIfDue();
+    }
+
+    /**
+     * Acquires permits for a tablet, whose timestamps are in ascending order.
+     */
+    public void acquire(Tablet tablet) throws InterruptedException {
+        if (tablet.rowSize == 0) {
+            return;
+        }
+        boolean backlog = isBacklog(tablet.timestamps[tablet.rowSize - 1]);
+        // The bytes are only counted when a limit needs them
+        acquire(tablet.rowSize, isUnlimited() ? 0 : payloadBytes(tablet), backlog);
+    }
+
+    /**
+     * Counts the timestamps and the text values of the tablet, as the records path does.
+     * Cells of missing measurements are null and count nothing.
+     */
+    private static long payloadBytes(Tablet tablet) {
+        long bytes = 8L * tablet.rowSize;
+        for (Object column : tablet.values) {
+            if (column instanceof Binary[]) {
+                Binary[] cells = (Binary[]) column;
+                for (int row = 0; row < tablet.rowSize; row++) {
+                    bytes += cells[row] != null ? cells[row].getLength() : 0;
+                }
+            } else if (column != null) {
+                bytes += 8L * tablet.rowSize;
+            }
+        }
+        return bytes;
+    }
+
+    public double getMaxPointsPerSecond() {
+        return pointLimiter.getPermitsPerSecond();
+    }
+
+    public double getMaxBytesPerSecond() {
+        return byteLimiter.getPermitsPerSecond();
+    }
+
+    public void setMaxPointsPerSecond(double maxPointsPerSecond) {
+        pointLimiter.setPermitsPerSecond(maxPointsPerSecond);
+    }
+
+    public void setMaxBytesPerSecond(double maxBytesPerSecond) {
+        byteLimiter.setPermitsPerSecond(maxBytesPerSecond);
+    }
+
+    public long getLiveThrottledMs() {
+        return TimeUnit.NANOSECONDS.toMillis(liveThrottledNanos.get());
+    }
+
+    public long getBacklogThrottledMs() {
+        return TimeUnit.NANOSECONDS.toMillis(backlogThrottledNanos.get());
+    }
+
+    private void logStatsIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextStatsAt.get();
+        if (now >= due && nextStatsAt.compareAndSet(due, now + STATS_INTERVAL_MS)) {
+            logger.info("Write limiter: {}", this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("limit %s points/s and %s bytes/s, live %d points throttled %d ms, "
+                + "backlog %d points throttled %d ms",
+                pointLimiter.isUnlimited() ? "no" : String.format("%.0f", getMaxPointsPerSecond()),
+                byteLimiter.isUnlimited() ? "no" : String.format("%.0f", getMaxBytesPerSecond()),
+                livePoints.get(), getLiveThrottledMs(), backlogPoints.get(), getBacklogThrottledMs());
+    }
+}
@@ -0,0 +1,118 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.Dsl;
+import org.kreps.redistoiotdb.model.DataPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares polls of the {@link HttpStandInServer} with and without a compressed
+ * transfer encoding: bytes on the wire, client CPU time of the HTTP client
+ * threads, and poll latency.
+ * <p>
+ * Run with {@code CompressionBenchmark [tags] [polls]}.
+ */
+public class CompressionBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionBenchmark.class);
+    private static final int WARMUP_POLLS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int tagCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int polls = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(String.format("TAG_%06d", i));
+        }
+
+        try (HttpStandInServer server = new HttpStandInServer(0)) {
+            String url = "http://127.0.0.1:" + server.getPort() + "/?tags=" + String.join(",", tags);
+            for (boolean compression : Arrays.asList(false, true)) {
+                run(url, compression, tagCount, polls);
+            }
+        }
+    }
+
+    private static void run(String url, boolean compression, int tagCount, int polls) throws Exception {
+        String threadPrefix = compression ? "Bench-Compressed" : "Bench-Plain";
+        TransferStats transferStats = new TransferStats();
+        BlockingQueue<DataPoint> queue = new LinkedBlockingQueue<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        long[] latencies = new long[polls];
+
+        try (AsyncHttpClient client = Dsl.asyncHttpClient(Dsl.config()
+                .setCompressionEnforced(compression)
+                .setThreadPoolName(threadPrefix)
+                .setHttpAdditionalChannelInitializer(transferStats.channelInitializer()))) {
+            for (int i = 0; i < WARMUP_POLLS; i++) {
+                poll(client, url, queue, objectMapper, null);
+                queue.clear();
+            }
+            long wireBefore = transferStats.getWireBytes();
+            long decodedBefore = transferStats.getDecodedBytes();
+            long cpuBefore = cpuNanos(threadPrefix);
+
+            for (int i = 0; i < polls; i++) {
+                long start = System.nanoTime();
+                poll(client, url, queue, objectMapper, transferStats);
+                latencies[i] = System.nanoTime() - start;
+                if (queue.size() != tagCount) {
+                    throw new IllegalStateException("Expected " + tagCount + " data points but got " + queue.size());
+                }
+                queue.clear();
+            }
+
+            long wireBytes = transferStats.getWireBytes() - wireBefore;
+            long decodedBytes = transferStats.getDecodedBytes() - decodedBefore;
+            long cpuNanos = cpuNanos(threadPrefix) - cpuBefore;
+            Arrays.sort(latencies);
+            logger.info("{}: {} tags, {} polls, {} KB on the wire and {} KB decoded per poll, "
+                    + "client CPU {} ms per poll, latency avg {} ms, p50 {} ms, p95 {} ms",
+                    compression ? "gzip" : "identity", tagCount, polls,
+                    wireBytes / polls / 1024, decodedBytes / polls / 1024,
+                    String.format("%.2f", cpuNanos / 1e6 / polls),
+                    String.format("%.2f", Arrays.stream(latencies).average().orElse(0) / 1e6),
+                    String.format("%.2f", latencies[polls / 2] / 1e6),
+                    String.format("%.2f", latencies[Math.min(polls - 1, (int) (polls * 0.95))] / 1e6));
+        }
+    }
+
+    private static void poll(AsyncHttpClient client, String url, BlockingQueue<DataPoint> queue,
+            ObjectMapper objectMapper, TransferStats transferStats) throws Exception {
+        AtomicReference<String> failure = new AtomicReference<>();
+        client.prepareGet(url)
+                .execute(new FetchCallback(queue, objectMapper, (reason, statusCode) -> failure.set(reason),
+                        null, transferStats, null))
+                .get(30, TimeUnit.SECONDS);
+        if (failure.get() != null) {
+            throw new IllegalStateException("Poll failed: " + failure.get());
+        }
+    }
+
+    /**
+     * Sums the CPU time of the live threads whose names start with the prefix.
+     */
+    private static long cpuNanos(String threadPrefix) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith(threadPrefix)) {
+                total += Math.max(0, threads.getThreadCpuTime(info.getThreadId()));
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,125 @@
+package org.kreps.redistoiotdb.fetcher;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.kreps.redistoiotdb.fetcher.resp.RespStandInServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the current-values HTTP API. Answers every request with a
+ * sample row for each tag in the {@code tags} parameter, streamed as chunked
+ * JSON and compressed with gzip or deflate when the client accepts it.
+ * <p>
+ * Run it standalone with {@code HttpStandInServer <port>} and point
+ * {@code source.redis.api_url} at {@code http://127.0.0.1:<port>/}.
+ */
+public class HttpStandInServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HttpStandInServer.class);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public HttpStandInServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.executor = Executors.newFixedThreadPool(4, r -> new Thread(r, "Http-StandIn"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("HTTP stand-in server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            List<String> tags = requestedTags(exchange.getRequestURI().getRawQuery());
+            String encoding = chooseEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (encoding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream out = encode(exchange.getResponseBody(), encoding);
+                    JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                generator.writeStartArray();
+                for (String tag : tags) {
+                    generator.writeStartObject();
+                    for (Map.Entry<String, String> field : RespStandInServer.sampleRow(tag).entrySet()) {
+                        generator.writeStringField(field.getKey(), field.getValue());
+                    }
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static List<String> requestedTags(String query) throws IOException {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("tags=")) {
+                    return Arrays.asList(URLDecoder.decode(parameter.substring(5), "UTF-8").split(","));
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static String chooseEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        if (acceptEncoding.contains("gzip")) {
+            return "gzip";
+        }
+        if (acceptEncoding.contains("deflate")) {
+            return "deflate";
+        }
+        return null;
+    }
+
+    private static OutputStream encode(OutputStream out, String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPOutputStream(out, 8192);
+        }
+        if ("deflate".equals(encoding)) {
+            return new DeflaterOutputStream(out);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 20802;
+        HttpStandInServer server = new HttpStandInServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,470 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import org.kreps.redistoiotdb.config.TagCsvParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Small in-memory RESP server that understands the subset of Redis commands the
+ * connector uses. It runs on a single selector thread and is meant for local
+ * runs, tests and benchmarks of the RESP source where no Redis is available.
+ * <p>
+ * Run it standalone with {@code RespStandInServer <port> [tags_file] [stream_key]};
+ * when a tags file is given, a hash with sample values is created for every tag
+ * and the values are refreshed once per second. With a stream key, every refresh
+ * is also appended to that stream.
+ */
+public class RespStandInServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RespStandInServer.class);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int STREAM_MAX_LENGTH = 1_000_000;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    private final RespStreamStore streams = new RespStreamStore(STREAM_MAX_LENGTH);
+    // Clients waiting in XREADGROUP ... BLOCK, only touched by the selector thread
+    private final Set<SelectionKey> blockedClients = new HashSet<>();
+    private volatile boolean running = true;
+
+    public RespStandInServer(int port) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", port));
+        serverChannel.configureBlocking(false);
+        this.selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::runLoop, "Resp-StandIn-" + getPort());
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+        logger.info("RESP stand-in server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void putHash(String key, Map<String, String> fields) {
+        hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).putAll(fields);
+    }
+
+    /**
+     * Appends an entry to a stream as XADD with an auto-generated id would.
+     *
+     * @return the id of the new entry.
+     */
+    public String addStreamEntry(String key, Map<String, String> fields) {
+        List<String> fieldsAndValues = new ArrayList<>(fields.size() * 2);
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            fieldsAndValues.add(field.getKey());
+            fieldsAndValues.add(field.getValue());
+        }
+        return streams.xadd(key, "*", fieldsAndValues);
+    }
+
+    /**
+     * Creates or refreshes a hash shaped like a source row for the given tag.
+     */
+    public void putSampleTag(String keyPrefix, String tag) {
+        putHash(keyPrefix + tag, sampleRow(tag));
+    }
+
+    public static Map<String, String> sampleRow(String tag) {
+        Map<String, String> row = new LinkedHashMap<>();
+        String now = LocalDateTime.now().format(TIME_FORMAT);
+        row.put("PlantCode", "P" + Math.abs(tag.hashCode() % 10));
+        row.put("org_tag", tag);
+        row.put("OriTime", now);
+        row.put("Qual", "192");
+        row.put("ColTime", now);
+        row.put("std_tag", tag.replace(' ', '_'));
+        row.put("SensorType", "AI");
+        row.put("Val", String.format(Locale.ROOT, "%.3f", ThreadLocalRandom.current().nextDouble(1000)));
+        return row;
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select(blockedClients.isEmpty() ? 500 : 10);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        closeClient(key);
+                    }
+                }
+                serveBlockedClients();
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("RESP stand-in server error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveBlockedClients() {
+        Iterator<SelectionKey> keys = blockedClients.iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            ClientState state = (ClientState) key.attachment();
+            if (!key.isValid()) {
+                keys.remove();
+                continue;
+            }
+            try {
+                List<Object> reply = readGroup(state.blockedCommand);
+                if (reply == null && System.currentTimeMillis() < state.blockDeadline) {
+                    continue;
+                }
+                writeValue(state.output, reply);
+                state.blockedCommand = null;
+                keys.remove();
+                processInput(key, state);
+                write(key);
+            } catch (IOException | RuntimeException e) {
+                keys.remove();
+                closeClient(key);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = serverChannel.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.socket().setTcpNoDelay(true);
+        client.register(selector, SelectionKey.OP_READ, new ClientState());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        ClientState state = (ClientState) key.attachment();
+
+        state.ensureReadCapacity();
+        int read = client.read(state.input);
+        if (read < 0) {
+            closeClient(key);
+            return;
+        }
+
+        processInput(key, state);
+        write(key);
+    }
+
+    private void processInput(SelectionKey key, ClientState state) throws IOException {
+        state.input.flip();
+        try {
+            Object request;
+            while (state.blockedCommand == null
+                    && (request = RespCodec.parse(state.input)) != RespCodec.INCOMPLETE) {
+                try {
+                    handle(request, state);
+                } catch (IllegalArgumentException e) {
+                    state.output.error(e.getMessage());
+                } catch (RuntimeException e) {
+                    state.output.error("ERR " + e.getClass().getSimpleName() + " while executing command");
+                }
+            }
+            if (state.blockedCommand != null) {
+                blockedClients.add(key);
+            }
+        } finally {
+            state.input.compact();
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        ClientState state = (ClientState) key.attachment();
+        boolean done = state.output.writeTo((SocketChannel) key.channel());
+        key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void closeClient(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Client is gone either way
+        }
+    }
+
+    /**
+     * Executes one command and appends its reply.
+     */
+    private void handle(Object request, ClientState state) {
+        RespCodec.Writer out = state.output;
+        if (!(request instanceof List) || ((List<?>) request).isEmpty()) {
+            out.error("ERR protocol error: expected command array");
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        for (Object arg : (List<?>) request) {
+            args.add(String.valueOf(arg));
+        }
+        String command = args.get(0).toUpperCase(Locale.ROOT);
+
+        switch (command) {
+            case "PING":
+                out.simple("PONG");
+                break;
+            case "AUTH":
+            case "SELECT":
+                out.simple("OK");
+                break;
+            case "GET":
+                out.bulk(strings.get(args.get(1)));
+                break;
+            case "SET":
+                strings.put(args.get(1), args.get(2));
+                out.simple("OK");
+                break;
+            case "MGET":
+                out.arrayHeader(args.size() - 1);
+                for (int i = 1; i < args.size(); i++) {
+                    out.bulk(strings.get(args.get(i)));
+                }
+                break;
+            case "HSET": {
+                Map<String, String> hash = hashes.computeIfAbsent(args.get(1), k -> new ConcurrentHashMap<>());
+                int added = 0;
+                for (int i = 2; i + 1 < args.size(); i += 2) {
+                    if (hash.put(args.get(i), args.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                out.integer(added);
+                break;
+            }
+            case "HGET": {
+                Map<String, String> hash = hashes.get(args.get(1));
+                out.bulk(hash != null ? hash.get(args.get(2)) : null);
+                break;
+            }
+            case "HMGET": {
+                Map<String, String> hash = hashes.get(args.get(1));
+                out.arrayHeader(args.size() - 2);
+                for (int i = 2; i < args.size(); i++) {
+                    out.bulk(hash != null ? hash.get(args.get(i)) : null);
+                }
+                break;
+            }
+            case "HGETALL": {
+                Map<String, String> hash = hashes.get(args.get(1));
+                if (hash == null) {
+                    out.arrayHeader(0);
+                    break;
+                }
+                List<Map.Entry<String, String>> entries = new ArrayList<>(hash.entrySet());
+                out.arrayHeader(entries.size() * 2);
+                for (Map.Entry<String, String> entry : entries) {
+                    out.bulk(entry.getKey());
+                    out.bulk(entry.getValue());
+                }
+                break;
+            }
+            case "DEL": {
+                int removed = 0;
+                for (int i = 1; i < args.size(); i++) {
+                    boolean removedString = strings.remove(args.get(i)) != null;
+                    boolean removedHash = hashes.remove(args.get(i)) != null;
+                    if (removedString || removedHash) {
+                        removed++;
+                    }
+                }
+                out.integer(removed);
+                break;
+            }
+            case "XADD":
+                out.bulk(streams.xadd(args.get(1), args.get(2), args.subList(3, args.size())));
+                break;
+            case "XGROUP": {
+                if (!"CREATE".equalsIgnoreCase(args.get(1))) {
+                    out.error("ERR unsupported XGROUP subcommand '" + args.get(1) + "'");
+                    break;
+                }
+                boolean mkstream = args.size() > 5 && "MKSTREAM".equalsIgnoreCase(args.get(5));
+                if (streams.createGroup(args.get(2), args.get(3), args.get(4), mkstream)) {
+                    out.simple("OK");
+                } else {
+                    out.error("BUSYGROUP Consumer Group name already exists");
+                }
+                break;
+            }
+            case "XREADGROUP": {
+                List<Object> reply = readGroup(args);
+                long blockMs = option(args, "BLOCK", -1);
+                if (reply == null && blockMs >= 0) {
+                    state.blockedCommand = args;
+                    state.blockDeadline = blockMs == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + blockMs;
+                    break;
+                }
+                writeValue(out, reply);
+                break;
+            }
+            case "XACK":
+                out.integer(streams.ack(args.get(1), args.get(2), args.subList(3, args.size())));
+                break;
+            case "XLEN":
+                out.integer(streams.length(args.get(1)));
+                break;
+            default:
+                out.error("ERR unknown command '" + args.get(0) + "'");
+        }
+    }
+
+    /**
+     * Executes XREADGROUP GROUP group consumer [COUNT n] [BLOCK ms] [NOACK] STREAMS key... id...
+     *
+     * @return the reply, or null if only new entries were requested and there are none.
+     */
+    private List<Object> readGroup(List<String> args) {
+        String group = args.get(2);
+        String consumer = args.get(3);
+        int count = (int) option(args, "COUNT", Integer.MAX_VALUE);
+        int streamsIndex = indexOf(args, "STREAMS");
+        int keyCount = (args.size() - streamsIndex - 1) / 2;
+
+        List<Object> reply = new ArrayList<>();
+        boolean onlyNewEntries = true;
+        for (int i = 0; i < keyCount; i++) {
+            String key = args.get(streamsIndex + 1 + i);
+            String id = args.get(streamsIndex + 1 + keyCount + i);
+            onlyNewEntries &= ">".equals(id);
+            List<Object> entries = streams.readGroup(key, group, consumer, id, count);
+            if (!entries.isEmpty() || !">".equals(id)) {
+                reply.add(Arrays.asList(key, entries));
+            }
+        }
+        return reply.isEmpty() && onlyNewEntries ? null : reply;
+    }
+
+    private static long option(List<String> args, String name, long defaultValue) {
+        int index = indexOf(args, name);
+        return index >= 0 && index + 1 < args.size() ? Long.parseLong(args.get(index + 1)) : defaultValue;
+    }
+
+    private static int indexOf(List<String> args, String name) {
+        for (int i = 1; i < args.size(); i++) {
+            if (name.equalsIgnoreCase(args.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeValue(RespCodec.Writer out, Object value) {
+        if (value == null) {
+            out.nullArray();
+        } else if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            out.arrayHeader(values.size());
+            for (Object element : values) {
+                if (element == null || element instanceof String) {
+                    out.bulk((String) element);
+                } else {
+                    writeValue(out, element);
+                }
+            }
+        } else if (value instanceof Long) {
+            out.integer((Long) value);
+        } else {
+            out.bulk(String.valueOf(value));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(2000);
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            serverChannel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Error while closing RESP stand-in server: {}", e.getMessage());
+        }
+    }
+
+    private static class ClientState {
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final RespCodec.Writer output = new RespCodec.Writer(READ_BUFFER_SIZE);
+        private List<String> blockedCommand;
+        private long blockDeadline;
+
+        private void ensureReadCapacity() {
+            if (!input.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(input.capacity() * 2);
+                input.flip();
+                grown.put(input);
+                input = grown;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6379;
+        String keyPrefix = "tag:";
+        String streamKey = args.length > 2 ? args[2] : null;
+        try (RespStandInServer server = new RespStandInServer(port)) {
+            if (args.length > 1) {
+                List<String> tags = new TagCsvParser(args[1]).getTags();
+                while (true) {
+                    for (String tag : tags) {
+                        server.putSampleTag(keyPrefix, tag);
+                        if (streamKey != null) {
+                            server.addStreamEntry(streamKey, sampleRow(tag));
+                        }
+                    }
+                    Thread.sleep(1000);
+                }
+            }
+            Thread.currentThread().join();
+        }
+    }
+}
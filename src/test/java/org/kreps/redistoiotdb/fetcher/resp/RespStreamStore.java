@@ -0,0 +1,177 @@
+package org.kreps.redistoiotdb.fetcher.resp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory Redis Streams with consumer groups for {@link RespStandInServer}.
+ * Supports the subset used by {@link RespStreamSource}: XADD, XGROUP CREATE,
+ * XREADGROUP, XACK and XLEN. Entries are trimmed to {@code maxLength} per stream.
+ */
+class RespStreamStore {
+    private final Map<String, Stream> streams = new HashMap<>();
+    private final int maxLength;
+
+    RespStreamStore(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    synchronized String xadd(String key, String requestedId, List<String> fieldsAndValues) {
+        Stream stream = streams.computeIfAbsent(key, k -> new Stream());
+        EntryId id;
+        if ("*".equals(requestedId)) {
+            long now = System.currentTimeMillis();
+            id = now > stream.lastId.millis ? new EntryId(now, 0) : new EntryId(stream.lastId.millis, stream.lastId.seq + 1);
+        } else {
+            id = EntryId.parse(requestedId);
+            if (id.compareTo(stream.lastId) <= 0) {
+                throw new IllegalArgumentException("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+            }
+        }
+        stream.entries.put(id, new ArrayList<>(fieldsAndValues));
+        stream.lastId = id;
+        while (stream.entries.size() > maxLength) {
+            stream.entries.pollFirstEntry();
+        }
+        return id.toString();
+    }
+
+    /**
+     * @return false if the group already exists.
+     */
+    synchronized boolean createGroup(String key, String group, String startId, boolean mkstream) {
+        Stream stream = streams.get(key);
+        if (stream == null) {
+            if (!mkstream) {
+                throw new IllegalArgumentException("ERR The XGROUP subcommand requires the key to exist");
+            }
+            stream = new Stream();
+            streams.put(key, stream);
+        }
+        if (stream.groups.containsKey(group)) {
+            return false;
+        }
+        EntryId lastDelivered = "$".equals(startId) ? stream.lastId : EntryId.parse(startId);
+        stream.groups.put(group, new ConsumerGroup(lastDelivered));
+        return true;
+    }
+
+    /**
+     * Reads entries for a consumer. With id {@code >} new entries are delivered and
+     * added to the pending list; any other id re-reads the consumer's pending entries
+     * after that id.
+     *
+     * @return the entries as [id, [field, value, ...]] pairs, empty if none.
+     */
+    synchronized List<Object> readGroup(String key, String group, String consumer, String id, int count) {
+        Stream stream = streams.get(key);
+        ConsumerGroup consumerGroup = stream != null ? stream.groups.get(group) : null;
+        if (consumerGroup == null) {
+            throw new IllegalArgumentException("NOGROUP No such key '" + key + "' or consumer group '" + group + "'");
+        }
+
+        List<Object> result = new ArrayList<>();
+        if (">".equals(id)) {
+            for (Map.Entry<EntryId, List<String>> entry
+                    : stream.entries.tailMap(consumerGroup.lastDelivered, false).entrySet()) {
+                if (result.size() >= count) {
+                    break;
+                }
+                consumerGroup.pending.put(entry.getKey(), consumer);
+                consumerGroup.lastDelivered = entry.getKey();
+                result.add(Arrays.asList(entry.getKey().toString(), entry.getValue()));
+            }
+        } else {
+            for (Map.Entry<EntryId, String> pending
+                    : consumerGroup.pending.tailMap(EntryId.parse(id), false).entrySet()) {
+                if (result.size() >= count) {
+                    break;
+                }
+                if (consumer.equals(pending.getValue())) {
+                    List<String> fields = stream.entries.get(pending.getKey());
+                    result.add(Arrays.asList(pending.getKey().toString(), fields));
+                }
+            }
+        }
+        return result;
+    }
+
+    synchronized long ack(String key, String group, List<String> ids) {
+        Stream stream = streams.get(key);
+        ConsumerGroup consumerGroup = stream != null ? stream.groups.get(group) : null;
+        if (consumerGroup == null) {
+            return 0;
+        }
+        long acked = 0;
+        for (String id : ids) {
+            if (consumerGroup.pending.remove(EntryId.parse(id)) != null) {
+                acked++;
+            }
+        }
+        return acked;
+    }
+
+    synchronized long length(String key) {
+        Stream stream = streams.get(key);
+        return stream != null ? stream.entries.size() : 0;
+    }
+
+    private static final class Stream {
+        private final NavigableMap<EntryId, List<String>> entries = new TreeMap<>();
+        private final Map<String, ConsumerGroup> groups = new HashMap<>();
+        private EntryId lastId = new EntryId(0, 0);
+    }
+
+    private static final class ConsumerGroup {
+        private final NavigableMap<EntryId, String> pending = new TreeMap<>();
+        private EntryId lastDelivered;
+
+        private ConsumerGroup(EntryId lastDelivered) {
+            this.lastDelivered = lastDelivered;
+        }
+    }
+
+    static final class EntryId implements Comparable<EntryId> {
+        private final long millis;
+        private final long seq;
+
+        EntryId(long millis, long seq) {
+            this.millis = millis;
+            this.seq = seq;
+        }
+
+        static EntryId parse(String id) {
+            int dash = id.indexOf('-');
+            if (dash < 0) {
+                return new EntryId(Long.parseLong(id), 0);
+            }
+            return new EntryId(Long.parseLong(id.substring(0, dash)), Long.parseLong(id.substring(dash + 1)));
+        }
+
+        @Override
+        public int compareTo(EntryId other) {
+            int result = Long.compare(millis, other.millis);
+            return result != 0 ? result : Long.compare(seq, other.seq);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EntryId && compareTo((EntryId) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(millis) * 31 + Long.hashCode(seq);
+        }
+
+        @Override
+        public String toString() {
+            return millis + "-" + seq;
+        }
+    }
+}
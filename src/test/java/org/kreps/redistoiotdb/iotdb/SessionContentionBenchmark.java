@@ -0,0 +1,132 @@
+package org.kreps.redistoiotdb.iotdb;
+
+import org.apache.iotdb.tsfile.file.metadata.enums.CompressionType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.ConfigLoader;
+import org.kreps.redistoiotdb.validator.SchemaValidator;
+import org.kreps.redistoiotdb.writer.IoTDBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares writers inserting small tablets through the shared session pool with
+ * writers that each own a {@link WriterSession}: inserts per second and insert
+ * latency, which includes borrowing and returning the session. Writes to the
+ * IoTDB from {@code config.json}, under {@code root.cepco.`BENCH`.`SESSION_n`}.
+ * <p>
+ * Run with {@code SessionContentionBenchmark [writers] [inserts per writer]}; the
+ * last line logged is the throughput of dedicated sessions relative to the pool.
+ */
+public class SessionContentionBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(SessionContentionBenchmark.class);
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int inserts = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        AppConfig config = ConfigLoader.loadConfig();
+        List<MeasurementSchema> schemas = new ArrayList<>();
+        for (String measurement : IoTDBWriter.MEASUREMENT_NAMES) {
+            schemas.add(new MeasurementSchema(measurement, TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY));
+        }
+
+        try (IoTDBSessionPool pool = new IoTDBSessionPool(config)) {
+            SchemaValidator validator = new SchemaValidator(pool, config.getRetryConfig());
+            validator.initializeSchema();
+            List<String> devices = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                devices.add(String.format("root.cepco.`BENCH`.`SESSION_%d`", i));
+            }
+            validator.validateDevicePaths(devices);
+
+            long baseTime = System.currentTimeMillis() - 86400000L;
+            long shared = run(config, pool, schemas, devices, inserts, false, baseTime);
+            long dedicated = run(config, pool, schemas, devices, inserts, true, baseTime + 43200000L);
+            logger.info("Dedicated sessions: {} times the inserts/s of the shared pool",
+                    String.format("%.2f", dedicated / (double) Math.max(1, shared)));
+        }
+    }
+
+    /**
+     * @return the inserts per second of all writers together.
+     */
+    private static long run(AppConfig config, IoTDBSessionPool pool, List<MeasurementSchema> schemas,
+            List<String> devices, int inserts, boolean dedicated, long baseTime) throws InterruptedException {
+        int writers = devices.size();
+        long[][] latencies = new long[writers][inserts];
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(writers);
+
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            new Thread(() -> {
+                WriterSession session = dedicated
+                        ? new WriterSession(config.getDestinationConfig().getIotdbSettings(), writer, "Bench-" + writer,
+                                pool)
+                        : null;
+                try {
+                    start.await();
+                    for (int i = 0; i < inserts; i++) {
+                        Tablet tablet = new Tablet(devices.get(writer), schemas, 1);
+                        tablet.addTimestamp(0, baseTime + i * 1000L);
+                        for (MeasurementSchema schema : schemas) {
+                            tablet.addValue(schema.getMeasurementId(), 0, String.valueOf(i));
+                        }
+                        tablet.rowSize = 1;
+
+                        long begin = System.nanoTime();
+                        try {
+                            if (session != null) {
+                                session.insertTablet(tablet, true);
+                            } else {
+                                pool.insertTablet(tablet, true);
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[writer][i] = System.nanoTime() - begin;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (session != null) {
+                        session.close();
+                    }
+                    done.countDown();
+                }
+            }, "Bench-Writer-" + w).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        long[] all = new long[writers * inserts];
+        for (int w = 0; w < writers; w++) {
+            System.arraycopy(latencies[w], 0, all, w * inserts, inserts);
+        }
+        Arrays.sort(all);
+        long total = 0;
+        for (long latency : all) {
+            total += latency;
+        }
+        long insertsPerSecond = all.length * 1000000000L / Math.max(1, elapsed);
+        logger.info("{}: {} writers, {} inserts/s, latency avg {} us, p50 {} us, p99 {} us, max {} us, {} failed",
+                dedicated ? "Dedicated sessions" : "Shared pool", writers, insertsPerSecond,
+                total / 1000 / all.length, all[all.length / 2] / 1000, all[(int) (all.length * 0.99)] / 1000,
+                all[all.length - 1] / 1000, failures.get());
+        return insertsPerSecond;
+    }
+}
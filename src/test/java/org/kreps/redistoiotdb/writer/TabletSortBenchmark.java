@@ -0,0 +1,160 @@
+package org.kreps.redistoiotdb.writer;
+
+import org.apache.iotdb.session.Session;
+import org.apache.iotdb.tsfile.file.metadata.enums.CompressionType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.redistoiotdb.config.AppConfig;
+import org.kreps.redistoiotdb.config.ConfigLoader;
+import org.kreps.redistoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.redistoiotdb.utils.TimestampOrder;
+import org.kreps.redistoiotdb.validator.SchemaValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the insert cost of tablets whose rows arrive out of order when they
+ * are inserted unsorted, leaving IoTDB to check and sort them, and when they
+ * are put in order by {@link TimestampOrder} and inserted with the sorted flag.
+ * Writes to the IoTDB from {@code config.json}, under the devices
+ * {@code root.cepco.`BENCH`.`SORT_n`}.
+ * <p>
+ * Before that the client side of both is compared without a server. Run with
+ * {@code TabletSortBenchmark [rows per tablet] [tablets] [client]}; {@code client}
+ * stops after the client side comparison.
+ */
+public class TabletSortBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(TabletSortBenchmark.class);
+    private static final int WARMUP_TABLETS = 20;
+    private static final int DEVICES = 100;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int tablets = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        boolean clientOnly = args.length > 2 && "client".equals(args[2]);
+
+        List<MeasurementSchema> schemas = new ArrayList<>();
+        for (String measurement : IoTDBWriter.MEASUREMENT_NAMES) {
+            schemas.add(new MeasurementSchema(measurement, TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY));
+        }
+        compareClientSort(schemas, rows, tablets);
+        if (clientOnly) {
+            return;
+        }
+
+        AppConfig config = ConfigLoader.loadConfig();
+        try (IoTDBSessionPool pool = new IoTDBSessionPool(config)) {
+            SchemaValidator validator = new SchemaValidator(pool, config.getRetryConfig());
+            validator.initializeSchema();
+            List<String> devices = new ArrayList<>();
+            for (int i = 0; i < DEVICES; i++) {
+                devices.add(String.format("root.cepco.`BENCH`.`SORT_%d`", i));
+            }
+            validator.validateDevicePaths(devices);
+
+            long baseTime = System.currentTimeMillis() - 86400000L;
+            run(pool, schemas, devices, rows, tablets, false, baseTime);
+            run(pool, schemas, devices, rows, tablets, true, baseTime + 43200000L);
+        }
+    }
+
+    private static void run(IoTDBSessionPool session, List<MeasurementSchema> schemas, List<String> devices, int rows,
+            int tablets, boolean sorted, long baseTime) throws Exception {
+        Random random = new Random(42);
+        long sortNanos = 0;
+        long insertNanos = 0;
+        long time = baseTime;
+
+        for (int t = 0; t < WARMUP_TABLETS + tablets; t++) {
+            long[] timestamps = timestamps(random, time, rows);
+            time += rows * 1000L;
+
+            long start = System.nanoTime();
+            int[] order = sorted ? TimestampOrder.of(timestamps, rows) : null;
+            long sorting = System.nanoTime() - start;
+            Tablet tablet = tablet(devices.get(t % devices.size()), schemas, timestamps, order);
+
+            start = System.nanoTime();
+            session.insertTablet(tablet, sorted);
+            long inserting = System.nanoTime() - start;
+            if (t >= WARMUP_TABLETS) {
+                sortNanos += sorting;
+                insertNanos += inserting;
+            }
+        }
+
+        logger.info("{}: {} tablets of {} rows, insert avg {} us per tablet, client sort avg {} us per tablet",
+                sorted ? "Sorted by the writer" : "Sorted by IoTDB", tablets, rows,
+                insertNanos / 1000 / tablets, sortNanos / 1000 / tablets);
+    }
+
+    /**
+     * Compares, without a server, the client side of both ways: the sort the IoTDB
+     * session does before sending an unsorted tablet against {@link TimestampOrder}.
+     */
+    private static void compareClientSort(List<MeasurementSchema> schemas, int rows, int tablets) {
+        // Never opened, only its sort is used
+        Session session = new Session.Builder().build();
+        long sessionSortNanos = 0;
+        long writerSortNanos = 0;
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up
+            Random random = new Random(42);
+            sessionSortNanos = 0;
+            writerSortNanos = 0;
+            for (int t = 0; t < tablets; t++) {
+                long[] timestamps = timestamps(random, t * rows * 1000L, rows);
+                Tablet unsorted = tablet("root.cepco.`BENCH`.`SORT_0`", schemas, timestamps, null);
+                long start = System.nanoTime();
+                session.sortTablet(unsorted);
+                sessionSortNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                TimestampOrder.of(timestamps, rows);
+                writerSortNanos += System.nanoTime() - start;
+            }
+        }
+        logger.info("Client sort of {} tablets of {} rows: IoTDB session avg {} us per tablet, writer avg {} us per tablet",
+                tablets, rows, String.format("%.1f", sessionSortNanos / 1000.0 / tablets),
+                String.format("%.1f", writerSortNanos / 1000.0 / tablets));
+    }
+
+    /**
+     * @return ascending timestamps from {@code time} with a few neighbouring rows swapped,
+     *         as several writers and retries do.
+     */
+    private static long[] timestamps(Random random, long time, int rows) {
+        long[] timestamps = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            timestamps[i] = time + i * 1000L;
+        }
+        for (int i = 0; i < rows / 8 + 1; i++) {
+            int a = random.nextInt(rows);
+            int b = Math.min(rows - 1, a + 1);
+            long swap = timestamps[a];
+            timestamps[a] = timestamps[b];
+            timestamps[b] = swap;
+        }
+        return timestamps;
+    }
+
+    private static Tablet tablet(String device, List<MeasurementSchema> schemas, long[] timestamps, int[] order) {
+        int rows = order != null ? order.length : timestamps.length;
+        Tablet tablet = new Tablet(device, schemas, rows);
+        for (int i = 0; i < rows; i++) {
+            int row = order != null ? order[i] : i;
+            tablet.addTimestamp(i, timestamps[row]);
+            for (MeasurementSchema schema : schemas) {
+                tablet.addValue(schema.getMeasurementId(), i, String.valueOf(row));
+            }
+        }
+        tablet.rowSize = rows;
+        return tablet;
+    }
+}